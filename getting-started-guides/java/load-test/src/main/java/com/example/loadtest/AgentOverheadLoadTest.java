@@ -0,0 +1,167 @@
+package com.example.loadtest;
+
+import com.example.loadtest.AppProcess.Usage;
+import java.io.PrintWriter;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import javax.management.MBeanServerConnection;
+import javax.management.remote.JMXConnector;
+
+/**
+ * Measures what the agent costs the application, in three modes: without the agent, with the agent
+ * in its default configuration, and with the agent exporting traces only, its metrics and logs
+ * exporters set to {@code none}. The agent modes export to a local OTLP sink, so the exporters do
+ * their full work without a network or collector in the way.
+ *
+ * <p>For each mode the application jar is started in a fresh JVM, with APP_JVM_ARGS (default {@code
+ * -Xms512m -Xmx512m}). The time until it first answers {@code /fibonacci} is its startup time. Then
+ * {@code /fibonacci} is called with a random n at RATE requests per second (default 200), open
+ * loop: WARMUP_SECONDS (default 15) are discarded and DURATION_SECONDS (default 30) are measured.
+ * Over the measured part, the application's heap allocation, CPU and GC time are read through JMX,
+ * by attaching to its JVM.
+ *
+ * <p>It prints, and writes as CSV to the report file, the startup time, the throughput, the 50th,
+ * 99th and 99.9th percentile latency, the allocation rate, the CPU used, the GC time and the bytes
+ * exported per second for each mode. If the application cannot keep up with RATE, the latencies
+ * grow for the whole run; compare modes at a rate all of them sustain. The load generator shares
+ * the machine with the application, so it is best run on a machine with cores to spare.
+ *
+ * <p>Run with: ./gradlew :load-test:agentOverheadLoadTest
+ */
+public class AgentOverheadLoadTest {
+
+  private static final int PORT = 18081;
+
+  public static void main(String[] args) throws Exception {
+    Map<String, Map<String, String>> modes = new LinkedHashMap<>();
+    modes.put("no agent", null);
+    modes.put("agent", Map.of());
+    modes.put(
+        "agent, traces only",
+        Map.of("OTEL_METRICS_EXPORTER", "none", "OTEL_LOGS_EXPORTER", "none"));
+    measure(modes, Path.of(System.getProperty("report.file", "agent-overhead.csv")));
+  }
+
+  /**
+   * Runs the application in each mode, without the agent if its environment is null and with the
+   * agent and that environment otherwise, and reports what each cost.
+   */
+  static void measure(Map<String, Map<String, String>> modes, Path reportFile) throws Exception {
+    String appJar = System.getProperty("app.jar");
+    String agentJar = System.getProperty("agent.jar");
+    int rate = Integer.parseInt(System.getenv().getOrDefault("RATE", "200"));
+    Duration warmup =
+        Duration.ofSeconds(Long.parseLong(System.getenv().getOrDefault("WARMUP_SECONDS", "15")));
+    Duration duration =
+        Duration.ofSeconds(Long.parseLong(System.getenv().getOrDefault("DURATION_SECONDS", "30")));
+    List<String> jvmArgs =
+        Arrays.asList(
+            System.getenv().getOrDefault("APP_JVM_ARGS", "-Xms512m -Xmx512m").trim().split("\\s+"));
+
+    HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    OpenLoopLoad load = new OpenLoopLoad(client, Duration.ofSeconds(10));
+    List<Row> rows = new ArrayList<>();
+    try (OtlpSink sink = new OtlpSink()) {
+      for (Map.Entry<String, Map<String, String>> mode : modes.entrySet()) {
+        System.out.printf("%s: starting%n", mode.getKey());
+        Map<String, String> environment = new HashMap<>();
+        environment.put("OTEL_EXPORTER_OTLP_ENDPOINT", sink.endpoint());
+        if (mode.getValue() != null) {
+          environment.putAll(mode.getValue());
+        }
+
+        long startNanos = System.nanoTime();
+        try (AppProcess app =
+            AppProcess.start(
+                appJar, jvmArgs, mode.getValue() == null ? null : agentJar, environment, PORT)) {
+          app.awaitStarted(client, "/fibonacci?n=1");
+          double startupSeconds = (System.nanoTime() - startNanos) / 1e9;
+          try (JMXConnector jmx = app.attach()) {
+            MBeanServerConnection connection = jmx.getMBeanServerConnection();
+            System.out.printf("%s: started in %.1f s, warming up%n", mode.getKey(), startupSeconds);
+            load.run(rate, warmup, AgentOverheadLoadTest::fibonacci);
+            System.out.printf("%s: measuring%n", mode.getKey());
+            Usage before = Usage.read(connection);
+            sink.takeBytes();
+            OpenLoopLoad.Result result = load.run(rate, duration, AgentOverheadLoadTest::fibonacci);
+            Usage used = Usage.read(connection).minus(before);
+            rows.add(new Row(mode.getKey(), startupSeconds, result, used, sink.takeBytes()));
+          }
+        }
+      }
+    }
+
+    String header =
+        String.format(
+            Row.HEADER_FORMAT,
+            "mode",
+            "startup s",
+            "req/s",
+            "errors",
+            "p50 ms",
+            "p99 ms",
+            "p999 ms",
+            "alloc MB/s",
+            "CPU %",
+            "GC ms",
+            "export KB/s");
+    System.out.println();
+    System.out.printf("%d req/s for %d s%n", rate, duration.toSeconds());
+    System.out.println(header);
+    for (Row row : rows) {
+      System.out.println(row.format(Row.ROW_FORMAT));
+    }
+    Files.createDirectories(reportFile.toAbsolutePath().getParent());
+    try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(reportFile))) {
+      out.println(
+          "rate,mode,startup_s,throughput_rps,errors,p50_ms,p99_ms,p999_ms,alloc_mb_s,cpu_pct,gc_ms,"
+              + "export_kb_s");
+      for (Row row : rows) {
+        out.println(rate + "," + row.format(Row.CSV_FORMAT));
+      }
+    }
+    System.out.println();
+    System.out.println("Written to " + reportFile);
+  }
+
+  private static URI fibonacci(int request) {
+    return URI.create(
+        "http://localhost:" + PORT + "/fibonacci?n=" + ThreadLocalRandom.current().nextInt(1, 91));
+  }
+
+  private record Row(
+      String mode, double startupSeconds, OpenLoopLoad.Result result, Usage used, long exported) {
+
+    static final String HEADER_FORMAT = "%-21s %9s %9s %7s %8s %8s %8s %10s %7s %7s %11s";
+    static final String ROW_FORMAT =
+        "%-21s %9.1f %9.1f %7d %8.2f %8.2f %8.2f %10.1f %7.1f %7d %11.1f";
+    static final String CSV_FORMAT = "\"%s\",%.2f,%.1f,%d,%.3f,%.3f,%.3f,%.2f,%.1f,%d,%.2f";
+
+    String format(String format) {
+      double seconds = used.nanoTime() / 1e9;
+      return String.format(
+          format,
+          mode,
+          startupSeconds,
+          result.throughput(),
+          result.errors(),
+          result.percentileMillis(50),
+          result.percentileMillis(99),
+          result.percentileMillis(99.9),
+          used.allocatedBytes() / 1e6 / seconds,
+          used.cpuNanos() / 1e7 / seconds,
+          used.gcMillis(),
+          exported / 1e3 / seconds);
+    }
+  }
+}
@@ -0,0 +1,129 @@
+package com.example.loadtest;
+
+import com.sun.tools.attach.VirtualMachine;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
+import javax.management.remote.JMXConnector;
+import javax.management.remote.JMXConnectorFactory;
+import javax.management.remote.JMXServiceURL;
+
+/**
+ * The application jar, started in a fresh JVM for a load test, with or without the agent. Its
+ * output is discarded. Closing it stops the application.
+ */
+final class AppProcess implements AutoCloseable {
+
+  private final Process process;
+  private final int port;
+
+  private AppProcess(Process process, int port) {
+    this.process = process;
+    this.port = port;
+  }
+
+  /**
+   * Starts {@code appJar} on {@code port} with {@code jvmArgs} and {@code environment} added to
+   * this process's, and with the agent in {@code agentJar} unless it is null.
+   */
+  static AppProcess start(
+      String appJar,
+      List<String> jvmArgs,
+      String agentJar,
+      Map<String, String> environment,
+      int port)
+      throws IOException {
+    List<String> command = new ArrayList<>();
+    command.add(ProcessHandle.current().info().command().orElse("java"));
+    command.addAll(jvmArgs);
+    if (agentJar != null) {
+      command.add("-javaagent:" + agentJar);
+    }
+    command.addAll(List.of("-jar", appJar, "--server.port=" + port));
+    ProcessBuilder builder =
+        new ProcessBuilder(command)
+            .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+            .redirectError(ProcessBuilder.Redirect.DISCARD);
+    builder.environment().put("OTEL_SERVICE_NAME", "getting-started-java");
+    builder.environment().putAll(environment);
+    return new AppProcess(builder.start(), port);
+  }
+
+  /** Returns the application's URI for {@code pathAndQuery}, which starts with a slash. */
+  URI uri(String pathAndQuery) {
+    return URI.create("http://localhost:" + port + pathAndQuery);
+  }
+
+  /** Waits up to 120 seconds for {@code pathAndQuery} to answer with 200. */
+  void awaitStarted(HttpClient client, String pathAndQuery) throws InterruptedException {
+    HttpRequest request = HttpRequest.newBuilder(uri(pathAndQuery)).build();
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(120);
+    while (System.nanoTime() < deadline) {
+      if (!process.isAlive()) {
+        throw new IllegalStateException("The application exited with " + process.exitValue());
+      }
+      try {
+        if (client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+          return;
+        }
+      } catch (IOException e) {
+        // Not listening yet
+      }
+      Thread.sleep(20);
+    }
+    throw new IllegalStateException("The application did not start in 120 seconds");
+  }
+
+  /** Connects to the application's JVM over JMX, starting its local management agent. */
+  JMXConnector attach() throws Exception {
+    VirtualMachine vm = VirtualMachine.attach(Long.toString(process.pid()));
+    try {
+      return JMXConnectorFactory.connect(new JMXServiceURL(vm.startLocalManagementAgent()));
+    } finally {
+      vm.detach();
+    }
+  }
+
+  @Override
+  public void close() throws InterruptedException {
+    process.destroy();
+    process.waitFor(30, TimeUnit.SECONDS);
+  }
+
+  /** What the application's JVM has used since it started. */
+  record Usage(long allocatedBytes, long cpuNanos, long gcMillis, long nanoTime) {
+
+    static Usage read(MBeanServerConnection connection) throws Exception {
+      long gcMillis = 0;
+      for (ObjectName collector :
+          connection.queryNames(new ObjectName("java.lang:type=GarbageCollector,*"), null)) {
+        gcMillis += (Long) connection.getAttribute(collector, "CollectionTime");
+      }
+      return new Usage(
+          (Long)
+              connection.getAttribute(
+                  new ObjectName("java.lang:type=Threading"), "TotalThreadAllocatedBytes"),
+          (Long)
+              connection.getAttribute(
+                  new ObjectName("java.lang:type=OperatingSystem"), "ProcessCpuTime"),
+          gcMillis,
+          System.nanoTime());
+    }
+
+    Usage minus(Usage before) {
+      return new Usage(
+          allocatedBytes - before.allocatedBytes,
+          cpuNanos - before.cpuNanos,
+          gcMillis - before.gcMillis,
+          nanoTime - before.nanoTime);
+    }
+  }
+}
@@ -0,0 +1,183 @@
+package com.example.loadtest;
+
+import com.example.loadtest.AppProcess.Usage;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import javax.management.MBeanServerConnection;
+import javax.management.remote.JMXConnector;
+
+/**
+ * Compares {@code /fibonacci} with {@code /fibonacci/batch}. The application jar is started twice,
+ * once without the agent and once with it. The agent run has no exporters, so it measures the
+ * instrumentation and not the network. In each run, CONCURRENCY clients (default 8) call each
+ * endpoint back to back for DURATION_SECONDS (default 10), after WARMUP_SECONDS (default 5) on
+ * each. {@code /fibonacci} gets one random n per request, and {@code /fibonacci/batch} gets
+ * BATCH_SIZE (default 90) of them.
+ *
+ * <p>For each run and endpoint it prints requests and values per second, and the application's CPU
+ * time per value, read over JMX. It then prints the per-value cost of the agent's instrumentation
+ * on each endpoint, which is the CPU time per value with the agent minus without it. The load
+ * generator shares the machine with the application, so compare the runs with each other rather
+ * than with production numbers.
+ *
+ * <p>Run with: ./gradlew :load-test:fibonacciLoadTest
+ */
+public class FibonacciLoadTest {
+
+  private static final int PORT = 18080;
+  private static final Map<String, String> NO_EXPORTERS =
+      Map.of(
+          "OTEL_TRACES_EXPORTER", "none",
+          "OTEL_METRICS_EXPORTER", "none",
+          "OTEL_LOGS_EXPORTER", "none");
+
+  public static void main(String[] args) throws Exception {
+    String appJar = System.getProperty("app.jar");
+    String agentJar = System.getProperty("agent.jar");
+    int concurrency = Integer.parseInt(System.getenv().getOrDefault("CONCURRENCY", "8"));
+    int batchSize = Integer.parseInt(System.getenv().getOrDefault("BATCH_SIZE", "90"));
+    Duration duration =
+        Duration.ofSeconds(Long.parseLong(System.getenv().getOrDefault("DURATION_SECONDS", "10")));
+    Duration warmup =
+        Duration.ofSeconds(Long.parseLong(System.getenv().getOrDefault("WARMUP_SECONDS", "5")));
+
+    HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    Map<String, Map<String, Result>> results = new LinkedHashMap<>();
+    for (boolean agent : new boolean[] {false, true}) {
+      String mode = agent ? "agent" : "no agent";
+      try (AppProcess app =
+              AppProcess.start(appJar, List.of(), agent ? agentJar : null, NO_EXPORTERS, PORT);
+          JMXConnector jmx = start(client, app)) {
+        MBeanServerConnection connection = jmx.getMBeanServerConnection();
+        Map<String, Result> modeResults = new LinkedHashMap<>();
+        modeResults.put(
+            "single", run(client, app, connection, 1, false, concurrency, warmup, duration));
+        modeResults.put(
+            "batch", run(client, app, connection, batchSize, true, concurrency, warmup, duration));
+        results.put(mode, modeResults);
+      }
+    }
+
+    System.out.printf(
+        "%-9s %-7s %10s %12s %14s%n", "mode", "endpoint", "req/s", "values/s", "CPU us/value");
+    results.forEach(
+        (mode, modeResults) ->
+            modeResults.forEach(
+                (endpoint, result) ->
+                    System.out.printf(
+                        "%-9s %-7s %10.0f %12.0f %14.2f%n",
+                        mode,
+                        endpoint,
+                        result.requestsPerSecond(),
+                        result.valuesPerSecond(),
+                        result.cpuMicrosPerValue())));
+    System.out.println();
+    for (String endpoint : List.of("single", "batch")) {
+      System.out.printf(
+          "instrumentation per value, %-6s: %.2f us CPU%n",
+          endpoint,
+          results.get("agent").get(endpoint).cpuMicrosPerValue()
+              - results.get("no agent").get(endpoint).cpuMicrosPerValue());
+    }
+  }
+
+  /** Waits for the application to answer, and connects to it over JMX. */
+  private static JMXConnector start(HttpClient client, AppProcess app) throws Exception {
+    app.awaitStarted(client, "/fibonacci?n=1");
+    return app.attach();
+  }
+
+  /** Warms the endpoint up, then calls it with {@code concurrency} clients for {@code duration}. */
+  private static Result run(
+      HttpClient client,
+      AppProcess app,
+      MBeanServerConnection connection,
+      int values,
+      boolean batch,
+      int concurrency,
+      Duration warmup,
+      Duration duration)
+      throws Exception {
+    load(client, app, values, batch, concurrency, warmup);
+    Usage before = Usage.read(connection);
+    long requests = load(client, app, values, batch, concurrency, duration);
+    long cpu = Usage.read(connection).minus(before).cpuNanos();
+    return new Result(requests, requests * values, cpu, duration);
+  }
+
+  /** Calls the endpoint back to back from {@code concurrency} threads, returning the requests. */
+  private static long load(
+      HttpClient client,
+      AppProcess app,
+      int values,
+      boolean batch,
+      int concurrency,
+      Duration duration)
+      throws InterruptedException {
+    LongAdder requests = new LongAdder();
+    long end = System.nanoTime() + duration.toNanos();
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < concurrency; i++) {
+      threads.add(
+          Thread.ofPlatform()
+              .start(
+                  () -> {
+                    while (System.nanoTime() < end) {
+                      try {
+                        HttpResponse<Void> response =
+                            client.send(
+                                HttpRequest.newBuilder(uri(app, values, batch)).build(),
+                                HttpResponse.BodyHandlers.discarding());
+                        if (response.statusCode() != 200) {
+                          throw new IllegalStateException("Status " + response.statusCode());
+                        }
+                        requests.increment();
+                      } catch (IOException e) {
+                        throw new IllegalStateException(e);
+                      } catch (InterruptedException e) {
+                        return;
+                      }
+                    }
+                  }));
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    return requests.sum();
+  }
+
+  private static URI uri(AppProcess app, int values, boolean batch) {
+    String n =
+        LongStream.range(0, values)
+            .mapToObj(i -> Long.toString(ThreadLocalRandom.current().nextLong(1, 91)))
+            .collect(Collectors.joining(","));
+    return app.uri((batch ? "/fibonacci/batch?n=" : "/fibonacci?n=") + n);
+  }
+
+  private record Result(long requests, long values, long cpuNanos, Duration duration) {
+
+    double requestsPerSecond() {
+      return requests / (duration.toNanos() / 1e9);
+    }
+
+    double valuesPerSecond() {
+      return values / (duration.toNanos() / 1e9);
+    }
+
+    double cpuMicrosPerValue() {
+      return cpuNanos / 1e3 / values;
+    }
+  }
+}
@@ -0,0 +1,88 @@
+package com.example.loadtest;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntFunction;
+
+/**
+ * Sends requests at a fixed rate, whether or not earlier ones have been answered, the way
+ * independent users arrive. Each request's latency is measured from when it was due to be sent, not
+ * from when it was sent, so time the generator spent waiting on a slow server counts against the
+ * server instead of going unrecorded.
+ */
+final class OpenLoopLoad {
+
+  private final HttpClient client;
+  private final Duration timeout;
+
+  OpenLoopLoad(HttpClient client, Duration timeout) {
+    this.client = client;
+    this.timeout = timeout;
+  }
+
+  /**
+   * Sends {@code rate} requests per second for {@code duration}, request {@code i} to {@code
+   * uris.apply(i)}, and waits for them all to be answered or time out.
+   */
+  Result run(int rate, Duration duration, IntFunction<URI> uris) throws InterruptedException {
+    int requests = (int) (rate * duration.toNanos() / 1_000_000_000L);
+    long intervalNanos = 1_000_000_000L / rate;
+    long[] latencies = new long[requests];
+    AtomicInteger errors = new AtomicInteger();
+    CountDownLatch done = new CountDownLatch(requests);
+    long start = System.nanoTime();
+    for (int i = 0; i < requests; i++) {
+      long due = start + i * intervalNanos;
+      for (long wait = due - System.nanoTime(); wait > 0; wait = due - System.nanoTime()) {
+        LockSupport.parkNanos(wait);
+      }
+      int index = i;
+      client
+          .sendAsync(
+              HttpRequest.newBuilder(uris.apply(i)).timeout(timeout).build(),
+              HttpResponse.BodyHandlers.discarding())
+          .whenComplete(
+              (response, error) -> {
+                if (error == null && response.statusCode() == 200) {
+                  latencies[index] = System.nanoTime() - due;
+                } else {
+                  latencies[index] = -1;
+                  errors.incrementAndGet();
+                }
+                done.countDown();
+              });
+    }
+    if (!done.await(timeout.toNanos() + TimeUnit.SECONDS.toNanos(5), TimeUnit.NANOSECONDS)) {
+      throw new IllegalStateException(done.getCount() + " requests were never answered");
+    }
+    long elapsed = System.nanoTime() - start;
+    return new Result(
+        Arrays.stream(latencies).filter(latency -> latency >= 0).sorted().toArray(),
+        errors.get(),
+        elapsed);
+  }
+
+  /** The latencies of the successful requests, sorted, in nanoseconds. */
+  record Result(long[] latencies, int errors, long elapsedNanos) {
+
+    double throughput() {
+      return latencies.length / (elapsedNanos / 1e9);
+    }
+
+    double percentileMillis(double percentile) {
+      if (latencies.length == 0) {
+        return Double.NaN;
+      }
+      int index = (int) Math.ceil(percentile / 100 * latencies.length) - 1;
+      return latencies[Math.max(0, index)] / 1e6;
+    }
+  }
+}
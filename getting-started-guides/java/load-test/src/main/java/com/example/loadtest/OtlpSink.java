@@ -0,0 +1,48 @@
+package com.example.loadtest;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An OTLP HTTP endpoint that accepts and discards everything, so the agent's exporters do their
+ * full work without a collector. It counts the bytes it receives.
+ */
+final class OtlpSink implements AutoCloseable {
+
+  private final HttpServer server;
+  private final LongAdder bytes = new LongAdder();
+
+  OtlpSink() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/", this::handle);
+    server.start();
+  }
+
+  String endpoint() {
+    return "http://127.0.0.1:" + server.getAddress().getPort();
+  }
+
+  /** Returns the bytes received so far, and starts counting again from zero. */
+  long takeBytes() {
+    return bytes.sumThenReset();
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    try (InputStream in = exchange.getRequestBody()) {
+      bytes.add(in.readAllBytes().length);
+    }
+    // An empty body is an export response with nothing rejected
+    exchange.getResponseHeaders().set("Content-Type", "application/x-protobuf");
+    exchange.sendResponseHeaders(200, -1);
+    exchange.close();
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+  }
+}
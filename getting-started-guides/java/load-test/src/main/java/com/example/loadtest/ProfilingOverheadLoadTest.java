@@ -0,0 +1,31 @@
+package com.example.loadtest;
+
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Measures what the profiling module costs the application, the same way as AgentOverheadLoadTest,
+ * in three modes: with the agent and profiling off, with profiling on in its default configuration,
+ * and with profiling on and every request recorded as a span scope, not only those over 10 ms. The
+ * profiling modes export profiles every 10 seconds instead of every minute, so several exports fall
+ * in the measured part.
+ *
+ * <p>Run from the java root with: ./gradlew :load-test:profilingOverheadLoadTest
+ */
+public class ProfilingOverheadLoadTest {
+
+  public static void main(String[] args) throws Exception {
+    Map<String, String> profiling =
+        Map.of("PROFILING_ENABLED", "true", "PROFILING_INTERVAL", "10s");
+    Map<String, String> profilingAll = new LinkedHashMap<>(profiling);
+    profilingAll.put("PROFILING_SPAN_THRESHOLD", "0ms");
+
+    Map<String, Map<String, String>> modes = new LinkedHashMap<>();
+    modes.put("agent", Map.of());
+    modes.put("agent, profiling", profiling);
+    modes.put("agent, profiling all", profilingAll);
+    AgentOverheadLoadTest.measure(
+        modes, Path.of(System.getProperty("report.file", "profiling-overhead.csv")));
+  }
+}
@@ -0,0 +1,156 @@
+package com.example.profiling;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Builds a profile in pprof's format, the gzipped {@code profile.proto} message that {@code go tool
+ * pprof} and most profile viewers read, without a protobuf dependency. Each sample has a stack, a
+ * count of execution samples, the CPU time they stand for, the bytes allocated there, and string
+ * labels, such as the trace and span it was taken in.
+ */
+final class PprofWriter {
+
+  /** A stack frame, leaf first in a stack. */
+  record Frame(String function, String file, int line) {}
+
+  private final Map<String, Long> strings = new LinkedHashMap<>();
+  private final Map<String, Long> functions = new HashMap<>();
+  private final Map<String, Long> locations = new HashMap<>();
+  private final ByteArrayOutputStream functionMessages = new ByteArrayOutputStream();
+  private final ByteArrayOutputStream locationMessages = new ByteArrayOutputStream();
+  private final ByteArrayOutputStream sampleMessages = new ByteArrayOutputStream();
+  private final long timeNanos;
+  private final long durationNanos;
+  private final long periodNanos;
+
+  /**
+   * @param timeNanos when the profile starts, in nanoseconds since the epoch
+   * @param durationNanos how long it covers
+   * @param periodNanos the time between execution samples
+   */
+  PprofWriter(long timeNanos, long durationNanos, long periodNanos) {
+    this.timeNanos = timeNanos;
+    this.durationNanos = durationNanos;
+    this.periodNanos = periodNanos;
+    // The string table starts with the empty string
+    string("");
+  }
+
+  void addSample(List<Frame> stack, long samples, long allocatedBytes, Map<String, String> labels) {
+    long[] locationIds = new long[stack.size()];
+    for (int i = 0; i < locationIds.length; i++) {
+      locationIds[i] = location(stack.get(i));
+    }
+    ByteArrayOutputStream sample = new ByteArrayOutputStream();
+    writePacked(sample, 1, locationIds);
+    writePacked(sample, 2, new long[] {samples, samples * periodNanos, allocatedBytes});
+    labels.forEach(
+        (key, value) -> {
+          ByteArrayOutputStream label = new ByteArrayOutputStream();
+          writeVarintField(label, 1, string(key));
+          writeVarintField(label, 2, string(value));
+          writeBytesField(sample, 3, label.toByteArray());
+        });
+    writeBytesField(sampleMessages, 2, sample.toByteArray());
+  }
+
+  byte[] toGzippedBytes() throws IOException {
+    ByteArrayOutputStream profile = new ByteArrayOutputStream();
+    writeBytesField(profile, 1, valueType("samples", "count"));
+    writeBytesField(profile, 1, valueType("cpu", "nanoseconds"));
+    writeBytesField(profile, 1, valueType("alloc_space", "bytes"));
+    sampleMessages.writeTo(profile);
+    locationMessages.writeTo(profile);
+    functionMessages.writeTo(profile);
+    writeVarintField(profile, 9, timeNanos);
+    writeVarintField(profile, 10, durationNanos);
+    writeBytesField(profile, 11, valueType("cpu", "nanoseconds"));
+    writeVarintField(profile, 12, periodNanos);
+    // Written last, once every string has been added
+    for (String value : strings.keySet()) {
+      writeBytesField(profile, 6, value.getBytes(StandardCharsets.UTF_8));
+    }
+    ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+    try (GZIPOutputStream out = new GZIPOutputStream(gzipped)) {
+      profile.writeTo(out);
+    }
+    return gzipped.toByteArray();
+  }
+
+  private byte[] valueType(String type, String unit) {
+    ByteArrayOutputStream valueType = new ByteArrayOutputStream();
+    writeVarintField(valueType, 1, string(type));
+    writeVarintField(valueType, 2, string(unit));
+    return valueType.toByteArray();
+  }
+
+  private long location(Frame frame) {
+    long functionId = function(frame);
+    return locations.computeIfAbsent(
+        functionId + ":" + frame.line(),
+        key -> {
+          long id = locations.size() + 1;
+          ByteArrayOutputStream line = new ByteArrayOutputStream();
+          writeVarintField(line, 1, functionId);
+          writeVarintField(line, 2, frame.line());
+          ByteArrayOutputStream location = new ByteArrayOutputStream();
+          writeVarintField(location, 1, id);
+          writeBytesField(location, 4, line.toByteArray());
+          writeBytesField(locationMessages, 4, location.toByteArray());
+          return id;
+        });
+  }
+
+  private long function(Frame frame) {
+    return functions.computeIfAbsent(
+        frame.function() + "\0" + frame.file(),
+        key -> {
+          long id = functions.size() + 1;
+          ByteArrayOutputStream function = new ByteArrayOutputStream();
+          writeVarintField(function, 1, id);
+          writeVarintField(function, 2, string(frame.function()));
+          writeVarintField(function, 3, string(frame.function()));
+          writeVarintField(function, 4, string(frame.file()));
+          writeBytesField(functionMessages, 5, function.toByteArray());
+          return id;
+        });
+  }
+
+  private long string(String value) {
+    return strings.computeIfAbsent(value, key -> (long) strings.size());
+  }
+
+  private static void writeVarintField(ByteArrayOutputStream out, int field, long value) {
+    writeVarint(out, (long) field << 3);
+    writeVarint(out, value);
+  }
+
+  private static void writeBytesField(ByteArrayOutputStream out, int field, byte[] bytes) {
+    writeVarint(out, (long) field << 3 | 2);
+    writeVarint(out, bytes.length);
+    out.writeBytes(bytes);
+  }
+
+  private static void writePacked(ByteArrayOutputStream out, int field, long[] values) {
+    ByteArrayOutputStream packed = new ByteArrayOutputStream();
+    for (long value : values) {
+      writeVarint(packed, value);
+    }
+    writeBytesField(out, field, packed.toByteArray());
+  }
+
+  private static void writeVarint(ByteArrayOutputStream out, long value) {
+    while ((value & ~0x7FL) != 0) {
+      out.write((int) (value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.write((int) value);
+  }
+}
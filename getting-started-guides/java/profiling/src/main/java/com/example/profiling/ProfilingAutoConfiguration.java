@@ -0,0 +1,56 @@
+package com.example.profiling;
+
+import io.opentelemetry.api.GlobalOpenTelemetry;
+import io.opentelemetry.api.OpenTelemetry;
+import java.nio.file.Path;
+import java.time.Duration;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.Ordered;
+
+/**
+ * Profiles the slowest requests with JFR when {@code profiling.enabled} is {@code true}, for
+ * example with {@code PROFILING_ENABLED=true} in the environment. It is off by default, and then
+ * costs nothing. See SpanProfiler for the other {@code profiling.*} properties.
+ *
+ * <p>Spans are taken from {@link GlobalOpenTelemetry} unless the application has an OpenTelemetry
+ * bean, so with the agent attached the {@code span.profile} spans are exported alongside the spans
+ * they profile.
+ */
+@AutoConfiguration
+@ConditionalOnProperty(name = "profiling.enabled", havingValue = "true")
+public class ProfilingAutoConfiguration {
+
+  @Bean(initMethod = "start", destroyMethod = "close")
+  SpanProfiler spanProfiler(
+      ObjectProvider<OpenTelemetry> openTelemetry,
+      @Value("${profiling.interval:60s}") Duration interval,
+      @Value("${profiling.span-threshold:10ms}") Duration spanThreshold,
+      @Value("${profiling.sample-period:20ms}") Duration samplePeriod,
+      @Value("${profiling.allocation-throttle:100/s}") String allocationThrottle,
+      @Value("${profiling.hot-spans:10}") int hotSpans,
+      @Value("${profiling.directory:${java.io.tmpdir}/getting-started-profiles}") Path directory,
+      @Value("${profiling.max-files:60}") int maxFiles) {
+    return new SpanProfiler(
+        openTelemetry.getIfAvailable(GlobalOpenTelemetry::get),
+        interval,
+        spanThreshold,
+        samplePeriod,
+        allocationThrottle,
+        hotSpans,
+        directory,
+        maxFiles);
+  }
+
+  @Bean
+  FilterRegistrationBean<SpanScopeFilter> spanScopeFilter() {
+    FilterRegistrationBean<SpanScopeFilter> registration =
+        new FilterRegistrationBean<>(new SpanScopeFilter());
+    registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+    return registration;
+  }
+}
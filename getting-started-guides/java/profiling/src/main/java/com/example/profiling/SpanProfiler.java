@@ -0,0 +1,376 @@
+package com.example.profiling;
+
+import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanContext;
+import io.opentelemetry.api.trace.TraceFlags;
+import io.opentelemetry.api.trace.TraceState;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Context;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * Runs a continuous JFR recording and, every {@code interval}, profiles the slowest spans in it.
+ *
+ * <p>The recording keeps execution samples every {@code samplePeriod}, allocation samples throttled
+ * to {@code allocationThrottle}, monitor waits over 10 ms, garbage collections, and a
+ * SpanScopeEvent for every request that took longer than {@code spanThreshold}. It holds at most
+ * two intervals and 32 MB, so its cost is bounded whatever the load. At each interval it is dumped
+ * to a temporary file and read back off the request path, and the {@code hotSpans} longest span
+ * scopes that ended in the interval are given the samples their thread took while they were
+ * current.
+ *
+ * <p>Each interval's profiles are written to {@code directory} as one pprof file, gzipped protobuf,
+ * whose samples are labelled with {@code trace_id}, {@code span_id} and {@code operation}; the
+ * newest {@code maxFiles} are kept. Each hot span also gets a {@code span.profile} child span, with
+ * the same start and end, that carries the CPU samples, bytes allocated, time waiting on monitors
+ * and in garbage collection, the top frames and the pprof file, so the profile shows up in the
+ * trace.
+ */
+final class SpanProfiler implements AutoCloseable {
+
+  private static final Logger logger = Logger.getLogger(SpanProfiler.class.getName());
+
+  private static final long MAX_RECORDING_BYTES = 32 * 1024 * 1024;
+  private static final int TOP_FRAMES = 5;
+  private static final AttributeKey<List<String>> TOP_FRAMES_KEY =
+      AttributeKey.stringArrayKey("profile.top_frames");
+
+  private final Tracer tracer;
+  private final Duration interval;
+  private final Duration spanThreshold;
+  private final Duration samplePeriod;
+  private final String allocationThrottle;
+  private final int hotSpans;
+  private final Path directory;
+  private final int maxFiles;
+  private Recording recording;
+  private ScheduledExecutorService executor;
+  private Instant windowStart;
+
+  SpanProfiler(
+      OpenTelemetry openTelemetry,
+      Duration interval,
+      Duration spanThreshold,
+      Duration samplePeriod,
+      String allocationThrottle,
+      int hotSpans,
+      Path directory,
+      int maxFiles) {
+    this.tracer = openTelemetry.getTracer(SpanProfiler.class.getName());
+    this.interval = interval;
+    this.spanThreshold = spanThreshold;
+    this.samplePeriod = samplePeriod;
+    this.allocationThrottle = allocationThrottle;
+    this.hotSpans = hotSpans;
+    this.directory = directory;
+    this.maxFiles = maxFiles;
+  }
+
+  void start() throws IOException {
+    Files.createDirectories(directory);
+    recording = new Recording();
+    recording.setName("span-profiler");
+    recording.setToDisk(true);
+    recording.setMaxAge(interval.multipliedBy(2));
+    recording.setMaxSize(MAX_RECORDING_BYTES);
+    recording.enable("jdk.ExecutionSample").withPeriod(samplePeriod);
+    recording.enable("jdk.ObjectAllocationSample").with("throttle", allocationThrottle);
+    recording
+        .enable("jdk.JavaMonitorEnter")
+        .withThreshold(Duration.ofMillis(10))
+        .withoutStackTrace();
+    recording.enable("jdk.GarbageCollection");
+    recording.enable(SpanScopeEvent.class).withThreshold(spanThreshold);
+    recording.start();
+    windowStart = Instant.now();
+    executor =
+        Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+              Thread thread = new Thread(runnable, "span-profiler");
+              thread.setDaemon(true);
+              return thread;
+            });
+    executor.scheduleWithFixedDelay(
+        this::exportQuietly, interval.toNanos(), interval.toNanos(), TimeUnit.NANOSECONDS);
+  }
+
+  private void exportQuietly() {
+    try {
+      export();
+    } catch (Exception e) {
+      logger.log(Level.WARNING, "Failed to export span profiles", e);
+    }
+  }
+
+  /** Profiles the hot spans that ended since the last export. */
+  void export() throws IOException {
+    Instant start = windowStart;
+    Instant end = Instant.now();
+    windowStart = end;
+    Path dump = Files.createTempFile("span-profiler", ".jfr");
+    try {
+      recording.dump(dump);
+      List<SpanScope> scopes = hotScopes(dump, start, end);
+      if (scopes.isEmpty()) {
+        return;
+      }
+      attributeSamples(dump, scopes);
+      Path file = directory.resolve("spans-" + end.toEpochMilli() + ".pb.gz");
+      Files.write(file, pprof(scopes, start, end));
+      for (SpanScope scope : scopes) {
+        recordProfileSpan(scope, file);
+      }
+      pruneFiles();
+    } finally {
+      Files.deleteIfExists(dump);
+    }
+  }
+
+  /** Returns the longest span scopes that ended in the window, at most {@code hotSpans}. */
+  private List<SpanScope> hotScopes(Path dump, Instant start, Instant end) throws IOException {
+    List<SpanScope> scopes = new ArrayList<>();
+    try (RecordingFile file = new RecordingFile(dump)) {
+      while (file.hasMoreEvents()) {
+        RecordedEvent event = file.readEvent();
+        if (event.getEventType().getName().equals(SpanScopeEvent.NAME)
+            && !event.getEndTime().isBefore(start)
+            && event.getEndTime().isBefore(end)) {
+          scopes.add(
+              new SpanScope(
+                  event.getString("traceId"),
+                  event.getString("spanId"),
+                  TraceFlags.fromByte(event.getByte("traceFlags")),
+                  event.getString("operation"),
+                  event.getThread().getJavaThreadId(),
+                  nanos(event.getStartTime()),
+                  nanos(event.getEndTime())));
+        }
+      }
+    }
+    scopes.sort(Comparator.comparingLong(SpanScope::durationNanos).reversed());
+    return new ArrayList<>(scopes.subList(0, Math.min(hotSpans, scopes.size())));
+  }
+
+  /** Adds the samples, monitor waits and collections in the recording to the scopes they hit. */
+  private static void attributeSamples(Path dump, List<SpanScope> scopes) throws IOException {
+    Map<Long, List<SpanScope>> byThread = new HashMap<>();
+    for (SpanScope scope : scopes) {
+      byThread.computeIfAbsent(scope.threadId, id -> new ArrayList<>()).add(scope);
+    }
+    try (RecordingFile file = new RecordingFile(dump)) {
+      while (file.hasMoreEvents()) {
+        RecordedEvent event = file.readEvent();
+        switch (event.getEventType().getName()) {
+          case "jdk.ExecutionSample" -> {
+            SpanScope scope =
+                find(
+                    byThread,
+                    event.getThread("sampledThread").getJavaThreadId(),
+                    nanos(event.getStartTime()));
+            if (scope != null) {
+              scope.add(event.getStackTrace(), 1, 0);
+            }
+          }
+          case "jdk.ObjectAllocationSample" -> {
+            SpanScope scope =
+                find(byThread, event.getThread().getJavaThreadId(), nanos(event.getStartTime()));
+            if (scope != null) {
+              scope.add(event.getStackTrace(), 0, event.getLong("weight"));
+            }
+          }
+          case "jdk.JavaMonitorEnter" -> {
+            for (SpanScope scope :
+                byThread.getOrDefault(event.getThread().getJavaThreadId(), List.of())) {
+              scope.lockNanos += scope.overlap(event);
+            }
+          }
+          case "jdk.GarbageCollection" -> {
+            // Collections stop every thread, but only for their pauses
+            long pauses = event.getDuration("sumOfPauses").toNanos();
+            for (SpanScope scope : scopes) {
+              scope.gcNanos += Math.min(pauses, scope.overlap(event));
+            }
+          }
+          default -> {}
+        }
+      }
+    }
+  }
+
+  private static SpanScope find(Map<Long, List<SpanScope>> byThread, long threadId, long time) {
+    for (SpanScope scope : byThread.getOrDefault(threadId, List.of())) {
+      if (time >= scope.startNanos && time <= scope.endNanos) {
+        return scope;
+      }
+    }
+    return null;
+  }
+
+  private byte[] pprof(List<SpanScope> scopes, Instant start, Instant end) throws IOException {
+    PprofWriter writer =
+        new PprofWriter(
+            nanos(start), Duration.between(start, end).toNanos(), samplePeriod.toNanos());
+    for (SpanScope scope : scopes) {
+      Map<String, String> labels =
+          Map.of("trace_id", scope.traceId, "span_id", scope.spanId, "operation", scope.operation);
+      scope.stacks.forEach(
+          (stack, values) -> writer.addSample(stack, values[0], values[1], labels));
+    }
+    return writer.toGzippedBytes();
+  }
+
+  /**
+   * Records a child of the hot span, over the same time, that summarizes its profile. It takes the
+   * hot span's trace flags, so it is only sampled when the hot span was.
+   */
+  private void recordProfileSpan(SpanScope scope, Path file) {
+    SpanContext parent =
+        SpanContext.createFromRemoteParent(
+            scope.traceId, scope.spanId, scope.traceFlags, TraceState.getDefault());
+    tracer
+        .spanBuilder("span.profile")
+        .setParent(Context.root().with(Span.wrap(parent)))
+        .setStartTimestamp(scope.startNanos, TimeUnit.NANOSECONDS)
+        .setAttribute("profile.operation", scope.operation)
+        .setAttribute("profile.cpu.samples", scope.samples)
+        .setAttribute("profile.cpu.sample_period_ms", samplePeriod.toMillis())
+        .setAttribute("profile.alloc.bytes", scope.allocatedBytes)
+        .setAttribute("profile.lock.wait_ms", scope.lockNanos / 1_000_000)
+        .setAttribute("profile.gc.pause_ms", scope.gcNanos / 1_000_000)
+        .setAttribute(TOP_FRAMES_KEY, scope.topFrames())
+        .setAttribute("profile.file", file.toString())
+        .startSpan()
+        .end(scope.endNanos, TimeUnit.NANOSECONDS);
+  }
+
+  private void pruneFiles() throws IOException {
+    List<Path> files;
+    try (Stream<Path> list = Files.list(directory)) {
+      files =
+          list.filter(path -> path.getFileName().toString().startsWith("spans-"))
+              .sorted(Comparator.reverseOrder())
+              .toList();
+    }
+    for (Path file : files.subList(Math.min(maxFiles, files.size()), files.size())) {
+      Files.deleteIfExists(file);
+    }
+  }
+
+  @Override
+  public void close() {
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+    if (recording != null) {
+      recording.close();
+    }
+  }
+
+  private static long nanos(Instant instant) {
+    return instant.getEpochSecond() * 1_000_000_000L + instant.getNano();
+  }
+
+  /** A hot span's scope on one thread, and the samples taken in it. */
+  private static final class SpanScope {
+
+    final String traceId;
+    final String spanId;
+    final TraceFlags traceFlags;
+    final String operation;
+    final long threadId;
+    final long startNanos;
+    final long endNanos;
+    // [execution samples, bytes allocated] by stack, leaf first
+    final Map<List<PprofWriter.Frame>, long[]> stacks = new HashMap<>();
+    long samples;
+    long allocatedBytes;
+    long lockNanos;
+    long gcNanos;
+
+    SpanScope(
+        String traceId,
+        String spanId,
+        TraceFlags traceFlags,
+        String operation,
+        long threadId,
+        long startNanos,
+        long endNanos) {
+      this.traceId = traceId;
+      this.spanId = spanId;
+      this.traceFlags = traceFlags;
+      this.operation = operation;
+      this.threadId = threadId;
+      this.startNanos = startNanos;
+      this.endNanos = endNanos;
+    }
+
+    long durationNanos() {
+      return endNanos - startNanos;
+    }
+
+    long overlap(RecordedEvent event) {
+      return Math.max(
+          0,
+          Math.min(endNanos, nanos(event.getEndTime()))
+              - Math.max(startNanos, nanos(event.getStartTime())));
+    }
+
+    void add(RecordedStackTrace stackTrace, long samples, long bytes) {
+      if (stackTrace == null) {
+        return;
+      }
+      List<PprofWriter.Frame> stack = new ArrayList<>(stackTrace.getFrames().size());
+      for (RecordedFrame frame : stackTrace.getFrames()) {
+        stack.add(
+            new PprofWriter.Frame(
+                frame.getMethod().getType().getName() + "." + frame.getMethod().getName(),
+                frame.getMethod().getType().getName(),
+                frame.getLineNumber()));
+      }
+      long[] values = stacks.computeIfAbsent(stack, key -> new long[2]);
+      values[0] += samples;
+      values[1] += bytes;
+      this.samples += samples;
+      this.allocatedBytes += bytes;
+    }
+
+    /** The leaf frames most samples were taken in, with their sample counts. */
+    List<String> topFrames() {
+      Map<String, Long> leaves = new HashMap<>();
+      stacks.forEach(
+          (stack, values) -> {
+            if (values[0] > 0 && !stack.isEmpty()) {
+              PprofWriter.Frame leaf = stack.get(0);
+              leaves.merge(leaf.function() + ":" + leaf.line(), values[0], Long::sum);
+            }
+          });
+      return leaves.entrySet().stream()
+          .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+          .limit(TOP_FRAMES)
+          .map(entry -> entry.getKey() + " (" + entry.getValue() + " samples)")
+          .toList();
+    }
+  }
+}
@@ -0,0 +1,34 @@
+package com.example.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The time a thread spent with a span current. Execution and allocation samples taken on the same
+ * thread within it are attributed to the span.
+ */
+@Name(SpanScopeEvent.NAME)
+@Label("Span Scope")
+@Category("OpenTelemetry")
+@Description("A thread with an OpenTelemetry span current")
+@StackTrace(false)
+final class SpanScopeEvent extends Event {
+
+  static final String NAME = "com.example.profiling.SpanScope";
+
+  @Label("Trace ID")
+  String traceId;
+
+  @Label("Span ID")
+  String spanId;
+
+  @Label("Trace Flags")
+  byte traceFlags;
+
+  @Label("Operation")
+  String operation;
+}
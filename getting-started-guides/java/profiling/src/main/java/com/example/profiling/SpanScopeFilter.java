@@ -0,0 +1,42 @@
+package com.example.profiling;
+
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanContext;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * Records each request as a SpanScopeEvent, tagged with the span current while it is handled: the
+ * server span, when the agent is attached. The event is only committed if the request took longer
+ * than the event's threshold, so fast requests cost a timestamp or two.
+ */
+final class SpanScopeFilter extends OncePerRequestFilter {
+
+  @Override
+  protected void doFilterInternal(
+      HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+      throws ServletException, IOException {
+    SpanScopeEvent event = new SpanScopeEvent();
+    event.begin();
+    try {
+      chain.doFilter(request, response);
+    } finally {
+      event.end();
+      if (event.shouldCommit()) {
+        // The server span is still current once the chain has returned
+        SpanContext spanContext = Span.current().getSpanContext();
+        if (spanContext.isValid()) {
+          event.traceId = spanContext.getTraceId();
+          event.spanId = spanContext.getSpanId();
+          event.traceFlags = spanContext.getTraceFlags().asByte();
+          event.operation = request.getMethod() + " " + request.getRequestURI();
+          event.commit();
+        }
+      }
+    }
+  }
+}
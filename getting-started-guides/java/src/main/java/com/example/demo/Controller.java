@@ -8,11 +8,18 @@ import io.opentelemetry.api.metrics.Meter;
 import io.opentelemetry.api.trace.Span;
 import io.opentelemetry.api.trace.StatusCode;
 import io.opentelemetry.api.trace.Tracer;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.HttpRequestMethodNotSupportedException;
 import org.springframework.web.bind.MissingServletRequestParameterException;
@@ -29,6 +36,17 @@ public class Controller {
   private static final AttributeKey<Long> ATTR_RESULT = AttributeKey.longKey("fibonacci.result");
   private static final AttributeKey<Boolean> ATTR_VALID_N =
       AttributeKey.booleanKey("fibonacci.valid.n");
+  private static final AttributeKey<Long> ATTR_BATCH_SIZE =
+      AttributeKey.longKey("fibonacci.batch.size");
+  private static final AttributeKey<Long> ATTR_MIN_N = AttributeKey.longKey("fibonacci.n.min");
+  private static final AttributeKey<Long> ATTR_MAX_N = AttributeKey.longKey("fibonacci.n.max");
+  private static final AttributeKey<Long> ATTR_INVALID_COUNT =
+      AttributeKey.longKey("fibonacci.invalid.count");
+  private static final Attributes VALID = Attributes.of(ATTR_VALID_N, true);
+  private static final Attributes INVALID = Attributes.of(ATTR_VALID_N, false);
+
+  // fibonacci(n) for every valid n, indexed by n
+  private static final long[] FIBONACCI = fibonacciTable(90);
 
   private final Tracer tracer;
   private final LongCounter fibonacciInvocations;
@@ -51,6 +69,91 @@ public class Controller {
     return Map.of("n", n, "result", fibonacci(n));
   }
 
+  /**
+   * Look up the fibonacci numbers for each {@code n}, for example {@code
+   * /fibonacci/batch?n=1,2,90}, and stream them back as a JSON array of the same objects {@code
+   * /fibonacci} returns. The whole batch is recorded as one span, one counter increment and one log
+   * line. If any {@code n} is out of range, nothing is returned but the error.
+   */
+  @GetMapping(value = "/fibonacci/batch")
+  public void getFibonacciBatch(
+      @RequestParam(required = true, name = "n") long[] n, HttpServletResponse response)
+      throws IOException {
+    // Start one span for the batch, with attributes that summarize it
+    var span =
+        tracer
+            .spanBuilder("fibonacci.batch")
+            .setAttribute(ATTR_BATCH_SIZE, (long) n.length)
+            .startSpan();
+    long min = Long.MAX_VALUE;
+    long max = Long.MIN_VALUE;
+    long invalid = 0;
+    for (long value : n) {
+      min = Math.min(min, value);
+      max = Math.max(max, value);
+      if (value < 1 || value > 90) {
+        invalid++;
+      }
+    }
+    if (n.length > 0) {
+      span.setAttribute(ATTR_MIN_N, min).setAttribute(ATTR_MAX_N, max);
+    }
+
+    try (var scope = span.makeCurrent()) {
+      if (n.length == 0) {
+        throw new IllegalArgumentException("n must have at least one value.");
+      }
+      if (invalid > 0) {
+        span.setAttribute(ATTR_INVALID_COUNT, invalid);
+        throw new IllegalArgumentException("n must be 1 <= n <= 90.");
+      }
+
+      // Write each result as it is looked up, rather than building the whole response first
+      response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+      Writer out =
+          new BufferedWriter(
+              new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8));
+      out.write('[');
+      for (int i = 0; i < n.length; i++) {
+        if (i > 0) {
+          out.write(',');
+        }
+        out.write("{\"n\":");
+        out.write(Long.toString(n[i]));
+        out.write(",\"result\":");
+        out.write(Long.toString(FIBONACCI[(int) n[i]]));
+        out.write('}');
+      }
+      out.write(']');
+      out.flush();
+
+      // Counter to increment by the number of valid inputs
+      fibonacciInvocations.add(n.length, VALID);
+      // Log the batch, formatting the message only if it is logged
+      LOGGER.info("Computed {} fibonacci values for n from {} to {}", n.length, min, max);
+    } catch (IllegalArgumentException e) {
+      // Record the exception and set the span status
+      span.recordException(e).setStatus(StatusCode.ERROR, e.getMessage());
+      // Counter to increment by the number of invalid inputs
+      fibonacciInvocations.add(invalid, INVALID);
+      LOGGER.info("Failed to compute {} of {} fibonacci values", invalid, n.length);
+      throw e;
+    } finally {
+      // End the span
+      span.end();
+    }
+  }
+
+  /** Returns the fibonacci numbers from 1 to {@code max}, indexed by n, the way fibonacci does. */
+  private static long[] fibonacciTable(int max) {
+    long[] table = new long[max + 1];
+    table[1] = 1;
+    for (int i = 2; i <= max; i++) {
+      table[i] = table[i - 1] + table[i - 2];
+    }
+    return table;
+  }
+
   /**
    * Compute the fibonacci number for {@code n}.
    *
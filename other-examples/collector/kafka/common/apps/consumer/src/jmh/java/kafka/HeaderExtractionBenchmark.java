@@ -0,0 +1,50 @@
+package kafka;
+
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanContext;
+import io.opentelemetry.api.trace.propagation.W3CTraceContextPropagator;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.context.propagation.TextMapPropagator;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-record cost of reading the producer's span context back out of the record headers, which
+ * BatchTracing pays for every record up to the link cap. {@code headerPresent} is the check it
+ * does for records beyond the cap.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class HeaderExtractionBenchmark {
+
+    // The agent's global propagators are not installed here, so use the W3C propagator directly
+    private final TextMapPropagator propagator = W3CTraceContextPropagator.getInstance();
+    private final Headers headers = new RecordHeaders()
+        .add("traceparent", "00-4bf92f3577b34da6a3ce929d0e0e4736-00f067aa0ba902b7-01".getBytes(StandardCharsets.UTF_8));
+
+    @Benchmark
+    public boolean headerPresent() {
+        return headers.lastHeader("traceparent") != null;
+    }
+
+    @Benchmark
+    public SpanContext extract() {
+        return Span.fromContext(propagator.extract(Context.root(), headers, HeadersGetter.INSTANCE)).getSpanContext();
+    }
+}
@@ -0,0 +1,172 @@
+package kafka;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the consumer's per-record decode cost for each codec: the timestamp for every record,
+ * plus amount, quantity and product for orders and amount and method for payments, which is all
+ * EndToEndLatency and WindowedAggregator read. Records are an even mix of orders, payments and
+ * shipments in the shapes ProducerApp emits. Setup prints the average value size per codec.
+ * Encode cost is measured by RecordEncodingBenchmark in the producer app.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class RecordCodecBenchmark {
+
+    private static final String[] PRODUCTS = {"laptop", "phone", "tablet", "headphones", "keyboard"};
+    private static final String[] STATUSES = {"pending", "confirmed", "processing"};
+    private static final String[] METHODS  = {"credit_card", "debit_card", "paypal", "bank_transfer"};
+    private static final String[] CARRIERS = {"fedex", "ups", "dhl", "usps"};
+
+    @Param({"json", "binary"})
+    String codecName;
+
+    private RecordCodec codec;
+    private byte[][] values;
+    private final ByteDictionary products = new ByteDictionary(256);
+    private final ByteDictionary methods = new ByteDictionary(256);
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        boolean binary = codecName.equals("binary");
+        codec = binary ? new BinaryCodec() : new JsonCodec();
+        values = new byte[3 * 1024][];
+        Random rng = new Random(42);
+        long ts = System.currentTimeMillis();
+        long bytes = 0;
+        for (int i = 0; i < values.length; i += 3) {
+            values[i] = binary ? binaryOrder(rng, ts) : jsonOrder(rng, ts);
+            values[i + 1] = binary ? binaryPayment(rng, ts) : jsonPayment(rng, ts);
+            values[i + 2] = binary ? binaryShipment(rng, ts) : jsonShipment(rng, ts);
+            bytes += values[i].length + values[i + 1].length + values[i + 2].length;
+        }
+        System.out.printf("%nValue bytes per record (%s): %.1f%n", codecName, bytes / (double) values.length);
+    }
+
+    @Benchmark
+    public void decode(Blackhole bh) {
+        int i = next;
+        next = i + 1 == values.length ? 0 : i + 1;
+        byte[] value = values[i];
+        bh.consume(codec.timestamp(value));
+        switch (i % 3) {
+            case 0:
+                bh.consume(codec.amountCents(value));
+                bh.consume(codec.quantity(value));
+                bh.consume(codec.product(value, products));
+                break;
+            case 1:
+                bh.consume(codec.amountCents(value));
+                bh.consume(codec.method(value, methods));
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static byte[] jsonOrder(Random rng, long ts) {
+        return String.format(
+            "{\"order_id\":\"%s\",\"product\":\"%s\",\"status\":\"%s\",\"amount\":%.2f,\"quantity\":%d,\"ts\":%d}",
+            "order-" + rng.nextInt(10_000), PRODUCTS[rng.nextInt(PRODUCTS.length)], STATUSES[rng.nextInt(STATUSES.length)],
+            10 + rng.nextDouble() * 990, 1 + rng.nextInt(5), ts).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] jsonPayment(Random rng, long ts) {
+        return String.format(
+            "{\"payment_id\":\"%s\",\"order_id\":\"%s\",\"method\":\"%s\",\"amount\":%.2f,\"ts\":%d}",
+            "pay-" + rng.nextInt(10_000), "order-" + rng.nextInt(10_000), METHODS[rng.nextInt(METHODS.length)],
+            10 + rng.nextDouble() * 990, ts).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] jsonShipment(Random rng, long ts) {
+        String carrier = CARRIERS[rng.nextInt(CARRIERS.length)];
+        return String.format(
+            "{\"shipment_id\":\"%s\",\"order_id\":\"%s\",\"carrier\":\"%s\",\"tracking\":\"%s\",\"ts\":%d}",
+            "ship-" + rng.nextInt(10_000), "order-" + rng.nextInt(10_000), carrier,
+            carrier.toUpperCase() + rng.nextInt(1_000_000), ts).getBytes(StandardCharsets.UTF_8);
+    }
+
+    // The binary fixtures follow the layout documented on BinaryCodec
+
+    private static byte[] binaryOrder(Random rng, long ts) {
+        String orderId = "order-" + rng.nextInt(10_000);
+        String product = PRODUCTS[rng.nextInt(PRODUCTS.length)];
+        String status = STATUSES[rng.nextInt(STATUSES.length)];
+        long cents = Math.round((10 + rng.nextDouble() * 990) * 100);
+        int quantity = 1 + rng.nextInt(5);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(1);
+        varint(out, ts);
+        varint(out, cents);
+        varint(out, quantity);
+        string(out, orderId);
+        string(out, product);
+        string(out, status);
+        return out.toByteArray();
+    }
+
+    private static byte[] binaryPayment(Random rng, long ts) {
+        String paymentId = "pay-" + rng.nextInt(10_000);
+        String orderId = "order-" + rng.nextInt(10_000);
+        String method = METHODS[rng.nextInt(METHODS.length)];
+        long cents = Math.round((10 + rng.nextDouble() * 990) * 100);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(2);
+        varint(out, ts);
+        varint(out, cents);
+        string(out, paymentId);
+        string(out, orderId);
+        string(out, method);
+        return out.toByteArray();
+    }
+
+    private static byte[] binaryShipment(Random rng, long ts) {
+        String shipmentId = "ship-" + rng.nextInt(10_000);
+        String orderId = "order-" + rng.nextInt(10_000);
+        String carrier = CARRIERS[rng.nextInt(CARRIERS.length)];
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(3);
+        varint(out, ts);
+        string(out, shipmentId);
+        string(out, orderId);
+        string(out, carrier);
+        string(out, carrier.toUpperCase() + rng.nextInt(1_000_000));
+        return out.toByteArray();
+    }
+
+    private static void varint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static void string(ByteArrayOutputStream out, String value) {
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        varint(out, utf8.length);
+        out.write(utf8, 0, utf8.length);
+    }
+}
@@ -0,0 +1,116 @@
+package kafka;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures records/sec through {@link WindowedAggregator#accept} with the given number of windows
+ * open at once, using the same JSON shapes ProducerApp.buildOrder and buildPayment emit. Setup also
+ * prints the retained heap per active window, measured around a forced GC with 1000 windows open.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class WindowedAggregatorBenchmark {
+
+    private static final long WINDOW_MILLIS = 60_000;
+    // Large enough that no window closes during a run, so the active window count stays fixed
+    private static final long NO_EVICTION = Long.MAX_VALUE / 4;
+
+    private static final String[] PRODUCTS = {"laptop", "phone", "tablet", "headphones", "keyboard"};
+    private static final String[] STATUSES = {"pending", "confirmed", "processing"};
+    private static final String[] METHODS  = {"credit_card", "debit_card", "paypal", "bank_transfer"};
+
+    @Param({"1", "10", "60"})
+    int activeWindows;
+
+    private ConsumerRecord<String, byte[]>[] records;
+    private WindowedAggregator aggregator;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        records = records(4096, activeWindows, new Random(42));
+        aggregator = new WindowedAggregator(WINDOW_MILLIS, NO_EVICTION, new JsonCodec());
+        printHeapPerWindow();
+    }
+
+    @Benchmark
+    public void accept() {
+        aggregator.accept(records[next]);
+        next = (next + 1) & (records.length - 1);
+    }
+
+    private void printHeapPerWindow() {
+        // Open many windows so GC noise is small relative to the state being measured
+        int windows = 1000;
+        ConsumerRecord<String, byte[]>[] probeRecords = records(windows * 2, windows, new Random(7));
+        Runtime runtime = Runtime.getRuntime();
+        WindowedAggregator probe = new WindowedAggregator(WINDOW_MILLIS, NO_EVICTION, new JsonCodec());
+        // Records 0 and 1 populate both dictionaries, so only per-window state is counted below
+        probe.accept(probeRecords[0]);
+        probe.accept(probeRecords[1]);
+        long before = usedAfterGc(runtime);
+        for (ConsumerRecord<String, byte[]> record : probeRecords) {
+            probe.accept(record);
+        }
+        long after = usedAfterGc(runtime);
+        System.out.printf("%nRetained heap per active window: ~%d bytes%n",
+            (after - before) / (probe.activeWindows() - 1));
+    }
+
+    private static long usedAfterGc(Runtime runtime) {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    @SuppressWarnings("unchecked")
+    static ConsumerRecord<String, byte[]>[] records(int count, int windows, Random rng) {
+        ConsumerRecord<String, byte[]>[] records = new ConsumerRecord[count];
+        long base = System.currentTimeMillis() / WINDOW_MILLIS * WINDOW_MILLIS;
+        for (int i = 0; i < count; i++) {
+            // Records 0 and 1 land in the first window, so both dictionaries are populated early
+            long ts = base + (i < 2 ? 0 : (i % windows) * WINDOW_MILLIS) + rng.nextInt((int) WINDOW_MILLIS);
+            records[i] = i % 2 == 0 ? order(rng, ts) : payment(rng, ts);
+        }
+        return records;
+    }
+
+    private static ConsumerRecord<String, byte[]> order(Random rng, long ts) {
+        String orderId = "order-" + rng.nextInt(10_000);
+        String json = String.format(
+            "{\"order_id\":\"%s\",\"product\":\"%s\",\"status\":\"%s\",\"amount\":%.2f,\"quantity\":%d,\"ts\":%d}",
+            orderId, PRODUCTS[rng.nextInt(PRODUCTS.length)], STATUSES[rng.nextInt(STATUSES.length)],
+            10 + rng.nextDouble() * 990, 1 + rng.nextInt(5), ts);
+        return new ConsumerRecord<>("orders", 0, 0, orderId, json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static ConsumerRecord<String, byte[]> payment(Random rng, long ts) {
+        String paymentId = "pay-" + rng.nextInt(10_000);
+        String json = String.format(
+            "{\"payment_id\":\"%s\",\"order_id\":\"%s\",\"method\":\"%s\",\"amount\":%.2f,\"ts\":%d}",
+            paymentId, "order-" + rng.nextInt(10_000), METHODS[rng.nextInt(METHODS.length)],
+            10 + rng.nextDouble() * 990, ts);
+        return new ConsumerRecord<>("payments", 0, 0, paymentId, json.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,67 @@
+package kafka;
+
+import io.opentelemetry.api.GlobalOpenTelemetry;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanBuilder;
+import io.opentelemetry.api.trace.SpanContext;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.context.propagation.TextMapPropagator;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+
+/**
+ * Starts one CONSUMER span per poll batch, linked to the producer span of each record in it,
+ * instead of one span per record. Span volume then grows with the number of polls rather than
+ * the number of messages.
+ *
+ * At most {@code maxLinks} links are added; once the cap is reached, the remaining records are
+ * only counted, without parsing their headers, and reported in {@code messaging.batch.links_dropped}.
+ * The SDK applies its own limit as well (OTEL_SPAN_LINK_COUNT_LIMIT, 128 by default), so raising
+ * the cap beyond that has no effect unless both are raised.
+ */
+final class BatchTracing {
+
+    private static final AttributeKey<String> MESSAGING_SYSTEM = AttributeKey.stringKey("messaging.system");
+    private static final AttributeKey<String> OPERATION = AttributeKey.stringKey("messaging.operation.type");
+    private static final AttributeKey<Long> BATCH_COUNT = AttributeKey.longKey("messaging.batch.message_count");
+    private static final AttributeKey<Long> LINKS_DROPPED = AttributeKey.longKey("messaging.batch.links_dropped");
+    private static final String TRACEPARENT = "traceparent";
+
+    private final Tracer tracer = GlobalOpenTelemetry.getTracer("kafka.consumer");
+    private final TextMapPropagator propagator = GlobalOpenTelemetry.getPropagators().getTextMapPropagator();
+    private final int maxLinks;
+
+    BatchTracing(int maxLinks) {
+        this.maxLinks = maxLinks;
+    }
+
+    /** Returns the batch span, not yet current; the caller makes it current and ends it. */
+    Span start(ConsumerRecords<?, ?> records) {
+        SpanBuilder builder = tracer.spanBuilder("process")
+            .setSpanKind(SpanKind.CONSUMER)
+            .setNoParent()
+            .setAttribute(MESSAGING_SYSTEM, "kafka")
+            .setAttribute(OPERATION, "process")
+            .setAttribute(BATCH_COUNT, (long) records.count());
+        int links = 0;
+        long dropped = 0;
+        for (ConsumerRecord<?, ?> record : records) {
+            if (links == maxLinks) {
+                if (record.headers().lastHeader(TRACEPARENT) != null) {
+                    dropped++;
+                }
+                continue;
+            }
+            SpanContext producer = Span.fromContext(
+                propagator.extract(Context.root(), record.headers(), HeadersGetter.INSTANCE)).getSpanContext();
+            if (producer.isValid()) {
+                builder.addLink(producer);
+                links++;
+            }
+        }
+        return builder.setAttribute(LINKS_DROPPED, dropped).startSpan();
+    }
+}
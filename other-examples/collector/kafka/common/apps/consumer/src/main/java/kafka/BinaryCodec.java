@@ -0,0 +1,125 @@
+package kafka;
+
+/**
+ * Reads fields from the compact binary records written by the producer's BinaryRecords: a schema
+ * id byte, then fields in a fixed order with unsigned LEB128 varints for integers and
+ * varint-length-prefixed UTF-8 for strings.
+ *
+ * <pre>
+ *   order:    0x01 ts amount_cents quantity order_id product status
+ *   payment:  0x02 ts amount_cents payment_id order_id method
+ *   shipment: 0x03 ts shipment_id order_id carrier tracking
+ * </pre>
+ *
+ * Each accessor walks from the start of the record, skipping the fields before the one it needs;
+ * the numbers come first, so that is at most a few bytes for everything but the dictionary
+ * lookups. Truncated or foreign records yield {@link #MISSING} or {@link ByteDictionary#OTHER}
+ * instead of throwing.
+ */
+final class BinaryCodec implements RecordCodec {
+
+    private static final byte ORDER = 1;
+    private static final byte PAYMENT = 2;
+    private static final byte SHIPMENT = 3;
+
+    // Offset the skip helpers return for a truncated or malformed record; every reader treats it as absent
+    private static final int BAD = -1;
+
+    @Override
+    public long timestamp(byte[] value) {
+        if (schema(value) == 0) {
+            return MISSING;
+        }
+        return readVarint(value, 1);
+    }
+
+    @Override
+    public long amountCents(byte[] value) {
+        byte schema = schema(value);
+        if (schema != ORDER && schema != PAYMENT) {
+            return MISSING;
+        }
+        return readVarint(value, skipVarint(value, 1));
+    }
+
+    @Override
+    public long quantity(byte[] value) {
+        if (schema(value) != ORDER) {
+            return MISSING;
+        }
+        return readVarint(value, skipVarints(value, 1, 2));
+    }
+
+    @Override
+    public int product(byte[] value, ByteDictionary products) {
+        if (schema(value) != ORDER) {
+            return ByteDictionary.OTHER;
+        }
+        // ts, amount_cents, quantity, order_id, then product
+        return dimension(value, skipString(value, skipVarints(value, 1, 3)), products);
+    }
+
+    @Override
+    public int method(byte[] value, ByteDictionary methods) {
+        if (schema(value) != PAYMENT) {
+            return ByteDictionary.OTHER;
+        }
+        // ts, amount_cents, payment_id, order_id, then method
+        int pos = skipVarints(value, 1, 2);
+        return dimension(value, skipString(value, skipString(value, pos)), methods);
+    }
+
+    private static byte schema(byte[] value) {
+        if (value.length < 2) {
+            return 0;
+        }
+        byte schema = value[0];
+        return schema == ORDER || schema == PAYMENT || schema == SHIPMENT ? schema : 0;
+    }
+
+    private static int dimension(byte[] value, int pos, ByteDictionary dictionary) {
+        long length = readVarint(value, pos);
+        if (length == MISSING) {
+            return ByteDictionary.OTHER;
+        }
+        int start = skipVarint(value, pos);
+        return start + length > value.length ? ByteDictionary.OTHER : dictionary.idOf(value, start, start + (int) length);
+    }
+
+    private static long readVarint(byte[] value, int pos) {
+        long result = 0;
+        for (int shift = 0; pos >= 0 && pos < value.length && shift < 64; shift += 7) {
+            byte b = value[pos++];
+            result |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return result;
+            }
+        }
+        return MISSING;
+    }
+
+    private static int skipVarint(byte[] value, int pos) {
+        while (pos >= 0 && pos < value.length) {
+            if (value[pos++] >= 0) {
+                return pos;
+            }
+        }
+        return BAD;
+    }
+
+    private static int skipVarints(byte[] value, int pos, int count) {
+        for (int i = 0; i < count; i++) {
+            pos = skipVarint(value, pos);
+        }
+        return pos;
+    }
+
+    private static int skipString(byte[] value, int pos) {
+        long length = readVarint(value, pos);
+        if (length == MISSING) {
+            return BAD;
+        }
+        long end = skipVarint(value, pos) + length;
+        return end > value.length ? BAD : (int) end;
+    }
+}
@@ -0,0 +1,64 @@
+package kafka;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Assigns small dense int ids to the distinct values of a low-cardinality string field, looking
+ * them up straight from a slice of the record bytes. A value is copied only the first time it is
+ * seen. Once {@code maxValues} ids are taken, further values map to {@link #OTHER} so a bad
+ * producer cannot grow the state without bound. Not thread-safe.
+ */
+final class ByteDictionary {
+
+    static final int OTHER = 0;
+
+    private final int maxValues;
+    private final byte[][] values;
+    private final String[] names;
+    private final int[] table;
+    private final int mask;
+    private int size = 1;
+
+    ByteDictionary(int maxValues) {
+        this.maxValues = maxValues;
+        this.values = new byte[maxValues][];
+        this.names = new String[maxValues];
+        this.names[OTHER] = "other";
+        int capacity = Integer.highestOneBit(maxValues * 2 - 1) << 1;
+        this.table = new int[capacity];
+        this.mask = capacity - 1;
+    }
+
+    /** Number of ids in use, including {@link #OTHER}; valid ids are {@code [0, size())}. */
+    int size() {
+        return size;
+    }
+
+    String name(int id) {
+        return names[id];
+    }
+
+    int idOf(byte[] src, int from, int to) {
+        int hash = 1;
+        for (int i = from; i < to; i++) {
+            hash = 31 * hash + src[i];
+        }
+        for (int i = hash & mask; ; i = (i + 1) & mask) {
+            int id = table[i];
+            if (id == 0) {
+                if (size == maxValues) {
+                    return OTHER;
+                }
+                id = size++;
+                values[id] = Arrays.copyOfRange(src, from, to);
+                names[id] = new String(values[id], StandardCharsets.UTF_8);
+                table[i] = id;
+                return id;
+            }
+            if (Arrays.equals(values[id], 0, values[id].length, src, from, to)) {
+                return id;
+            }
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package kafka;
+
+import io.opentelemetry.api.GlobalOpenTelemetry;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.common.AttributesBuilder;
+import io.opentelemetry.api.metrics.BatchCallback;
+import io.opentelemetry.api.metrics.Meter;
+import io.opentelemetry.api.metrics.ObservableDoubleMeasurement;
+import io.opentelemetry.api.metrics.ObservableMeasurement;
+import org.apache.kafka.clients.CommonClientConfigs;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.metrics.KafkaMetric;
+import org.apache.kafka.common.metrics.MetricsReporter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Exports a curated set of the Kafka client's own metrics ({@code metrics()} on the producer or
+ * consumer) as OTel observable instruments, so client-side behaviour can be lined up against the
+ * broker metrics the collector already receives.
+ *
+ * Matching Kafka MetricNames to instruments happens once and is cached as an array of
+ * (metric, attributes) bindings, so a collection cycle reads only the bound metrics instead of
+ * matching every name again. The client registers metrics lazily (per topic, partition and broker
+ * node) and removes them on rebalance, so the bindings are rebuilt whenever a metric is added or
+ * removed. {@link ChangeReporter}, registered on the client through {@link #addReporter}, signals
+ * those changes, so a collection cycle with nothing new costs one volatile read.
+ *
+ * The producer app has a copy of this class that differs only in its mapping table; change both.
+ */
+final class ClientMetricsBridge implements AutoCloseable {
+
+    enum Kind { GAUGE, COUNTER }
+
+    /**
+     * Maps the Kafka metric {@code group}/{@code kafkaName} to an instrument. Kafka often registers
+     * the same name at client and topic level; {@code perTopic} picks one of the two.
+     */
+    record Mapping(String group, String kafkaName, boolean perTopic, String name, Kind kind, String unit,
+                   double scale, String description) {
+    }
+
+    private static final double MILLIS = 1e-3;
+
+    /** Consumer metrics worth correlating with broker fetch latency and consumer lag under load. */
+    static final List<Mapping> CONSUMER = List.of(
+        new Mapping("consumer-fetch-manager-metrics", "records-consumed-total", true, "kafka.consumer.records.consumed",
+            Kind.COUNTER, "{record}", 1, "Records consumed, as counted by the client."),
+        new Mapping("consumer-fetch-manager-metrics", "bytes-consumed-total", true, "kafka.consumer.bytes.consumed",
+            Kind.COUNTER, "By", 1, "Bytes consumed."),
+        new Mapping("consumer-fetch-manager-metrics", "records-lag", true, "kafka.consumer.records.lag",
+            Kind.GAUGE, "{record}", 1, "Records between the consumer position and the log end, per partition."),
+        new Mapping("consumer-fetch-manager-metrics", "records-lag-max", false, "kafka.consumer.records.lag.max",
+            Kind.GAUGE, "{record}", 1, "Maximum lag across the assigned partitions."),
+        new Mapping("consumer-fetch-manager-metrics", "records-consumed-rate", false, "kafka.consumer.records.consumed.rate",
+            Kind.GAUGE, "{record}/s", 1, "Records consumed per second."),
+        new Mapping("consumer-fetch-manager-metrics", "fetch-latency-avg", false, "kafka.consumer.fetch.latency.avg",
+            Kind.GAUGE, "s", MILLIS, "Average fetch request latency."),
+        new Mapping("consumer-fetch-manager-metrics", "fetch-latency-max", false, "kafka.consumer.fetch.latency.max",
+            Kind.GAUGE, "s", MILLIS, "Maximum fetch request latency."),
+        new Mapping("consumer-fetch-manager-metrics", "records-per-request-avg", false, "kafka.consumer.fetch.records.avg",
+            Kind.GAUGE, "{record}", 1, "Average records per fetch response."),
+        new Mapping("consumer-coordinator-metrics", "commit-latency-avg", false, "kafka.consumer.commit.latency.avg",
+            Kind.GAUGE, "s", MILLIS, "Average offset commit latency."),
+        new Mapping("consumer-coordinator-metrics", "rebalance-total", false, "kafka.consumer.rebalances",
+            Kind.COUNTER, "{rebalance}", 1, "Group rebalances this consumer took part in."),
+        new Mapping("consumer-coordinator-metrics", "assigned-partitions", false, "kafka.consumer.assigned_partitions",
+            Kind.GAUGE, "{partition}", 1, "Partitions currently assigned to this consumer."),
+        new Mapping("consumer-metrics", "poll-idle-ratio-avg", false, "kafka.consumer.poll.idle.ratio",
+            Kind.GAUGE, "1", 1, "Fraction of time the consumer spent blocked in poll()."),
+        new Mapping("consumer-metrics", "time-between-poll-avg", false, "kafka.consumer.poll.interval.avg",
+            Kind.GAUGE, "s", MILLIS, "Average time between poll() calls."));
+
+    /** Returns a bridge for the consumer's metrics, or null when KAFKA_CLIENT_METRICS_ENABLED=false. */
+    static ClientMetricsBridge forConsumer(Map<MetricName, ? extends Metric> metrics) {
+        return fromEnv("kafka.consumer", metrics, CONSUMER);
+    }
+
+    /**
+     * Adds {@link ChangeReporter} to the client's {@code metric.reporters}. Without it the bindings are
+     * only made on the first collection, and go stale when the client's metrics change.
+     */
+    static void addReporter(Properties props) {
+        props.merge(CommonClientConfigs.METRIC_REPORTER_CLASSES_CONFIG, ChangeReporter.class.getName(),
+            (existing, added) -> existing + "," + added);
+    }
+
+    /** Returns a bridge over {@code metrics}, or null when KAFKA_CLIENT_METRICS_ENABLED=false. */
+    private static ClientMetricsBridge fromEnv(String meterName, Map<MetricName, ? extends Metric> metrics,
+                                               List<Mapping> mappings) {
+        if (!Boolean.parseBoolean(System.getenv().getOrDefault("KAFKA_CLIENT_METRICS_ENABLED", "true"))) {
+            return null;
+        }
+        return new ClientMetricsBridge(GlobalOpenTelemetry.getMeter(meterName), metrics, mappings);
+    }
+
+    private final Map<MetricName, ? extends Metric> metrics;
+    private final List<Mapping> mappings;
+    private final Map<String, Integer> mappingIndex = new HashMap<>();
+    private final ObservableDoubleMeasurement[] measurements;
+    private final BatchCallback callback;
+    // Only touched by the collection callback, which the SDK never runs concurrently with itself
+    private Binding[] bindings = new Binding[0];
+    private long resolvedGeneration = -1;
+
+    /** @param metrics the client's live, unmodifiable metrics view; it is read on the collection thread */
+    ClientMetricsBridge(Meter meter, Map<MetricName, ? extends Metric> metrics, List<Mapping> mappings) {
+        this.metrics = metrics;
+        this.mappings = mappings;
+        measurements = new ObservableDoubleMeasurement[mappings.size()];
+        for (int i = 0; i < mappings.size(); i++) {
+            Mapping m = mappings.get(i);
+            mappingIndex.put(key(m.group(), m.kafkaName(), m.perTopic()), i);
+            measurements[i] = m.kind() == Kind.COUNTER
+                ? meter.counterBuilder(m.name()).ofDoubles().setUnit(m.unit()).setDescription(m.description()).buildObserver()
+                : meter.gaugeBuilder(m.name()).setUnit(m.unit()).setDescription(m.description()).buildObserver();
+        }
+        ObservableMeasurement[] rest = Arrays.copyOfRange(measurements, 1, measurements.length, ObservableMeasurement[].class);
+        callback = meter.batchCallback(this::collect, measurements[0], rest);
+    }
+
+    @Override
+    public void close() {
+        callback.close();
+    }
+
+    private void collect() {
+        // Read before resolving, so a change made while resolving is picked up on the next cycle
+        long generation = ChangeReporter.GENERATION.get();
+        if (generation != resolvedGeneration) {
+            resolve();
+            resolvedGeneration = generation;
+        }
+        for (Binding binding : bindings) {
+            // Rates and averages over an empty sample window are NaN; skip rather than export them
+            if (binding.metric.metricValue() instanceof Double value && Double.isFinite(value)) {
+                binding.measurement.record(value * binding.scale, binding.attributes);
+            }
+        }
+    }
+
+    private void resolve() {
+        List<Binding> resolved = new ArrayList<>();
+        for (Map.Entry<MetricName, ? extends Metric> entry : metrics.entrySet()) {
+            MetricName name = entry.getKey();
+            Integer index = mappingIndex.get(key(name.group(), name.name(), name.tags().containsKey("topic")));
+            if (index != null) {
+                resolved.add(new Binding(entry.getValue(), measurements[index], mappings.get(index).scale(),
+                    attributes(name.tags())));
+            }
+        }
+        bindings = resolved.toArray(new Binding[0]);
+    }
+
+    private static String key(String group, String name, boolean perTopic) {
+        return group + '/' + name + (perTopic ? "/topic" : "");
+    }
+
+    private static Attributes attributes(Map<String, String> tags) {
+        AttributesBuilder builder = Attributes.builder();
+        tags.forEach((tag, value) -> builder.put(attributeName(tag), value));
+        return builder.build();
+    }
+
+    private static String attributeName(String tag) {
+        switch (tag) {
+            case "client-id":
+                return "messaging.client.id";
+            case "topic":
+                return "messaging.destination.name";
+            case "partition":
+                return "messaging.destination.partition.id";
+            default:
+                return "kafka." + tag.replace('-', '_');
+        }
+    }
+
+    /**
+     * Counts metric additions and removals. Kafka creates reporters from their class name, one per
+     * client, so the count is shared: a change in any client of the process rebuilds every bridge's
+     * bindings, which is rare enough not to matter.
+     */
+    public static final class ChangeReporter implements MetricsReporter {
+
+        static final AtomicLong GENERATION = new AtomicLong();
+
+        @Override
+        public void configure(Map<String, ?> configs) {
+        }
+
+        @Override
+        public void init(List<KafkaMetric> metrics) {
+            GENERATION.incrementAndGet();
+        }
+
+        @Override
+        public void metricChange(KafkaMetric metric) {
+            GENERATION.incrementAndGet();
+        }
+
+        @Override
+        public void metricRemoval(KafkaMetric metric) {
+            GENERATION.incrementAndGet();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static final class Binding {
+
+        final Metric metric;
+        final ObservableDoubleMeasurement measurement;
+        final double scale;
+        final Attributes attributes;
+
+        Binding(Metric metric, ObservableDoubleMeasurement measurement, double scale, Attributes attributes) {
+            this.metric = metric;
+            this.measurement = measurement;
+            this.scale = scale;
+            this.attributes = attributes;
+        }
+    }
+}
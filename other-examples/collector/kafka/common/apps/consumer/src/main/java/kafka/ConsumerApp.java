@@ -1,42 +1,84 @@
 package kafka;
 
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.context.Scope;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.consumer.ConsumerRecords;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.errors.WakeupException;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
 import org.apache.kafka.common.serialization.StringDeserializer;
 
 import java.time.Duration;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.logging.Logger;
 
 public class ConsumerApp {
 
     private static final Logger log = Logger.getLogger(ConsumerApp.class.getName());
 
+    static final List<String> TOPICS = Arrays.asList("orders", "payments", "shipments");
+
     public static void main(String[] args) {
         String bootstrapServers = System.getenv().getOrDefault("KAFKA_BOOTSTRAP_SERVERS", "localhost:9092");
         String groupId          = System.getenv().getOrDefault("KAFKA_GROUP_ID", "nr-otel-consumer-group");
+        String mode             = System.getenv().getOrDefault("CONSUMER_MODE", "count");
+        String encoding         = System.getenv().getOrDefault("RECORD_ENCODING", "string");
+        RecordCodec codec       = RecordCodec.forName(encoding);
 
         Properties props = new Properties();
         props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
         props.put(ConsumerConfig.GROUP_ID_CONFIG, groupId);
         props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class.getName());
-        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class.getName());
+        // Values stay raw bytes; fields are scanned directly instead of decoding a String first
+        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class.getName());
         props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "latest");
         props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, "true");
         props.put(ConsumerConfig.SESSION_TIMEOUT_MS_CONFIG, "30000");
+        ClientMetricsBridge.addReporter(props);
+
+        log.info("Starting Kafka Consumer — bootstrap: " + bootstrapServers + ", group: " + groupId + ", mode: " + mode
+            + ", encoding: " + encoding);
 
-        log.info("Starting Kafka Consumer — bootstrap: " + bootstrapServers + ", group: " + groupId);
+        switch (mode) {
+            case "count":
+                runCounting(props, codec);
+                break;
+            case "workers":
+                runWorkers(props, codec);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown CONSUMER_MODE: " + mode);
+        }
+    }
 
+    static void runCounting(Properties props, RecordCodec codec) {
+        EndToEndLatency latency = new EndToEndLatency(codec);
+        WindowedAggregator aggregator = aggregatorFromEnv(codec);
+        BatchTracing tracing = tracingFromEnv();
         long count = 0;
 
-        try (KafkaConsumer<String, String> consumer = new KafkaConsumer<>(props)) {
-            consumer.subscribe(Arrays.asList("orders", "payments", "shipments"));
+        try (KafkaConsumer<String, byte[]> consumer = new KafkaConsumer<>(props);
+             ClientMetricsBridge clientMetrics = ClientMetricsBridge.forConsumer(consumer.metrics())) {
+            consumer.subscribe(TOPICS);
             log.info("Subscribed. Waiting for messages...");
 
             while (true) {
-                ConsumerRecords<String, String> records = consumer.poll(Duration.ofSeconds(1));
+                ConsumerRecords<String, byte[]> records = consumer.poll(Duration.ofSeconds(1));
+                Span span = batchSpan(tracing, records);
+                try (Scope ignored = span.makeCurrent()) {
+                    for (ConsumerRecord<String, byte[]> record : records) {
+                        latency.record(record);
+                    }
+                    aggregate(aggregator, records);
+                } finally {
+                    span.end();
+                }
                 count += records.count();
                 if (count > 0 && count % 300 == 0) {
                     log.info("Consumed " + count + " messages total");
@@ -44,4 +86,155 @@ public class ConsumerApp {
             }
         }
     }
+
+    /**
+     * Processes records on a {@link PartitionWorkerPool}: parallel across partitions, ordered within
+     * each, with pause/resume backpressure and batched manual offset commits.
+     */
+    static void runWorkers(Properties props, RecordCodec codec) {
+        int threads = Integer.parseInt(System.getenv().getOrDefault(
+            "CONSUMER_WORKER_THREADS", String.valueOf(Runtime.getRuntime().availableProcessors())));
+        boolean virtualThreads = Boolean.parseBoolean(System.getenv().getOrDefault("CONSUMER_VIRTUAL_THREADS", "false"));
+        int maxPending = Integer.parseInt(System.getenv().getOrDefault("CONSUMER_MAX_PENDING_PER_PARTITION", "1000"));
+        long commitIntervalMs = Long.parseLong(System.getenv().getOrDefault("CONSUMER_COMMIT_INTERVAL_MS", "1000"));
+        long processingDelayMs = Long.parseLong(System.getenv().getOrDefault("PROCESSING_DELAY_MS", "0"));
+
+        props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, "false");
+
+        log.info("Worker mode — threads: " + (virtualThreads ? "virtual" : threads) + ", max pending/partition: "
+            + maxPending + ", commit interval: " + commitIntervalMs + "ms, processing delay: " + processingDelayMs + "ms");
+
+        ExecutorService executor = virtualThreads
+            ? Executors.newVirtualThreadPerTaskExecutor()
+            : Executors.newFixedThreadPool(threads);
+
+        EndToEndLatency latency = new EndToEndLatency(codec);
+        WindowedAggregator aggregator = aggregatorFromEnv(codec);
+        BatchTracing tracing = tracingFromEnv();
+        KafkaConsumer<String, byte[]> consumer = new KafkaConsumer<>(props);
+        Thread pollThread = Thread.currentThread();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            consumer.wakeup();
+            try {
+                pollThread.join(30_000);
+            } catch (InterruptedException ignored) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+
+        PartitionWorkerPool<String, byte[]> pool = new PartitionWorkerPool<>(consumer, executor, record -> {
+            latency.record(record);
+            process(record, processingDelayMs);
+        }, maxPending, commitIntervalMs);
+        long lastLogged = 0;
+
+        try (consumer; ClientMetricsBridge clientMetrics = ClientMetricsBridge.forConsumer(consumer.metrics())) {
+            consumer.subscribe(TOPICS, pool);
+            log.info("Subscribed. Waiting for messages...");
+
+            try {
+                while (true) {
+                    ConsumerRecords<String, byte[]> records = consumer.poll(Duration.ofMillis(100));
+                    Span span = batchSpan(tracing, records);
+                    try (Scope ignored = span.makeCurrent()) {
+                        aggregate(aggregator, records);
+                        // The span covers the workers too, so it ends when the last lane finishes the batch
+                        pool.submit(records).whenComplete((done, e) -> span.end());
+                    }
+                    pool.maintain();
+                    long processed = pool.processed();
+                    if (processed - lastLogged >= 300) {
+                        lastLogged = processed;
+                        log.info("Processed " + processed + " messages total (" + pool.failed() + " failed)");
+                    }
+                }
+            } catch (WakeupException e) {
+                log.info("Shutting down; draining workers and committing offsets");
+                pool.drainAndCommit(10_000);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /** Returns the windowed aggregation stage, or null when AGGREGATION_ENABLED=false. */
+    static WindowedAggregator aggregatorFromEnv(RecordCodec codec) {
+        if (!Boolean.parseBoolean(System.getenv().getOrDefault("AGGREGATION_ENABLED", "true"))) {
+            return null;
+        }
+        long windowSec = Long.parseLong(System.getenv().getOrDefault("AGGREGATION_WINDOW_SEC", "60"));
+        long latenessMs = Long.parseLong(System.getenv().getOrDefault("AGGREGATION_ALLOWED_LATENESS_MS", "5000"));
+        return new WindowedAggregator(windowSec * 1000, latenessMs, codec);
+    }
+
+    /**
+     * Returns the batch span factory when TRACE_PROPAGATION=app, or null when the agent's Kafka
+     * instrumentation owns consumer spans (the default).
+     */
+    static BatchTracing tracingFromEnv() {
+        String propagation = System.getenv().getOrDefault("TRACE_PROPAGATION", "agent");
+        switch (propagation) {
+            case "agent":
+                return null;
+            case "app":
+                requireAgentKafkaInstrumentationDisabled();
+                return new BatchTracing(Integer.parseInt(System.getenv().getOrDefault("TRACE_MAX_LINKS_PER_SPAN", "128")));
+            default:
+                throw new IllegalArgumentException("Unknown TRACE_PROPAGATION: " + propagation);
+        }
+    }
+
+    /**
+     * App mode needs the agent's Kafka instrumentation off, or it still creates a span per consumed
+     * record alongside the batch span. The agent enables it unless
+     * OTEL_INSTRUMENTATION_KAFKA_ENABLED or otel.instrumentation.kafka.enabled is false.
+     */
+    static void requireAgentKafkaInstrumentationDisabled() {
+        String enabled = System.getProperty(
+                "otel.instrumentation.kafka.enabled",
+                System.getenv().getOrDefault("OTEL_INSTRUMENTATION_KAFKA_ENABLED", "true"));
+        if (!"false".equalsIgnoreCase(enabled.trim())) {
+            throw new IllegalStateException(
+                    "TRACE_PROPAGATION=app needs OTEL_INSTRUMENTATION_KAFKA_ENABLED=false");
+        }
+    }
+
+    static Span batchSpan(BatchTracing tracing, ConsumerRecords<String, byte[]> records) {
+        return tracing == null || records.isEmpty() ? Span.getInvalid() : tracing.start(records);
+    }
+
+    /** Runs on the poll thread in both modes, so the aggregation state needs no locking. */
+    static void aggregate(WindowedAggregator aggregator, ConsumerRecords<String, byte[]> records) {
+        if (aggregator == null) {
+            return;
+        }
+        for (ConsumerRecord<String, byte[]> record : records) {
+            aggregator.accept(record);
+        }
+        aggregator.advance(System.currentTimeMillis());
+    }
+
+    /** Stands in for real per-record work; PROCESSING_DELAY_MS simulates a blocking downstream call. */
+    static void process(ConsumerRecord<String, byte[]> record, long processingDelayMs) {
+        if (processingDelayMs > 0) {
+            try {
+                Thread.sleep(processingDelayMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    static int topicIndex(String topic) {
+        switch (topic) {
+            case "orders":
+                return 0;
+            case "payments":
+                return 1;
+            case "shipments":
+                return 2;
+            default:
+                throw new IllegalArgumentException("Unknown topic: " + topic);
+        }
+    }
 }
@@ -0,0 +1,49 @@
+package kafka;
+
+import io.opentelemetry.api.GlobalOpenTelemetry;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.DoubleHistogram;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+
+/**
+ * Records produce-to-consume latency from the {@code "ts"} epoch-millis field ProducerApp writes
+ * into every record. The timestamp is read with the configured {@link RecordCodec} instead of a
+ * full decode, and attributes are pre-built per topic, so recording stays cheap at full load.
+ *
+ * Producer and consumer clocks are compared directly, so the result includes any clock skew
+ * between the two hosts; negative values from skew are clamped to zero.
+ */
+final class EndToEndLatency {
+
+    private static final AttributeKey<String> DESTINATION = AttributeKey.stringKey("messaging.destination.name");
+
+    private final Attributes[] topicAttributes = new Attributes[ConsumerApp.TOPICS.size()];
+    private final RecordCodec codec;
+    private final DoubleHistogram latency;
+
+    EndToEndLatency(RecordCodec codec) {
+        this.codec = codec;
+        for (int i = 0; i < topicAttributes.length; i++) {
+            topicAttributes[i] = Attributes.of(DESTINATION, ConsumerApp.TOPICS.get(i));
+        }
+        // Exported as a base2 exponential histogram; the aggregation is selected in the Dockerfile
+        latency = GlobalOpenTelemetry.getMeter("kafka.consumer")
+            .histogramBuilder("kafka.consumer.end_to_end.duration")
+            .setDescription("Time from the producer stamping a record to the consumer processing it.")
+            .setUnit("s")
+            .build();
+    }
+
+    void record(ConsumerRecord<?, byte[]> record) {
+        if (record.value() == null) {
+            return;
+        }
+        long ts = codec.timestamp(record.value());
+        if (ts == RecordCodec.MISSING) {
+            return;
+        }
+        long millis = Math.max(0, System.currentTimeMillis() - ts);
+        latency.record(millis / 1000.0, topicAttributes[ConsumerApp.topicIndex(record.topic())]);
+    }
+}
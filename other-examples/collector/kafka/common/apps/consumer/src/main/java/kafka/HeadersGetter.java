@@ -0,0 +1,32 @@
+package kafka;
+
+import io.opentelemetry.context.propagation.TextMapGetter;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Reads propagation fields such as {@code traceparent} from Kafka record headers. */
+enum HeadersGetter implements TextMapGetter<Headers> {
+    INSTANCE;
+
+    @Override
+    public Iterable<String> keys(Headers headers) {
+        List<String> keys = new ArrayList<>();
+        for (Header header : headers) {
+            keys.add(header.key());
+        }
+        return keys;
+    }
+
+    @Override
+    public String get(Headers headers, String key) {
+        if (headers == null) {
+            return null;
+        }
+        Header header = headers.lastHeader(key);
+        return header == null || header.value() == null ? null : new String(header.value(), StandardCharsets.UTF_8);
+    }
+}
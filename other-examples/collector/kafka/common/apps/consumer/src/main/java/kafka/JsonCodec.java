@@ -0,0 +1,41 @@
+package kafka;
+
+/** Reads fields from the flat JSON records with {@link JsonFieldScanner}. */
+final class JsonCodec implements RecordCodec {
+
+    private static final byte[] TS = JsonFieldScanner.key("ts");
+    private static final byte[] AMOUNT = JsonFieldScanner.key("amount");
+    private static final byte[] QUANTITY = JsonFieldScanner.key("quantity");
+    private static final byte[] PRODUCT = JsonFieldScanner.key("product");
+    private static final byte[] METHOD = JsonFieldScanner.key("method");
+
+    @Override
+    public long timestamp(byte[] value) {
+        return JsonFieldScanner.longField(value, TS);
+    }
+
+    @Override
+    public long amountCents(byte[] value) {
+        return JsonFieldScanner.centsField(value, AMOUNT);
+    }
+
+    @Override
+    public long quantity(byte[] value) {
+        return JsonFieldScanner.longField(value, QUANTITY);
+    }
+
+    @Override
+    public int product(byte[] value, ByteDictionary products) {
+        return dimension(value, PRODUCT, products);
+    }
+
+    @Override
+    public int method(byte[] value, ByteDictionary methods) {
+        return dimension(value, METHOD, methods);
+    }
+
+    private static int dimension(byte[] json, byte[] key, ByteDictionary dictionary) {
+        int start = JsonFieldScanner.stringStart(json, key);
+        return start < 0 ? ByteDictionary.OTHER : dictionary.idOf(json, start, JsonFieldScanner.stringEnd(json, start));
+    }
+}
@@ -0,0 +1,100 @@
+package kafka;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Pulls individual top-level fields out of the flat JSON documents ProducerApp emits without
+ * parsing the whole document: it scans the bytes for {@code "name":} and reads the value after it.
+ *
+ * This relies on the demo schemas being flat, with no nested objects or escaped quotes, so a key
+ * pattern can never appear inside a string value.
+ */
+final class JsonFieldScanner {
+
+    static final long MISSING = Long.MIN_VALUE;
+
+    private JsonFieldScanner() {
+    }
+
+    /** Returns the pattern to search for: {@code "name":} as ASCII bytes. */
+    static byte[] key(String name) {
+        return ("\"" + name + "\":").getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /** Returns the offset just past {@code key} in {@code json}, or -1 if it is absent. */
+    static int valueOffset(byte[] json, byte[] key) {
+        int last = json.length - key.length;
+        byte first = key[0];
+        outer:
+        for (int i = 0; i <= last; i++) {
+            if (json[i] != first) {
+                continue;
+            }
+            for (int j = 1; j < key.length; j++) {
+                if (json[i + j] != key[j]) {
+                    continue outer;
+                }
+            }
+            return i + key.length;
+        }
+        return -1;
+    }
+
+    /** Reads a non-negative integer field, or returns {@link #MISSING}. */
+    static long longField(byte[] json, byte[] key) {
+        int i = valueOffset(json, key);
+        if (i < 0 || i >= json.length || !isDigit(json[i])) {
+            return MISSING;
+        }
+        long value = 0;
+        while (i < json.length && isDigit(json[i])) {
+            value = value * 10 + (json[i++] - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Reads a non-negative decimal field such as {@code 123.45} as hundredths ({@code 12345}),
+     * truncating any further digits, or returns {@link #MISSING}.
+     */
+    static long centsField(byte[] json, byte[] key) {
+        int i = valueOffset(json, key);
+        if (i < 0 || i >= json.length || !isDigit(json[i])) {
+            return MISSING;
+        }
+        long whole = 0;
+        while (i < json.length && isDigit(json[i])) {
+            whole = whole * 10 + (json[i++] - '0');
+        }
+        long cents = 0;
+        if (i < json.length && json[i] == '.') {
+            i++;
+            for (int digits = 0; digits < 2; digits++) {
+                cents *= 10;
+                if (i < json.length && isDigit(json[i])) {
+                    cents += json[i++] - '0';
+                }
+            }
+        }
+        return whole * 100 + cents;
+    }
+
+    /** Returns the offset of the first character of a string field's value, or -1. */
+    static int stringStart(byte[] json, byte[] key) {
+        int i = valueOffset(json, key);
+        return i >= 0 && i < json.length && json[i] == '"' ? i + 1 : -1;
+    }
+
+    /** Returns the offset of the closing quote of the string value starting at {@code start}. */
+    static int stringEnd(byte[] json, int start) {
+        int i = start;
+        while (i < json.length && json[i] != '"') {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+}
@@ -0,0 +1,215 @@
+package kafka;
+
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Hands polled records to a pool of workers while keeping per-partition order.
+ *
+ * Each assigned partition gets a lane: batches for that partition are chained one after another on
+ * the executor, so partitions are processed in parallel but records within a partition are never
+ * reordered. A lane holding more than {@code maxPendingPerPartition} records is paused on the
+ * consumer and resumed once it has drained to half of that, which bounds memory without blocking
+ * the poll loop. Offsets are committed in batches, only up to the last record a worker finished.
+ *
+ * All methods except the worker tasks run on the poll thread, as KafkaConsumer requires.
+ */
+final class PartitionWorkerPool<K, V> implements ConsumerRebalanceListener {
+
+    private static final Logger log = Logger.getLogger(PartitionWorkerPool.class.getName());
+
+    private final KafkaConsumer<K, V> consumer;
+    private final ExecutorService executor;
+    private final Consumer<ConsumerRecord<K, V>> processor;
+    private final int maxPendingPerPartition;
+    private final long commitIntervalNanos;
+    private final Map<TopicPartition, Lane> lanes = new HashMap<>();
+    private final LongAdder processed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private long lastCommitNanos = System.nanoTime();
+
+    PartitionWorkerPool(KafkaConsumer<K, V> consumer, ExecutorService executor, Consumer<ConsumerRecord<K, V>> processor,
+                        int maxPendingPerPartition, long commitIntervalMs) {
+        this.consumer = consumer;
+        this.executor = executor;
+        this.processor = processor;
+        this.maxPendingPerPartition = maxPendingPerPartition;
+        this.commitIntervalNanos = TimeUnit.MILLISECONDS.toNanos(commitIntervalMs);
+    }
+
+    /**
+     * Queues every partition's slice of {@code records} onto that partition's lane. The returned
+     * future completes once workers have processed all of them.
+     */
+    CompletableFuture<Void> submit(ConsumerRecords<K, V> records) {
+        CompletableFuture<?>[] batches = new CompletableFuture<?>[records.partitions().size()];
+        int i = 0;
+        for (TopicPartition tp : records.partitions()) {
+            List<ConsumerRecord<K, V>> batch = records.records(tp);
+            Lane lane = lanes.computeIfAbsent(tp, Lane::new);
+            lane.pending.addAndGet(batch.size());
+            lane.tail = lane.tail.thenRunAsync(() -> lane.process(batch), executor);
+            batches[i++] = lane.tail;
+        }
+        return CompletableFuture.allOf(batches);
+    }
+
+    /** Applies backpressure and commits finished offsets when the commit interval has elapsed. */
+    void maintain() {
+        for (Lane lane : lanes.values()) {
+            int pending = lane.pending.get();
+            if (!lane.paused && pending > maxPendingPerPartition) {
+                consumer.pause(List.of(lane.partition));
+                lane.paused = true;
+            } else if (lane.paused && pending <= maxPendingPerPartition / 2) {
+                consumer.resume(List.of(lane.partition));
+                lane.paused = false;
+            }
+        }
+        long now = System.nanoTime();
+        if (now - lastCommitNanos >= commitIntervalNanos) {
+            lastCommitNanos = now;
+            Map<TopicPartition, OffsetAndMetadata> offsets = committable(lanes.values());
+            if (!offsets.isEmpty()) {
+                consumer.commitAsync(offsets, (accepted, e) -> {
+                    if (e != null) {
+                        log.log(Level.WARNING, "Offset commit failed; it is retried with the next commit", e);
+                    } else {
+                        committed(accepted);
+                    }
+                });
+            }
+        }
+    }
+
+    long processed() {
+        return processed.sum();
+    }
+
+    long failed() {
+        return failed.sum();
+    }
+
+    /** Waits for all queued work, then commits synchronously. Call before closing the consumer. */
+    void drainAndCommit(long timeoutMs) {
+        finish(lanes.values(), timeoutMs);
+        commitSync(lanes.values());
+        lanes.clear();
+    }
+
+    @Override
+    public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+        // Finish what we already handed out so the next owner starts right after it
+        List<Lane> revoked = partitions.stream().map(lanes::remove).filter(l -> l != null).toList();
+        finish(revoked, 10_000);
+        commitSync(revoked);
+    }
+
+    @Override
+    public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+    }
+
+    @Override
+    public void onPartitionsLost(Collection<TopicPartition> partitions) {
+        // Another consumer already owns these partitions; committing would fail, so just forget them
+        partitions.forEach(lanes::remove);
+    }
+
+    private void finish(Collection<? extends Lane> lanes, long timeoutMs) {
+        CompletableFuture<?>[] tails = lanes.stream().map(l -> l.tail).toArray(CompletableFuture[]::new);
+        try {
+            CompletableFuture.allOf(tails).get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            log.warning("Timed out waiting for workers; uncommitted records will be redelivered");
+        } catch (Exception e) {
+            log.log(Level.WARNING, "Worker lane failed", e);
+        }
+    }
+
+    private void commitSync(Collection<? extends Lane> lanes) {
+        Map<TopicPartition, OffsetAndMetadata> offsets = committable(lanes);
+        if (!offsets.isEmpty()) {
+            try {
+                consumer.commitSync(offsets);
+                committed(offsets);
+            } catch (RuntimeException e) {
+                log.log(Level.WARNING, "Offset commit failed", e);
+            }
+        }
+    }
+
+    private Map<TopicPartition, OffsetAndMetadata> committable(Collection<? extends Lane> lanes) {
+        Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+        for (Lane lane : lanes) {
+            long next = lane.nextOffset;
+            if (next > lane.committedOffset) {
+                offsets.put(lane.partition, new OffsetAndMetadata(next));
+            }
+        }
+        return offsets;
+    }
+
+    /**
+     * Records offsets the broker accepted. Until then they stay committable, so a failed commit is
+     * sent again even if its partition goes idle. Commit callbacks run on the poll thread.
+     */
+    private void committed(Map<TopicPartition, OffsetAndMetadata> offsets) {
+        offsets.forEach((tp, offset) -> {
+            Lane lane = lanes.get(tp);
+            if (lane != null) {
+                lane.committedOffset = Math.max(lane.committedOffset, offset.offset());
+            }
+        });
+    }
+
+    private final class Lane {
+
+        final TopicPartition partition;
+        final AtomicInteger pending = new AtomicInteger();
+        // Written by the worker that just finished a batch, read by the poll thread
+        volatile long nextOffset = -1;
+        // Poll thread only
+        CompletableFuture<Void> tail = CompletableFuture.completedFuture(null);
+        // The highest offset the broker acknowledged for this lane
+        long committedOffset = -1;
+        boolean paused;
+
+        Lane(TopicPartition partition) {
+            this.partition = partition;
+        }
+
+        void process(List<ConsumerRecord<K, V>> batch) {
+            for (ConsumerRecord<K, V> record : batch) {
+                try {
+                    processor.accept(record);
+                    processed.increment();
+                } catch (Throwable e) {
+                    // Skip the poison record rather than stalling the partition forever. Errors are
+                    // caught too: one escaping would fail the lane's tail and skip every later batch
+                    failed.increment();
+                    log.log(Level.WARNING, "Failed to process " + partition + "@" + record.offset(), e);
+                }
+                nextOffset = record.offset() + 1;
+                pending.decrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package kafka;
+
+/**
+ * Reads the handful of fields the consumer uses straight out of a record value, in whichever wire
+ * format ProducerApp was configured to write, without decoding the rest of the record.
+ * Implementations are stateless and thread-safe.
+ */
+interface RecordCodec {
+
+    long MISSING = JsonFieldScanner.MISSING;
+
+    /** Producer timestamp in epoch millis, or {@link #MISSING}. */
+    long timestamp(byte[] value);
+
+    /** Order or payment amount in hundredths, or {@link #MISSING}. */
+    long amountCents(byte[] value);
+
+    /** Order quantity, or {@link #MISSING}. */
+    long quantity(byte[] value);
+
+    /** Dictionary id of an order's product, or {@link ByteDictionary#OTHER}. */
+    int product(byte[] value, ByteDictionary products);
+
+    /** Dictionary id of a payment's method, or {@link ByteDictionary#OTHER}. */
+    int method(byte[] value, ByteDictionary methods);
+
+    /**
+     * Resolves the RECORD_ENCODING setting the producer was started with: {@code string} (default)
+     * and {@code bytes} both produce JSON; {@code binary} produces the compact binary layout.
+     */
+    static RecordCodec forName(String name) {
+        switch (name) {
+            case "string":
+            case "bytes":
+                return new JsonCodec();
+            case "binary":
+                return new BinaryCodec();
+            default:
+                throw new IllegalArgumentException("Unknown RECORD_ENCODING: " + name);
+        }
+    }
+}
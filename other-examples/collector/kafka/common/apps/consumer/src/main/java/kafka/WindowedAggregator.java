@@ -0,0 +1,225 @@
+package kafka;
+
+import io.opentelemetry.api.GlobalOpenTelemetry;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.DoubleCounter;
+import io.opentelemetry.api.metrics.LongCounter;
+import io.opentelemetry.api.metrics.Meter;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.logging.Logger;
+
+/**
+ * Streaming stage that aggregates order revenue and quantity per product, and payment amount per
+ * payment method, into tumbling event-time windows keyed by the records' {@code "ts"} field.
+ *
+ * Windows live in a {@link LongObjectMap} keyed by window index, and each window holds dense
+ * primitive arrays indexed by {@link ByteDictionary} ids, so accumulating a record allocates
+ * nothing. A window closes once the watermark (highest event time seen minus the allowed
+ * lateness) passes its end. Expired windows are evicted a few at a time on each call, emitted as
+ * OTel counters, and recycled. Records for an already-closed window are counted as late and
+ * dropped.
+ *
+ * Not thread-safe; ConsumerApp drives it from the poll thread.
+ */
+final class WindowedAggregator {
+
+    private static final Logger log = Logger.getLogger(WindowedAggregator.class.getName());
+
+    private static final AttributeKey<String> PRODUCT = AttributeKey.stringKey("product");
+    private static final AttributeKey<String> METHOD = AttributeKey.stringKey("payment.method");
+
+    static final int MAX_DIMENSION_VALUES = 256;
+    // Bounds the work done per call so a large watermark jump never stalls the poll loop
+    private static final int MAX_EVICTIONS_PER_CALL = 4;
+
+    private final long windowMillis;
+    private final long allowedLatenessMillis;
+    private final RecordCodec codec;
+    private final ByteDictionary products = new ByteDictionary(MAX_DIMENSION_VALUES);
+    private final ByteDictionary methods = new ByteDictionary(MAX_DIMENSION_VALUES);
+    private final Attributes[] productAttributes = new Attributes[MAX_DIMENSION_VALUES];
+    private final Attributes[] methodAttributes = new Attributes[MAX_DIMENSION_VALUES];
+    private final LongObjectMap<Window> windows = new LongObjectMap<>(8);
+    private final ArrayDeque<Window> free = new ArrayDeque<>();
+    private final DoubleCounter orderRevenue;
+    private final LongCounter orderQuantity;
+    private final DoubleCounter paymentAmount;
+    private final LongCounter lateRecords;
+
+    private long maxEventMillis = Long.MIN_VALUE;
+    private long lastAcceptMillis;
+    // Lowest window index that may still be open; everything below it has been emitted
+    private long oldestOpenWindow = Long.MIN_VALUE;
+
+    WindowedAggregator(long windowMillis, long allowedLatenessMillis, RecordCodec codec) {
+        this.windowMillis = windowMillis;
+        this.allowedLatenessMillis = allowedLatenessMillis;
+        this.codec = codec;
+        Meter meter = GlobalOpenTelemetry.getMeter("kafka.consumer");
+        orderRevenue = meter.counterBuilder("orders.revenue")
+            .ofDoubles()
+            .setDescription("Order revenue per product, emitted when each window closes.")
+            .setUnit("{currency}")
+            .build();
+        orderQuantity = meter.counterBuilder("orders.quantity")
+            .setDescription("Units ordered per product, emitted when each window closes.")
+            .setUnit("{item}")
+            .build();
+        paymentAmount = meter.counterBuilder("payments.amount")
+            .ofDoubles()
+            .setDescription("Payment amount per payment method, emitted when each window closes.")
+            .setUnit("{currency}")
+            .build();
+        lateRecords = meter.counterBuilder("kafka.consumer.window.late_records")
+            .setDescription("Records dropped because their window had already closed.")
+            .setUnit("{record}")
+            .build();
+    }
+
+    void accept(ConsumerRecord<?, byte[]> record) {
+        byte[] value = record.value();
+        if (value == null) {
+            return;
+        }
+        long ts = codec.timestamp(value);
+        if (ts == RecordCodec.MISSING) {
+            return;
+        }
+        switch (record.topic()) {
+            case "orders":
+                accept(ts, value, true);
+                break;
+            case "payments":
+                accept(ts, value, false);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Closes windows whose end the watermark has passed; call once per poll. When no records have
+     * arrived for a whole window, the wall clock drives the watermark so the last window still closes.
+     */
+    void advance(long nowMillis) {
+        if (maxEventMillis == Long.MIN_VALUE) {
+            return;
+        }
+        long watermark = maxEventMillis;
+        if (nowMillis - lastAcceptMillis > windowMillis) {
+            watermark = Math.max(watermark, nowMillis);
+        }
+        long closeBefore = Math.floorDiv(watermark - allowedLatenessMillis, windowMillis);
+        for (int evicted = 0; oldestOpenWindow < closeBefore && evicted < MAX_EVICTIONS_PER_CALL; ) {
+            if (windows.size() == 0) {
+                oldestOpenWindow = closeBefore;
+                break;
+            }
+            Window window = windows.remove(oldestOpenWindow);
+            if (window != null) {
+                emit(window);
+                free.push(window);
+                evicted++;
+                oldestOpenWindow++;
+            } else {
+                // Skip straight over gaps in event time instead of walking them one by one
+                oldestOpenWindow = Math.min(windows.minKey(), closeBefore);
+            }
+        }
+    }
+
+    int activeWindows() {
+        return windows.size();
+    }
+
+    private void accept(long ts, byte[] value, boolean order) {
+        long index = Math.floorDiv(ts, windowMillis);
+        if (oldestOpenWindow == Long.MIN_VALUE) {
+            oldestOpenWindow = Math.floorDiv(ts - allowedLatenessMillis, windowMillis);
+        }
+        if (index < oldestOpenWindow) {
+            lateRecords.add(1);
+            return;
+        }
+        maxEventMillis = Math.max(maxEventMillis, ts);
+        lastAcceptMillis = System.currentTimeMillis();
+
+        long cents = codec.amountCents(value);
+        if (cents == RecordCodec.MISSING) {
+            return;
+        }
+        Window window = windows.get(index);
+        if (window == null) {
+            window = free.isEmpty() ? new Window() : free.pop();
+            window.reset(index);
+            windows.put(index, window);
+        }
+        if (order) {
+            int product = codec.product(value, products);
+            long quantity = codec.quantity(value);
+            window.orderCents[product] += cents;
+            window.orderQuantity[product] += quantity == RecordCodec.MISSING ? 0 : quantity;
+            window.orderCount[product]++;
+        } else {
+            int method = codec.method(value, methods);
+            window.paymentCents[method] += cents;
+            window.paymentCount[method]++;
+        }
+    }
+
+    private void emit(Window window) {
+        long revenueCents = 0;
+        long orders = 0;
+        for (int id = 0; id < products.size(); id++) {
+            if (window.orderCount[id] > 0) {
+                Attributes attributes = attributes(productAttributes, id, PRODUCT, products);
+                orderRevenue.add(window.orderCents[id] / 100.0, attributes);
+                orderQuantity.add(window.orderQuantity[id], attributes);
+                revenueCents += window.orderCents[id];
+                orders += window.orderCount[id];
+            }
+        }
+        long payments = 0;
+        for (int id = 0; id < methods.size(); id++) {
+            if (window.paymentCount[id] > 0) {
+                paymentAmount.add(window.paymentCents[id] / 100.0, attributes(methodAttributes, id, METHOD, methods));
+                payments += window.paymentCount[id];
+            }
+        }
+        log.info(String.format("Window %tT closed — %d orders, revenue %.2f, %d payments",
+            window.index * windowMillis, orders, revenueCents / 100.0, payments));
+    }
+
+    private static Attributes attributes(Attributes[] cache, int id, AttributeKey<String> key, ByteDictionary dictionary) {
+        Attributes attributes = cache[id];
+        if (attributes == null) {
+            attributes = Attributes.of(key, dictionary.name(id));
+            cache[id] = attributes;
+        }
+        return attributes;
+    }
+
+    /** Accumulators for one window, indexed by dictionary id. */
+    private static final class Window {
+
+        long index;
+        final long[] orderCents = new long[MAX_DIMENSION_VALUES];
+        final long[] orderQuantity = new long[MAX_DIMENSION_VALUES];
+        final long[] orderCount = new long[MAX_DIMENSION_VALUES];
+        final long[] paymentCents = new long[MAX_DIMENSION_VALUES];
+        final long[] paymentCount = new long[MAX_DIMENSION_VALUES];
+
+        void reset(long index) {
+            this.index = index;
+            Arrays.fill(orderCents, 0);
+            Arrays.fill(orderQuantity, 0);
+            Arrays.fill(orderCount, 0);
+            Arrays.fill(paymentCents, 0);
+            Arrays.fill(paymentCount, 0);
+        }
+    }
+}
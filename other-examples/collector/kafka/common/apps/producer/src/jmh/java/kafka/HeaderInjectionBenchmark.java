@@ -0,0 +1,54 @@
+package kafka;
+
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanContext;
+import io.opentelemetry.api.trace.TraceFlags;
+import io.opentelemetry.api.trace.TraceState;
+import io.opentelemetry.api.trace.propagation.W3CTraceContextPropagator;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.context.propagation.TextMapPropagator;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-record cost of writing a W3C traceparent header, as SendTracker does with
+ * TRACE_PROPAGATION=app. {@code emptyHeaders} is the baseline every ProducerRecord pays anyway;
+ * the difference is the cost of propagation. The consumer side is measured by
+ * HeaderExtractionBenchmark in the consumer app.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class HeaderInjectionBenchmark {
+
+    // The agent's global propagators are not installed here, so use the W3C propagator directly
+    private final TextMapPropagator propagator = W3CTraceContextPropagator.getInstance();
+    private final Context context = Context.root().with(Span.wrap(SpanContext.create(
+        "4bf92f3577b34da6a3ce929d0e0e4736", "00f067aa0ba902b7", TraceFlags.getSampled(), TraceState.getDefault())));
+
+    @Benchmark
+    public Headers emptyHeaders() {
+        return new RecordHeaders();
+    }
+
+    @Benchmark
+    public Headers inject() {
+        Headers headers = new RecordHeaders();
+        propagator.inject(context, headers, HeadersSetter.INSTANCE);
+        return headers;
+    }
+}
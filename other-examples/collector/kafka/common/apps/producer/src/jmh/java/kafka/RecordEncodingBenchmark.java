@@ -0,0 +1,95 @@
+package kafka;
+
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.Serializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares building and serializing one order, payment and shipment record through the
+ * String.format + StringSerializer path, the byte-level JSON path and the binary codec. Results
+ * are per record; gc.alloc.rate.norm is the number of bytes allocated per record. Setup also
+ * prints the serialized key and value bytes per record for each encoding, which is what goes
+ * over the network (before batch compression) and onto broker disk.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@OperationsPerInvocation(3)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class RecordEncodingBenchmark {
+
+    private final Random rng = new Random(42);
+    private final StringRecords stringRecords = new StringRecords();
+    private final ByteRecords byteRecords = new ByteRecords();
+    private final BinaryRecords binaryRecords = new BinaryRecords();
+    private final Serializer<String> stringSerializer = new StringSerializer();
+    private final Serializer<byte[]> byteSerializer = new ByteArraySerializer();
+
+    @Benchmark
+    public void stringFormat(Blackhole bh) {
+        serialize(stringRecords.order(rng), stringSerializer, bh);
+        serialize(stringRecords.payment(rng), stringSerializer, bh);
+        serialize(stringRecords.shipment(rng), stringSerializer, bh);
+    }
+
+    @Benchmark
+    public void bytes(Blackhole bh) {
+        serialize(byteRecords.order(rng), byteSerializer, bh);
+        serialize(byteRecords.payment(rng), byteSerializer, bh);
+        serialize(byteRecords.shipment(rng), byteSerializer, bh);
+    }
+
+    @Benchmark
+    public void binary(Blackhole bh) {
+        serialize(binaryRecords.order(rng), byteSerializer, bh);
+        serialize(binaryRecords.payment(rng), byteSerializer, bh);
+        serialize(binaryRecords.shipment(rng), byteSerializer, bh);
+    }
+
+    @Setup(Level.Trial)
+    public void printBytesPerRecord() {
+        System.out.printf("%nWire bytes per record (key + value): string %.1f, bytes %.1f, binary %.1f%n",
+            bytesPerRecord(stringRecords, stringSerializer), bytesPerRecord(byteRecords, byteSerializer),
+            bytesPerRecord(binaryRecords, byteSerializer));
+    }
+
+    private static <T> double bytesPerRecord(RecordEncoding<T, T> encoding, Serializer<T> serializer) {
+        Random rng = new Random(7);
+        int iterations = 10_000;
+        long bytes = 0;
+        for (int i = 0; i < iterations; i++) {
+            bytes += size(encoding.order(rng), serializer) + size(encoding.payment(rng), serializer)
+                + size(encoding.shipment(rng), serializer);
+        }
+        return bytes / (iterations * 3.0);
+    }
+
+    private static <T> int size(ProducerRecord<T, T> record, Serializer<T> serializer) {
+        return serializer.serialize(record.topic(), record.key()).length
+            + serializer.serialize(record.topic(), record.value()).length;
+    }
+
+    private static <T> void serialize(ProducerRecord<T, T> record, Serializer<T> serializer, Blackhole bh) {
+        bh.consume(serializer.serialize(record.topic(), record.key()));
+        bh.consume(serializer.serialize(record.topic(), record.value()));
+    }
+}
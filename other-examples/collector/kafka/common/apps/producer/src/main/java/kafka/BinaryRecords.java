@@ -0,0 +1,155 @@
+package kafka;
+
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+
+import java.util.Random;
+
+import static kafka.ByteRecords.CARRIERS;
+import static kafka.ByteRecords.ID_RANGE;
+import static kafka.ByteRecords.METHODS;
+import static kafka.ByteRecords.ORDER_IDS;
+import static kafka.ByteRecords.PAYMENT_IDS;
+import static kafka.ByteRecords.PRODUCTS;
+import static kafka.ByteRecords.SHIPMENT_IDS;
+import static kafka.ByteRecords.STATUSES;
+import static kafka.ByteRecords.TRACKING_PREFIXES;
+
+/**
+ * Compact binary twin of {@link ByteRecords}, in an Avro-like layout. There are no field names:
+ * fields follow a fixed order per schema, integers are unsigned LEB128 varints, and strings are a
+ * varint length followed by the UTF-8 bytes. The first byte identifies the schema, so a reader
+ * can reject anything else (a JSON record starts with '{', which is never a schema id):
+ *
+ * <pre>
+ *   order:    0x01 ts amount_cents quantity order_id product status
+ *   payment:  0x02 ts amount_cents payment_id order_id method
+ *   shipment: 0x03 ts shipment_id order_id carrier tracking
+ * </pre>
+ *
+ * Numbers come first, so the consumer reads ts and amount without skipping any strings. The
+ * amount is stored as whole cents, like an Avro decimal with scale 2. Random values are drawn in
+ * the same order as the JSON encodings, and each record is written straight into an exactly sized
+ * array with no intermediate buffer.
+ */
+final class BinaryRecords implements RecordEncoding<byte[], byte[]> {
+
+    static final byte ORDER = 1;
+    static final byte PAYMENT = 2;
+    static final byte SHIPMENT = 3;
+
+    @Override
+    public String keySerializer() {
+        return ByteArraySerializer.class.getName();
+    }
+
+    @Override
+    public String valueSerializer() {
+        return ByteArraySerializer.class.getName();
+    }
+
+    @Override
+    public ProducerRecord<byte[], byte[]> order(Random rng) {
+        byte[] orderId = ORDER_IDS[rng.nextInt(ID_RANGE)];
+        byte[] product = PRODUCTS[rng.nextInt(PRODUCTS.length)];
+        byte[] status  = STATUSES[rng.nextInt(STATUSES.length)];
+        long   cents   = Math.round((10 + rng.nextDouble() * 990) * 100);
+        int    qty     = 1 + rng.nextInt(5);
+        long   ts      = System.currentTimeMillis();
+        byte[] val = new byte[1 + varintSize(ts) + varintSize(cents) + varintSize(qty)
+            + stringSize(orderId.length) + stringSize(product.length) + stringSize(status.length)];
+        int pos = 0;
+        val[pos++] = ORDER;
+        pos = varint(val, pos, ts);
+        pos = varint(val, pos, cents);
+        pos = varint(val, pos, qty);
+        pos = string(val, pos, orderId);
+        pos = string(val, pos, product);
+        string(val, pos, status);
+        return new ProducerRecord<>("orders", orderId, val);
+    }
+
+    @Override
+    public ProducerRecord<byte[], byte[]> payment(Random rng) {
+        byte[] paymentId = PAYMENT_IDS[rng.nextInt(ID_RANGE)];
+        byte[] orderId   = ORDER_IDS[rng.nextInt(ID_RANGE)];
+        byte[] method    = METHODS[rng.nextInt(METHODS.length)];
+        long   cents     = Math.round((10 + rng.nextDouble() * 990) * 100);
+        long   ts        = System.currentTimeMillis();
+        byte[] val = new byte[1 + varintSize(ts) + varintSize(cents)
+            + stringSize(paymentId.length) + stringSize(orderId.length) + stringSize(method.length)];
+        int pos = 0;
+        val[pos++] = PAYMENT;
+        pos = varint(val, pos, ts);
+        pos = varint(val, pos, cents);
+        pos = string(val, pos, paymentId);
+        pos = string(val, pos, orderId);
+        string(val, pos, method);
+        return new ProducerRecord<>("payments", paymentId, val);
+    }
+
+    @Override
+    public ProducerRecord<byte[], byte[]> shipment(Random rng) {
+        byte[] shipmentId = SHIPMENT_IDS[rng.nextInt(ID_RANGE)];
+        byte[] orderId    = ORDER_IDS[rng.nextInt(ID_RANGE)];
+        int    carrier    = rng.nextInt(CARRIERS.length);
+        int    tracking   = rng.nextInt(1_000_000);
+        long   ts         = System.currentTimeMillis();
+        byte[] prefix = TRACKING_PREFIXES[carrier];
+        int trackingLength = prefix.length + digitCount(tracking);
+        byte[] val = new byte[1 + varintSize(ts) + stringSize(shipmentId.length) + stringSize(orderId.length)
+            + stringSize(CARRIERS[carrier].length) + stringSize(trackingLength)];
+        int pos = 0;
+        val[pos++] = SHIPMENT;
+        pos = varint(val, pos, ts);
+        pos = string(val, pos, shipmentId);
+        pos = string(val, pos, orderId);
+        pos = string(val, pos, CARRIERS[carrier]);
+        pos = varint(val, pos, trackingLength);
+        System.arraycopy(prefix, 0, val, pos, prefix.length);
+        writeDigits(val, pos + trackingLength, tracking);
+        return new ProducerRecord<>("shipments", shipmentId, val);
+    }
+
+    static int varintSize(long value) {
+        // 7 payload bits per byte; a value of 0 still takes one byte
+        return Math.max(1, (64 - Long.numberOfLeadingZeros(value) + 6) / 7);
+    }
+
+    private static int stringSize(int length) {
+        return varintSize(length) + length;
+    }
+
+    /** Writes a non-negative value as an unsigned LEB128 varint and returns the next position. */
+    static int varint(byte[] dst, int pos, long value) {
+        while ((value & ~0x7FL) != 0) {
+            dst[pos++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        dst[pos++] = (byte) value;
+        return pos;
+    }
+
+    private static int string(byte[] dst, int pos, byte[] utf8) {
+        pos = varint(dst, pos, utf8.length);
+        System.arraycopy(utf8, 0, dst, pos, utf8.length);
+        return pos + utf8.length;
+    }
+
+    private static int digitCount(int value) {
+        int count = 1;
+        while (value >= 10) {
+            value /= 10;
+            count++;
+        }
+        return count;
+    }
+
+    /** Writes {@code value} in decimal so that its last digit lands just before {@code end}. */
+    private static void writeDigits(byte[] dst, int end, int value) {
+        do {
+            dst[--end] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+    }
+}
@@ -0,0 +1,130 @@
+package kafka;
+
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+
+import java.util.Random;
+
+/**
+ * Byte-level twin of {@link StringRecords}: produces the same JSON documents, drawing from the
+ * random source in the same order, but writes them into a per-thread {@link JsonBytesWriter}.
+ * Record keys come from precomputed tables, so the value array is the only per-record allocation
+ * besides the ProducerRecord itself.
+ */
+final class ByteRecords implements RecordEncoding<byte[], byte[]> {
+
+    static final int ID_RANGE = 10_000;
+
+    // Shared with BinaryRecords
+    static final byte[][] ORDER_IDS    = ids("order-");
+    static final byte[][] PAYMENT_IDS  = ids("pay-");
+    static final byte[][] SHIPMENT_IDS = ids("ship-");
+
+    static final byte[][] PRODUCTS = asciiAll(ProducerApp.PRODUCTS);
+    static final byte[][] STATUSES = asciiAll(ProducerApp.STATUSES);
+    static final byte[][] CARRIERS = asciiAll(ProducerApp.CARRIERS);
+    static final byte[][] METHODS  = asciiAll(ProducerApp.METHODS);
+    static final byte[][] TRACKING_PREFIXES = new byte[CARRIERS.length][];
+
+    static {
+        for (int i = 0; i < CARRIERS.length; i++) {
+            TRACKING_PREFIXES[i] = JsonBytesWriter.ascii(ProducerApp.CARRIERS[i].toUpperCase());
+        }
+    }
+
+    private static final byte[] ORDER_START    = JsonBytesWriter.ascii("{\"order_id\":\"");
+    private static final byte[] PAYMENT_START  = JsonBytesWriter.ascii("{\"payment_id\":\"");
+    private static final byte[] SHIPMENT_START = JsonBytesWriter.ascii("{\"shipment_id\":\"");
+    private static final byte[] ORDER_ID       = JsonBytesWriter.ascii("\",\"order_id\":\"");
+    private static final byte[] PRODUCT        = JsonBytesWriter.ascii("\",\"product\":\"");
+    private static final byte[] STATUS         = JsonBytesWriter.ascii("\",\"status\":\"");
+    private static final byte[] METHOD         = JsonBytesWriter.ascii("\",\"method\":\"");
+    private static final byte[] CARRIER        = JsonBytesWriter.ascii("\",\"carrier\":\"");
+    private static final byte[] TRACKING       = JsonBytesWriter.ascii("\",\"tracking\":\"");
+    private static final byte[] AMOUNT         = JsonBytesWriter.ascii("\",\"amount\":");
+    private static final byte[] QUANTITY       = JsonBytesWriter.ascii(",\"quantity\":");
+    private static final byte[] TS             = JsonBytesWriter.ascii(",\"ts\":");
+    private static final byte[] TS_AFTER_QUOTE = JsonBytesWriter.ascii("\",\"ts\":");
+
+    private static final ThreadLocal<JsonBytesWriter> WRITER =
+        ThreadLocal.withInitial(() -> new JsonBytesWriter(256));
+
+    @Override
+    public String keySerializer() {
+        return ByteArraySerializer.class.getName();
+    }
+
+    @Override
+    public String valueSerializer() {
+        return ByteArraySerializer.class.getName();
+    }
+
+    @Override
+    public ProducerRecord<byte[], byte[]> order(Random rng) {
+        byte[] orderId = ORDER_IDS[rng.nextInt(ID_RANGE)];
+        byte[] product = PRODUCTS[rng.nextInt(PRODUCTS.length)];
+        byte[] status  = STATUSES[rng.nextInt(STATUSES.length)];
+        double amount  = 10 + rng.nextDouble() * 990;
+        int    qty     = 1 + rng.nextInt(5);
+        byte[] val = WRITER.get().reset()
+            .raw(ORDER_START).raw(orderId)
+            .raw(PRODUCT).raw(product)
+            .raw(STATUS).raw(status)
+            .raw(AMOUNT).decimal2(amount)
+            .raw(QUANTITY).digits(qty)
+            .raw(TS).digits(System.currentTimeMillis())
+            .raw((byte) '}')
+            .toByteArray();
+        return new ProducerRecord<>("orders", orderId, val);
+    }
+
+    @Override
+    public ProducerRecord<byte[], byte[]> payment(Random rng) {
+        byte[] paymentId = PAYMENT_IDS[rng.nextInt(ID_RANGE)];
+        byte[] orderId   = ORDER_IDS[rng.nextInt(ID_RANGE)];
+        byte[] method    = METHODS[rng.nextInt(METHODS.length)];
+        double amount    = 10 + rng.nextDouble() * 990;
+        byte[] val = WRITER.get().reset()
+            .raw(PAYMENT_START).raw(paymentId)
+            .raw(ORDER_ID).raw(orderId)
+            .raw(METHOD).raw(method)
+            .raw(AMOUNT).decimal2(amount)
+            .raw(TS).digits(System.currentTimeMillis())
+            .raw((byte) '}')
+            .toByteArray();
+        return new ProducerRecord<>("payments", paymentId, val);
+    }
+
+    @Override
+    public ProducerRecord<byte[], byte[]> shipment(Random rng) {
+        byte[] shipmentId = SHIPMENT_IDS[rng.nextInt(ID_RANGE)];
+        byte[] orderId    = ORDER_IDS[rng.nextInt(ID_RANGE)];
+        int    carrier    = rng.nextInt(CARRIERS.length);
+        int    tracking   = rng.nextInt(1_000_000);
+        byte[] val = WRITER.get().reset()
+            .raw(SHIPMENT_START).raw(shipmentId)
+            .raw(ORDER_ID).raw(orderId)
+            .raw(CARRIER).raw(CARRIERS[carrier])
+            .raw(TRACKING).raw(TRACKING_PREFIXES[carrier]).digits(tracking)
+            .raw(TS_AFTER_QUOTE).digits(System.currentTimeMillis())
+            .raw((byte) '}')
+            .toByteArray();
+        return new ProducerRecord<>("shipments", shipmentId, val);
+    }
+
+    private static byte[][] ids(String prefix) {
+        byte[][] ids = new byte[ID_RANGE][];
+        for (int i = 0; i < ID_RANGE; i++) {
+            ids[i] = JsonBytesWriter.ascii(prefix + i);
+        }
+        return ids;
+    }
+
+    private static byte[][] asciiAll(String[] values) {
+        byte[][] bytes = new byte[values.length][];
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = JsonBytesWriter.ascii(values[i]);
+        }
+        return bytes;
+    }
+}
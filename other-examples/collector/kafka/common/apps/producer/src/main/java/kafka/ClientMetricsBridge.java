@@ -0,0 +1,230 @@
+package kafka;
+
+import io.opentelemetry.api.GlobalOpenTelemetry;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.common.AttributesBuilder;
+import io.opentelemetry.api.metrics.BatchCallback;
+import io.opentelemetry.api.metrics.Meter;
+import io.opentelemetry.api.metrics.ObservableDoubleMeasurement;
+import io.opentelemetry.api.metrics.ObservableMeasurement;
+import org.apache.kafka.clients.CommonClientConfigs;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.metrics.KafkaMetric;
+import org.apache.kafka.common.metrics.MetricsReporter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Exports a curated set of the Kafka client's own metrics ({@code metrics()} on the producer or
+ * consumer) as OTel observable instruments, so client-side behaviour can be lined up against the
+ * broker metrics the collector already receives.
+ *
+ * Matching Kafka MetricNames to instruments happens once and is cached as an array of
+ * (metric, attributes) bindings, so a collection cycle reads only the bound metrics instead of
+ * matching every name again. The client registers metrics lazily (per topic, partition and broker
+ * node) and removes them on rebalance, so the bindings are rebuilt whenever a metric is added or
+ * removed. {@link ChangeReporter}, registered on the client through {@link #addReporter}, signals
+ * those changes, so a collection cycle with nothing new costs one volatile read.
+ *
+ * The consumer app has a copy of this class that differs only in its mapping table; change both.
+ */
+final class ClientMetricsBridge implements AutoCloseable {
+
+    enum Kind { GAUGE, COUNTER }
+
+    /**
+     * Maps the Kafka metric {@code group}/{@code kafkaName} to an instrument. Kafka often registers
+     * the same name at client and topic level; {@code perTopic} picks one of the two.
+     */
+    record Mapping(String group, String kafkaName, boolean perTopic, String name, Kind kind, String unit,
+                   double scale, String description) {
+    }
+
+    private static final double MILLIS = 1e-3;
+
+    /** Producer metrics worth correlating with broker request latency and throughput under load. */
+    static final List<Mapping> PRODUCER = List.of(
+        new Mapping("producer-topic-metrics", "record-send-total", true, "kafka.producer.records.sent",
+            Kind.COUNTER, "{record}", 1, "Records sent, as counted by the client."),
+        new Mapping("producer-topic-metrics", "record-error-total", true, "kafka.producer.records.errors",
+            Kind.COUNTER, "{record}", 1, "Records whose send failed after all retries."),
+        new Mapping("producer-topic-metrics", "record-retry-total", true, "kafka.producer.records.retries",
+            Kind.COUNTER, "{record}", 1, "Record sends that were retried."),
+        new Mapping("producer-topic-metrics", "byte-total", true, "kafka.producer.bytes.sent",
+            Kind.COUNTER, "By", 1, "Bytes sent, after compression."),
+        new Mapping("producer-metrics", "record-send-rate", false, "kafka.producer.record.send.rate",
+            Kind.GAUGE, "{record}/s", 1, "Records sent per second."),
+        new Mapping("producer-metrics", "request-latency-avg", false, "kafka.producer.request.latency.avg",
+            Kind.GAUGE, "s", MILLIS, "Average produce request latency."),
+        new Mapping("producer-metrics", "request-latency-max", false, "kafka.producer.request.latency.max",
+            Kind.GAUGE, "s", MILLIS, "Maximum produce request latency."),
+        new Mapping("producer-metrics", "records-per-request-avg", false, "kafka.producer.request.records.avg",
+            Kind.GAUGE, "{record}", 1, "Average records per produce request."),
+        new Mapping("producer-metrics", "batch-size-avg", false, "kafka.producer.batch.size.avg",
+            Kind.GAUGE, "By", 1, "Average bytes per partition batch."),
+        new Mapping("producer-metrics", "compression-rate-avg", false, "kafka.producer.compression.ratio",
+            Kind.GAUGE, "1", 1, "Average compressed-to-uncompressed size ratio of batches."),
+        new Mapping("producer-metrics", "buffer-available-bytes", false, "kafka.producer.buffer.available",
+            Kind.GAUGE, "By", 1, "Unused buffer.memory."),
+        new Mapping("producer-metrics", "bufferpool-wait-ratio", false, "kafka.producer.buffer.wait.ratio",
+            Kind.GAUGE, "1", 1, "Fraction of time send() blocked waiting for buffer.memory."));
+
+    /** Returns a bridge for the producer's metrics, or null when KAFKA_CLIENT_METRICS_ENABLED=false. */
+    static ClientMetricsBridge forProducer(Map<MetricName, ? extends Metric> metrics) {
+        return fromEnv("kafka.producer", metrics, PRODUCER);
+    }
+
+    /**
+     * Adds {@link ChangeReporter} to the client's {@code metric.reporters}. Without it the bindings are
+     * only made on the first collection, and go stale when the client's metrics change.
+     */
+    static void addReporter(Properties props) {
+        props.merge(CommonClientConfigs.METRIC_REPORTER_CLASSES_CONFIG, ChangeReporter.class.getName(),
+            (existing, added) -> existing + "," + added);
+    }
+
+    /** Returns a bridge over {@code metrics}, or null when KAFKA_CLIENT_METRICS_ENABLED=false. */
+    private static ClientMetricsBridge fromEnv(String meterName, Map<MetricName, ? extends Metric> metrics,
+                                               List<Mapping> mappings) {
+        if (!Boolean.parseBoolean(System.getenv().getOrDefault("KAFKA_CLIENT_METRICS_ENABLED", "true"))) {
+            return null;
+        }
+        return new ClientMetricsBridge(GlobalOpenTelemetry.getMeter(meterName), metrics, mappings);
+    }
+
+    private final Map<MetricName, ? extends Metric> metrics;
+    private final List<Mapping> mappings;
+    private final Map<String, Integer> mappingIndex = new HashMap<>();
+    private final ObservableDoubleMeasurement[] measurements;
+    private final BatchCallback callback;
+    // Only touched by the collection callback, which the SDK never runs concurrently with itself
+    private Binding[] bindings = new Binding[0];
+    private long resolvedGeneration = -1;
+
+    /** @param metrics the client's live, unmodifiable metrics view; it is read on the collection thread */
+    ClientMetricsBridge(Meter meter, Map<MetricName, ? extends Metric> metrics, List<Mapping> mappings) {
+        this.metrics = metrics;
+        this.mappings = mappings;
+        measurements = new ObservableDoubleMeasurement[mappings.size()];
+        for (int i = 0; i < mappings.size(); i++) {
+            Mapping m = mappings.get(i);
+            mappingIndex.put(key(m.group(), m.kafkaName(), m.perTopic()), i);
+            measurements[i] = m.kind() == Kind.COUNTER
+                ? meter.counterBuilder(m.name()).ofDoubles().setUnit(m.unit()).setDescription(m.description()).buildObserver()
+                : meter.gaugeBuilder(m.name()).setUnit(m.unit()).setDescription(m.description()).buildObserver();
+        }
+        ObservableMeasurement[] rest = Arrays.copyOfRange(measurements, 1, measurements.length, ObservableMeasurement[].class);
+        callback = meter.batchCallback(this::collect, measurements[0], rest);
+    }
+
+    @Override
+    public void close() {
+        callback.close();
+    }
+
+    private void collect() {
+        // Read before resolving, so a change made while resolving is picked up on the next cycle
+        long generation = ChangeReporter.GENERATION.get();
+        if (generation != resolvedGeneration) {
+            resolve();
+            resolvedGeneration = generation;
+        }
+        for (Binding binding : bindings) {
+            // Rates and averages over an empty sample window are NaN; skip rather than export them
+            if (binding.metric.metricValue() instanceof Double value && Double.isFinite(value)) {
+                binding.measurement.record(value * binding.scale, binding.attributes);
+            }
+        }
+    }
+
+    private void resolve() {
+        List<Binding> resolved = new ArrayList<>();
+        for (Map.Entry<MetricName, ? extends Metric> entry : metrics.entrySet()) {
+            MetricName name = entry.getKey();
+            Integer index = mappingIndex.get(key(name.group(), name.name(), name.tags().containsKey("topic")));
+            if (index != null) {
+                resolved.add(new Binding(entry.getValue(), measurements[index], mappings.get(index).scale(),
+                    attributes(name.tags())));
+            }
+        }
+        bindings = resolved.toArray(new Binding[0]);
+    }
+
+    private static String key(String group, String name, boolean perTopic) {
+        return group + '/' + name + (perTopic ? "/topic" : "");
+    }
+
+    private static Attributes attributes(Map<String, String> tags) {
+        AttributesBuilder builder = Attributes.builder();
+        tags.forEach((tag, value) -> builder.put(attributeName(tag), value));
+        return builder.build();
+    }
+
+    private static String attributeName(String tag) {
+        switch (tag) {
+            case "client-id":
+                return "messaging.client.id";
+            case "topic":
+                return "messaging.destination.name";
+            case "partition":
+                return "messaging.destination.partition.id";
+            default:
+                return "kafka." + tag.replace('-', '_');
+        }
+    }
+
+    /**
+     * Counts metric additions and removals. Kafka creates reporters from their class name, one per
+     * client, so the count is shared: a change in any client of the process rebuilds every bridge's
+     * bindings, which is rare enough not to matter.
+     */
+    public static final class ChangeReporter implements MetricsReporter {
+
+        static final AtomicLong GENERATION = new AtomicLong();
+
+        @Override
+        public void configure(Map<String, ?> configs) {
+        }
+
+        @Override
+        public void init(List<KafkaMetric> metrics) {
+            GENERATION.incrementAndGet();
+        }
+
+        @Override
+        public void metricChange(KafkaMetric metric) {
+            GENERATION.incrementAndGet();
+        }
+
+        @Override
+        public void metricRemoval(KafkaMetric metric) {
+            GENERATION.incrementAndGet();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static final class Binding {
+
+        final Metric metric;
+        final ObservableDoubleMeasurement measurement;
+        final double scale;
+        final Attributes attributes;
+
+        Binding(Metric metric, ObservableDoubleMeasurement measurement, double scale, Attributes attributes) {
+            this.metric = metric;
+            this.measurement = measurement;
+            this.scale = scale;
+            this.attributes = attributes;
+        }
+    }
+}
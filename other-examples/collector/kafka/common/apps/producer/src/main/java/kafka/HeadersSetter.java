@@ -0,0 +1,19 @@
+package kafka;
+
+import io.opentelemetry.context.propagation.TextMapSetter;
+import org.apache.kafka.common.header.Headers;
+
+import java.nio.charset.StandardCharsets;
+
+/** Writes propagation fields such as {@code traceparent} into Kafka record headers. */
+enum HeadersSetter implements TextMapSetter<Headers> {
+    INSTANCE;
+
+    @Override
+    public void set(Headers headers, String key, String value) {
+        if (headers != null) {
+            // Replace rather than append, so a retried or re-sent record never carries two parents
+            headers.remove(key).add(key, value.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package kafka;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Appends JSON fragments to a reusable byte buffer.
+ *
+ * Numbers are formatted by hand straight into the buffer, so building a record costs no
+ * String, no format-string parsing and no char-to-UTF-8 encoding. The only allocation per record
+ * is the exact-size array returned by {@link #toByteArray()}, which Kafka's ByteArraySerializer
+ * needs because it has no offset/length variant.
+ */
+final class JsonBytesWriter {
+
+    private byte[] buf;
+    private int len;
+
+    JsonBytesWriter(int initialCapacity) {
+        this.buf = new byte[initialCapacity];
+    }
+
+    static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    JsonBytesWriter reset() {
+        len = 0;
+        return this;
+    }
+
+    JsonBytesWriter raw(byte[] bytes) {
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buf, len, bytes.length);
+        len += bytes.length;
+        return this;
+    }
+
+    JsonBytesWriter raw(byte b) {
+        ensure(1);
+        buf[len++] = b;
+        return this;
+    }
+
+    /** Writes a non-negative integer in decimal. */
+    JsonBytesWriter digits(long value) {
+        ensure(20);
+        if (value == 0) {
+            buf[len++] = '0';
+            return this;
+        }
+        int start = len;
+        while (value > 0) {
+            buf[len++] = (byte) ('0' + (value % 10));
+            value /= 10;
+        }
+        // Digits were produced least significant first
+        for (int i = start, j = len - 1; i < j; i++, j--) {
+            byte t = buf[i];
+            buf[i] = buf[j];
+            buf[j] = t;
+        }
+        return this;
+    }
+
+    /** Writes a non-negative value with exactly two decimals, like {@code %.2f}. */
+    JsonBytesWriter decimal2(double value) {
+        long cents = Math.round(value * 100);
+        digits(cents / 100);
+        ensure(3);
+        int frac = (int) (cents % 100);
+        buf[len++] = '.';
+        buf[len++] = (byte) ('0' + frac / 10);
+        buf[len++] = (byte) ('0' + frac % 10);
+        return this;
+    }
+
+    int length() {
+        return len;
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(buf, len);
+    }
+
+    private void ensure(int extra) {
+        if (len + extra > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(buf.length * 2, len + extra));
+        }
+    }
+}
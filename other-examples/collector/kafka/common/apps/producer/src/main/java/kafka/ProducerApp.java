@@ -1,44 +1,104 @@
 package kafka;
 
+import io.opentelemetry.api.GlobalOpenTelemetry;
 import org.apache.kafka.clients.producer.KafkaProducer;
 import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.clients.producer.ProducerRecord;
-import org.apache.kafka.common.serialization.StringSerializer;
+import org.apache.kafka.common.errors.InterruptException;
 
 import java.util.Properties;
 import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.logging.Logger;
 
 public class ProducerApp {
 
     private static final Logger log = Logger.getLogger(ProducerApp.class.getName());
 
-    private static final String[] PRODUCTS = {"laptop", "phone", "tablet", "headphones", "keyboard"};
-    private static final String[] STATUSES = {"pending", "confirmed", "processing"};
-    private static final String[] CARRIERS = {"fedex", "ups", "dhl", "usps"};
-    private static final String[] METHODS  = {"credit_card", "debit_card", "paypal", "bank_transfer"};
+    static final String[] PRODUCTS = {"laptop", "phone", "tablet", "headphones", "keyboard"};
+    static final String[] STATUSES = {"pending", "confirmed", "processing"};
+    static final String[] CARRIERS = {"fedex", "ups", "dhl", "usps"};
+    static final String[] METHODS  = {"credit_card", "debit_card", "paypal", "bank_transfer"};
+
+    // Each iteration emits one order, one payment and one shipment
+    private static final int RECORDS_PER_ITERATION = 3;
 
     public static void main(String[] args) throws InterruptedException {
         String bootstrapServers = System.getenv().getOrDefault("KAFKA_BOOTSTRAP_SERVERS", "localhost:9092");
         long intervalMs = Long.parseLong(System.getenv().getOrDefault("MESSAGE_INTERVAL_MS", "200"));
+        long targetRate = Long.parseLong(System.getenv().getOrDefault("TARGET_MESSAGES_PER_SEC", "0"));
+        RecordEncoding<?, ?> encoding = RecordEncoding.forName(System.getenv().getOrDefault("RECORD_ENCODING", "string"));
 
         Properties props = new Properties();
         props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
-        props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class.getName());
-        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class.getName());
+        props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, encoding.keySerializer());
+        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, encoding.valueSerializer());
         props.put(ProducerConfig.ACKS_CONFIG, "all");
         props.put(ProducerConfig.RETRIES_CONFIG, 3);
+        putIfSet(props, ProducerConfig.LINGER_MS_CONFIG, "PRODUCER_LINGER_MS");
+        putIfSet(props, ProducerConfig.BATCH_SIZE_CONFIG, "PRODUCER_BATCH_SIZE");
+        putIfSet(props, ProducerConfig.COMPRESSION_TYPE_CONFIG, "PRODUCER_COMPRESSION_TYPE");
+        ClientMetricsBridge.addReporter(props);
 
-        log.info("Starting Kafka Producer — bootstrap: " + bootstrapServers);
+        log.info("Starting Kafka Producer — bootstrap: " + bootstrapServers
+            + ", encoding: " + encoding.getClass().getSimpleName());
 
+        if (targetRate > 0) {
+            runLoadGenerator(props, encoding, targetRate);
+        } else {
+            runAtInterval(props, encoding, intervalMs);
+        }
+    }
+
+    /**
+     * TRACE_PROPAGATION=app makes the app start the send spans and inject their trace context into
+     * the record headers itself; the default, agent, leaves both to the agent's Kafka instrumentation.
+     */
+    private static SendTracker newSendTracker() {
+        String propagation = System.getenv().getOrDefault("TRACE_PROPAGATION", "agent");
+        switch (propagation) {
+            case "agent":
+                return new SendTracker(null);
+            case "app":
+                requireAgentKafkaInstrumentationDisabled();
+                return new SendTracker(GlobalOpenTelemetry.getTracer("kafka.producer"));
+            default:
+                throw new IllegalArgumentException("Unknown TRACE_PROPAGATION: " + propagation);
+        }
+    }
+
+    /**
+     * App mode needs the agent's Kafka instrumentation off, or it replaces the injected header with
+     * its own send span. The agent enables it unless
+     * OTEL_INSTRUMENTATION_KAFKA_ENABLED or otel.instrumentation.kafka.enabled is false.
+     */
+    static void requireAgentKafkaInstrumentationDisabled() {
+        String enabled = System.getProperty(
+                "otel.instrumentation.kafka.enabled",
+                System.getenv().getOrDefault("OTEL_INSTRUMENTATION_KAFKA_ENABLED", "true"));
+        if (!"false".equalsIgnoreCase(enabled.trim())) {
+            throw new IllegalStateException(
+                    "TRACE_PROPAGATION=app needs OTEL_INSTRUMENTATION_KAFKA_ENABLED=false");
+        }
+    }
+
+    static <K, V> void runAtInterval(Properties props, RecordEncoding<K, V> encoding, long intervalMs)
+            throws InterruptedException {
         Random rng = new Random();
+        SendTracker tracker = newSendTracker();
         long count = 0;
 
-        try (KafkaProducer<String, String> producer = new KafkaProducer<>(props)) {
+        try (KafkaProducer<K, V> producer = new KafkaProducer<>(props);
+             ClientMetricsBridge clientMetrics = ClientMetricsBridge.forProducer(producer.metrics())) {
             while (true) {
-                producer.send(buildOrder(rng));
-                producer.send(buildPayment(rng));
-                producer.send(buildShipment(rng));
+                tracker.send(producer, encoding.order(rng));
+                tracker.send(producer, encoding.payment(rng));
+                tracker.send(producer, encoding.shipment(rng));
                 count += 3;
                 if (count % 300 == 0) {
                     log.info("Sent " + count + " messages total");
@@ -48,6 +108,120 @@ public class ProducerApp {
         }
     }
 
+    /**
+     * Drives the brokers at {@code targetRate} messages/sec from several threads sharing one
+     * (thread-safe) KafkaProducer, paced by a {@link TokenBucket} rather than a fixed sleep.
+     * Runs until LOAD_DURATION_SEC elapses, or forever when it is 0.
+     */
+    static <K, V> void runLoadGenerator(Properties props, RecordEncoding<K, V> encoding, long targetRate)
+            throws InterruptedException {
+        int threads = Integer.parseInt(System.getenv().getOrDefault(
+            "PRODUCER_THREADS", String.valueOf(Runtime.getRuntime().availableProcessors())));
+        boolean virtualThreads = Boolean.parseBoolean(System.getenv().getOrDefault("PRODUCER_VIRTUAL_THREADS", "false"));
+        long durationSec = Long.parseLong(System.getenv().getOrDefault("LOAD_DURATION_SEC", "0"));
+        long reportSec = Long.parseLong(System.getenv().getOrDefault("LOAD_REPORT_INTERVAL_SEC", "10"));
+
+        log.info("Load generator mode — target: " + targetRate + " msg/s, threads: " + threads
+            + (virtualThreads ? " (virtual)" : "") + ", linger.ms: " + props.getOrDefault(ProducerConfig.LINGER_MS_CONFIG, "default")
+            + ", batch.size: " + props.getOrDefault(ProducerConfig.BATCH_SIZE_CONFIG, "default")
+            + ", compression: " + props.getOrDefault(ProducerConfig.COMPRESSION_TYPE_CONFIG, "default"));
+
+        // Absorb up to 100 iterations (or one second) of scheduling jitter without bursting further
+        TokenBucket pacer = new TokenBucket(targetRate, Math.min(targetRate, RECORDS_PER_ITERATION * 100L));
+        LongAdder sent = new LongAdder();
+        SendTracker tracker = newSendTracker();
+
+        ExecutorService workers = virtualThreads
+            ? Executors.newVirtualThreadPerTaskExecutor()
+            : Executors.newFixedThreadPool(threads);
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+
+        try (KafkaProducer<K, V> producer = new KafkaProducer<>(props);
+             ClientMetricsBridge clientMetrics = ClientMetricsBridge.forProducer(producer.metrics())) {
+            long start = System.nanoTime();
+            ThroughputReporter throughput = new ThroughputReporter(targetRate, sent, tracker, start);
+            reporter.scheduleAtFixedRate(throughput::report, reportSec, reportSec, TimeUnit.SECONDS);
+
+            for (int i = 0; i < threads; i++) {
+                workers.execute(() -> {
+                    ThreadLocalRandom rng = ThreadLocalRandom.current();
+                    try {
+                        while (!Thread.currentThread().isInterrupted()) {
+                            pacer.acquire(RECORDS_PER_ITERATION);
+                            tracker.send(producer, encoding.order(rng));
+                            tracker.send(producer, encoding.payment(rng));
+                            tracker.send(producer, encoding.shipment(rng));
+                            sent.add(RECORDS_PER_ITERATION);
+                        }
+                    } catch (InterruptedException | InterruptException e) {
+                        // shutdownNow() at the end of the run, while pacing or blocked in send()
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            }
+
+            if (durationSec > 0) {
+                workers.shutdown();
+                if (!workers.awaitTermination(durationSec, TimeUnit.SECONDS)) {
+                    workers.shutdownNow();
+                    workers.awaitTermination(30, TimeUnit.SECONDS);
+                }
+            } else {
+                workers.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+            }
+            producer.flush();
+            reporter.shutdownNow();
+            throughput.summary();
+        }
+    }
+
+    /**
+     * Logs achieved vs. target throughput for each interval and for the whole run. Achieved
+     * throughput counts broker-acknowledged records, not just records handed to send().
+     */
+    private static final class ThroughputReporter {
+
+        private final long targetRate;
+        private final LongAdder sent;
+        private final SendTracker tracker;
+        private final long start;
+        private long lastAcked;
+        private long lastNanos;
+
+        ThroughputReporter(long targetRate, LongAdder sent, SendTracker tracker, long start) {
+            this.targetRate = targetRate;
+            this.sent = sent;
+            this.tracker = tracker;
+            this.start = start;
+            this.lastNanos = start;
+        }
+
+        synchronized void report() {
+            long now = System.nanoTime();
+            long acked = tracker.acked();
+            double rate = (acked - lastAcked) * 1e9 / (now - lastNanos);
+            lastAcked = acked;
+            lastNanos = now;
+            log.info(String.format("Throughput — target: %d msg/s, achieved: %.0f msg/s (%.1f%%), sent: %d, acked: %d, failed: %d",
+                targetRate, rate, 100.0 * rate / targetRate, sent.sum(), acked, tracker.failures()));
+        }
+
+        synchronized void summary() {
+            long acked = tracker.acked();
+            double elapsedSec = (System.nanoTime() - start) / 1e9;
+            double rate = acked / elapsedSec;
+            log.info(String.format("Load run complete — %d messages acked (%d failed) in %.1fs, target: %d msg/s, achieved: %.0f msg/s (%.1f%%)",
+                acked, tracker.failures(), elapsedSec, targetRate, rate, 100.0 * rate / targetRate));
+        }
+    }
+
+    private static void putIfSet(Properties props, String key, String envVar) {
+        String value = System.getenv(envVar);
+        if (value != null && !value.isBlank()) {
+            props.put(key, value);
+        }
+    }
+
     static ProducerRecord<String, String> buildOrder(Random rng) {
         String orderId = "order-" + rng.nextInt(10_000);
         String product = PRODUCTS[rng.nextInt(PRODUCTS.length)];
@@ -0,0 +1,39 @@
+package kafka;
+
+import org.apache.kafka.clients.producer.ProducerRecord;
+
+import java.util.Random;
+
+/**
+ * Builds the demo order/payment/shipment records in one particular in-memory representation,
+ * together with the serializers that turn it into bytes on the wire.
+ */
+interface RecordEncoding<K, V> {
+
+    String keySerializer();
+
+    String valueSerializer();
+
+    ProducerRecord<K, V> order(Random rng);
+
+    ProducerRecord<K, V> payment(Random rng);
+
+    ProducerRecord<K, V> shipment(Random rng);
+
+    /**
+     * Resolves the RECORD_ENCODING setting: {@code string} (default) or {@code bytes}, which both
+     * emit JSON, or {@code binary}. The consumer must be started with the same setting.
+     */
+    static RecordEncoding<?, ?> forName(String name) {
+        switch (name) {
+            case "string":
+                return new StringRecords();
+            case "bytes":
+                return new ByteRecords();
+            case "binary":
+                return new BinaryRecords();
+            default:
+                throw new IllegalArgumentException("Unknown RECORD_ENCODING: " + name);
+        }
+    }
+}
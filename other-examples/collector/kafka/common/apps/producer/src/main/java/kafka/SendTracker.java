@@ -0,0 +1,159 @@
+package kafka;
+
+import io.opentelemetry.api.GlobalOpenTelemetry;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.DoubleHistogram;
+import io.opentelemetry.api.metrics.LongCounter;
+import io.opentelemetry.api.metrics.Meter;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.context.propagation.TextMapPropagator;
+import org.apache.kafka.clients.producer.Callback;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sends records with a completion callback and records broker ack latency, in-flight and failed
+ * sends per topic through the OpenTelemetry API (the SDK is supplied by the Java agent).
+ *
+ * Everything the callback touches is resolved up front: one Attributes instance per topic and
+ * plain LongAdders for the in-flight count, which is only read when metrics are collected. The
+ * completion path therefore performs no allocation; the only per-send allocation is the small
+ * callback object carrying the start time.
+ *
+ * When constructed with a Tracer (TRACE_PROPAGATION=app), each send also gets a PRODUCER span
+ * whose W3C trace context is injected into the record headers and which ends on the broker ack.
+ * Without one, the Java agent's Kafka instrumentation creates the send spans and headers instead.
+ */
+final class SendTracker {
+
+    static final String[] TOPICS = {"orders", "payments", "shipments"};
+
+    private static final AttributeKey<String> DESTINATION = AttributeKey.stringKey("messaging.destination.name");
+    private static final AttributeKey<String> MESSAGING_SYSTEM = AttributeKey.stringKey("messaging.system");
+    private static final AttributeKey<String> OPERATION = AttributeKey.stringKey("messaging.operation.type");
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    private final Attributes[] topicAttributes = new Attributes[TOPICS.length];
+    private final Attributes[] spanAttributes = new Attributes[TOPICS.length];
+    private final String[] spanNames = new String[TOPICS.length];
+    private final LongAdder[] inFlight = new LongAdder[TOPICS.length];
+    private final LongAdder acked = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final DoubleHistogram ackLatency;
+    private final LongCounter failed;
+    private final Tracer tracer;
+    private final TextMapPropagator propagator = GlobalOpenTelemetry.getPropagators().getTextMapPropagator();
+
+    /** @param tracer tracer for app-owned send spans, or null to leave tracing to the agent */
+    SendTracker(Tracer tracer) {
+        this.tracer = tracer;
+        for (int i = 0; i < TOPICS.length; i++) {
+            topicAttributes[i] = Attributes.of(DESTINATION, TOPICS[i]);
+            spanAttributes[i] = Attributes.of(DESTINATION, TOPICS[i], MESSAGING_SYSTEM, "kafka", OPERATION, "send");
+            spanNames[i] = "send " + TOPICS[i];
+            inFlight[i] = new LongAdder();
+        }
+        Meter meter = GlobalOpenTelemetry.getMeter("kafka.producer");
+        // Exported as a base2 exponential histogram; the aggregation is selected in the Dockerfile
+        ackLatency = meter.histogramBuilder("kafka.producer.ack.duration")
+            .setDescription("Time from send() to broker acknowledgement.")
+            .setUnit("s")
+            .build();
+        failed = meter.counterBuilder("kafka.producer.send.failed")
+            .setDescription("Records whose send completed with an exception.")
+            .setUnit("{record}")
+            .build();
+        meter.upDownCounterBuilder("kafka.producer.send.in_flight")
+            .setDescription("Records handed to the producer that have not been acknowledged yet.")
+            .setUnit("{record}")
+            .buildWithCallback(measurement -> {
+                for (int i = 0; i < TOPICS.length; i++) {
+                    measurement.record(inFlight[i].sum(), topicAttributes[i]);
+                }
+            });
+    }
+
+    <K, V> void send(KafkaProducer<K, V> producer, ProducerRecord<K, V> record) {
+        int topic = topicIndex(record.topic());
+        inFlight[topic].increment();
+        Span span = null;
+        if (tracer != null) {
+            span = tracer.spanBuilder(spanNames[topic])
+                .setSpanKind(SpanKind.PRODUCER)
+                .setAllAttributes(spanAttributes[topic])
+                .startSpan();
+            propagator.inject(Context.current().with(span), record.headers(), HeadersSetter.INSTANCE);
+        }
+        Ack ack = new Ack(topic, System.nanoTime(), span);
+        try {
+            producer.send(record, ack);
+        } catch (RuntimeException e) {
+            // Thrown before the record was accepted (serialization, interrupt, closed producer), so
+            // the callback will never run
+            ack.onCompletion(null, e);
+            throw e;
+        }
+    }
+
+    long acked() {
+        return acked.sum();
+    }
+
+    long failures() {
+        return failures.sum();
+    }
+
+    private static int topicIndex(String topic) {
+        switch (topic) {
+            case "orders":
+                return 0;
+            case "payments":
+                return 1;
+            case "shipments":
+                return 2;
+            default:
+                throw new IllegalArgumentException("Unknown topic: " + topic);
+        }
+    }
+
+    private final class Ack implements Callback {
+
+        private final int topic;
+        private final long startNanos;
+        private final Span span;
+
+        Ack(int topic, long startNanos, Span span) {
+            this.topic = topic;
+            this.startNanos = startNanos;
+            this.span = span;
+        }
+
+        @Override
+        public void onCompletion(RecordMetadata metadata, Exception exception) {
+            inFlight[topic].decrement();
+            if (exception != null) {
+                failures.increment();
+                failed.add(1, topicAttributes[topic]);
+                if (span != null) {
+                    span.recordException(exception);
+                    span.setStatus(StatusCode.ERROR);
+                    span.end();
+                }
+                return;
+            }
+            acked.increment();
+            ackLatency.record((System.nanoTime() - startNanos) / NANOS_PER_SECOND, topicAttributes[topic]);
+            if (span != null) {
+                span.end();
+            }
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package kafka;
+
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.StringSerializer;
+
+import java.util.Random;
+
+/** The original String.format based records, serialized with StringSerializer. */
+final class StringRecords implements RecordEncoding<String, String> {
+
+    @Override
+    public String keySerializer() {
+        return StringSerializer.class.getName();
+    }
+
+    @Override
+    public String valueSerializer() {
+        return StringSerializer.class.getName();
+    }
+
+    @Override
+    public ProducerRecord<String, String> order(Random rng) {
+        return ProducerApp.buildOrder(rng);
+    }
+
+    @Override
+    public ProducerRecord<String, String> payment(Random rng) {
+        return ProducerApp.buildPayment(rng);
+    }
+
+    @Override
+    public ProducerRecord<String, String> shipment(Random rng) {
+        return ProducerApp.buildShipment(rng);
+    }
+}
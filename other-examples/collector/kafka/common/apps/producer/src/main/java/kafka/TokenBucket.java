@@ -0,0 +1,59 @@
+package kafka;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Lock-free token bucket used to pace the load generator.
+ *
+ * Instead of counting tokens, the bucket tracks the time at which the next permit becomes free.
+ * Each caller claims its slot with a CAS and then waits until that slot arrives, so N threads
+ * share one global rate without a lock. Idle time refills the bucket up to {@code burstPermits},
+ * after which unused capacity is discarded rather than released as one large spike.
+ */
+final class TokenBucket {
+
+    // Below this remaining wait we spin instead of parking; parkNanos routinely oversleeps by
+    // tens of microseconds, which would cap the achievable rate well below the target.
+    private static final long SPIN_THRESHOLD_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final long nanosPerPermit;
+    private final long maxBurstNanos;
+    private final AtomicLong nextFreeNanos;
+
+    TokenBucket(long permitsPerSecond, long burstPermits) {
+        if (permitsPerSecond <= 0 || permitsPerSecond > TimeUnit.SECONDS.toNanos(1)) {
+            throw new IllegalArgumentException("permitsPerSecond must be in (0, 1e9]: " + permitsPerSecond);
+        }
+        this.nanosPerPermit = TimeUnit.SECONDS.toNanos(1) / permitsPerSecond;
+        this.maxBurstNanos = nanosPerPermit * Math.max(1, burstPermits);
+        this.nextFreeNanos = new AtomicLong(System.nanoTime());
+    }
+
+    /** Blocks until {@code permits} permits are available. */
+    void acquire(int permits) throws InterruptedException {
+        long cost = nanosPerPermit * permits;
+        long now = System.nanoTime();
+        long slot;
+        while (true) {
+            long next = nextFreeNanos.get();
+            // Never let the bucket hold more than maxBurstNanos worth of unused permits
+            slot = Math.max(next, now - maxBurstNanos);
+            if (nextFreeNanos.compareAndSet(next, slot + cost)) {
+                break;
+            }
+        }
+        long wait;
+        while ((wait = slot - System.nanoTime()) > 0) {
+            if (wait > SPIN_THRESHOLD_NANOS) {
+                LockSupport.parkNanos(wait - SPIN_THRESHOLD_NANOS);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            } else {
+                Thread.onSpinWait();
+            }
+        }
+    }
+}
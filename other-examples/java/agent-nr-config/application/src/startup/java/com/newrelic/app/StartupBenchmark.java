@@ -0,0 +1,159 @@
+package com.newrelic.app;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures time to first request for the application, with and without the agent and the
+ * config-extension, broken down by phase. Each configuration is started RUNS times (default 3) and
+ * the median of each phase is printed, in milliseconds from when the process was launched:
+ *
+ * <ul>
+ *   <li>agent: the agent's first log line, so JVM startup and loading the agent jar;
+ *   <li>main: the application's first log line, so everything the agent does in premain, including
+ *       loading extensions and building the SDK through autoconfigure;
+ *   <li>started: Spring Boot reports the application started;
+ *   <li>first request: the first response to GET /ping, which includes lazy initialization on the
+ *       first request (a quarter of these are the controller's deliberate 500s).
+ * </ul>
+ *
+ * The configurations are: no agent; the agent alone; and the agent with the extension. Telemetry
+ * goes to an OTLP endpoint nothing listens on, so exports fail quietly in the background rather
+ * than shaping the timing.
+ *
+ * <p>Run from the java root with: ./gradlew :agent-nr-config:application:startupBenchmark
+ */
+public class StartupBenchmark {
+
+  private static final String AGENT_LINE = "opentelemetry-javaagent - version";
+  private static final String MAIN_LINE = "Starting Application";
+  private static final String STARTED_LINE = "Started Application";
+  private static final Duration TIMEOUT = Duration.ofMinutes(2);
+
+  public static void main(String[] args) throws Exception {
+    String appJar = args[0];
+    String agentJar = args[1];
+    String extensionJar = args[2];
+    int runs = Integer.parseInt(System.getenv().getOrDefault("RUNS", "3"));
+
+    Map<String, List<String>> configurations = new LinkedHashMap<>();
+    configurations.put("no agent", List.of());
+    configurations.put("agent", List.of("-javaagent:" + agentJar));
+    configurations.put(
+        "agent+extension",
+        List.of("-javaagent:" + agentJar, "-Dotel.javaagent.extensions=" + extensionJar));
+
+    System.out.printf(
+        "%-22s %8s %8s %9s %14s   (median of %d runs, ms since launch)%n",
+        "configuration", "agent", "main", "started", "first request", runs);
+    for (Map.Entry<String, List<String>> configuration : configurations.entrySet()) {
+      long[][] phases = new long[4][runs];
+      for (int run = 0; run < runs; run++) {
+        long[] result = start(appJar, configuration.getValue());
+        for (int phase = 0; phase < phases.length; phase++) {
+          phases[phase][run] = result[phase];
+        }
+      }
+      System.out.printf(
+          "%-22s %8s %8s %9s %14s%n",
+          configuration.getKey(),
+          median(phases[0]),
+          median(phases[1]),
+          median(phases[2]),
+          median(phases[3]));
+    }
+  }
+
+  /** Starts the application once and returns when each phase ended, or -1 if it was not seen. */
+  private static long[] start(String appJar, List<String> jvmArgs) throws Exception {
+    int port = freePort();
+    List<String> command = new ArrayList<>();
+    command.add(ProcessHandle.current().info().command().orElse("java"));
+    command.addAll(jvmArgs);
+    command.addAll(
+        Arrays.asList(
+            "-Dotel.exporter.otlp.endpoint=http://127.0.0.1:" + freePort(),
+            "-jar",
+            appJar,
+            "--server.port=" + port));
+    long[] phases = {-1, -1, -1, -1};
+    long launched = System.nanoTime();
+    Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+    Thread reader =
+        new Thread(
+            () -> {
+              try (BufferedReader lines =
+                  new BufferedReader(
+                      new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = lines.readLine()) != null) {
+                  long at = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - launched);
+                  if (phases[0] < 0 && line.contains(AGENT_LINE)) {
+                    phases[0] = at;
+                  } else if (phases[1] < 0 && line.contains(MAIN_LINE)) {
+                    phases[1] = at;
+                  } else if (phases[2] < 0 && line.contains(STARTED_LINE)) {
+                    phases[2] = at;
+                  }
+                }
+              } catch (IOException e) {
+                // The process was stopped
+              }
+            });
+    reader.setDaemon(true);
+    reader.start();
+    try {
+      HttpClient client = HttpClient.newHttpClient();
+      HttpRequest request =
+          HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + port + "/ping"))
+              .timeout(Duration.ofSeconds(10))
+              .build();
+      long deadline = launched + TIMEOUT.toNanos();
+      while (System.nanoTime() < deadline && process.isAlive()) {
+        try {
+          client.send(request, HttpResponse.BodyHandlers.discarding());
+          phases[3] = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - launched);
+          break;
+        } catch (IOException e) {
+          // Not listening yet
+          Thread.sleep(5);
+        }
+      }
+    } finally {
+      process.destroy();
+      if (!process.waitFor(30, TimeUnit.SECONDS)) {
+        process.destroyForcibly();
+      }
+    }
+    // Log lines can trail the first response; the reader ends once the process's output closes
+    reader.join(TimeUnit.SECONDS.toMillis(5));
+    return phases;
+  }
+
+  private static int freePort() throws IOException {
+    try (ServerSocket socket = new ServerSocket(0)) {
+      return socket.getLocalPort();
+    }
+  }
+
+  private static String median(long[] values) {
+    long[] sorted = values.clone();
+    Arrays.sort(sorted);
+    long median = sorted[sorted.length / 2];
+    return median < 0 ? "-" : Long.toString(median);
+  }
+}
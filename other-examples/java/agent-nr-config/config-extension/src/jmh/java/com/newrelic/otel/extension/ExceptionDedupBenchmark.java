@@ -0,0 +1,159 @@
+package com.newrelic.otel.extension;
+
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.exporter.internal.otlp.traces.TraceRequestMarshaler;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.ReadableSpan;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures an error burst on its way to the exporter: each span has an exception event with a
+ * 60-frame stack trace, like {@code Controller.ping}'s under Spring. As a batch span processor
+ * would, its span data is taken and exported, 64 spans at a time, through either no wrapper or
+ * ExceptionDedupSpanExporter to an exporter that serializes them as an OTLP request. The time is
+ * per span. {@code fingerprints} is how many different exceptions the burst is made of: 1 and 100
+ * are a few failing code paths, and 4096 is more than the 1024 fingerprints tracked, so most stack
+ * traces are sent and the cost of fingerprinting them is left. The average serialized size per span
+ * is printed after each run.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ExceptionDedupBenchmark {
+
+  private static final int BATCH_SIZE = 64;
+  private static final int SPANS = 4096;
+  private static final int STACK_DEPTH = 60;
+
+  @Param({"none", "dedup"})
+  public String exporter;
+
+  @Param({"1", "100", "4096"})
+  public int fingerprints;
+
+  private final List<SpanData> batch = new ArrayList<>(BATCH_SIZE);
+  private final ByteArrayOutputStream payload = new ByteArrayOutputStream();
+  private ReadableSpan[] spans;
+  private SpanExporter pipeline;
+  private int next;
+  private int size;
+  private long bytes;
+  private long exported;
+
+  @Setup
+  public void setup() {
+    SpanExporter serialize =
+        new SpanExporter() {
+          @Override
+          public CompletableResultCode export(Collection<SpanData> spans) {
+            payload.reset();
+            try {
+              TraceRequestMarshaler.create(spans).writeBinaryTo(payload);
+            } catch (IOException e) {
+              throw new UncheckedIOException(e);
+            }
+            bytes += payload.size();
+            exported += spans.size();
+            size = payload.size();
+            return CompletableResultCode.ofSuccess();
+          }
+
+          @Override
+          public CompletableResultCode flush() {
+            return CompletableResultCode.ofSuccess();
+          }
+
+          @Override
+          public CompletableResultCode shutdown() {
+            return CompletableResultCode.ofSuccess();
+          }
+        };
+    pipeline =
+        exporter.equals("dedup")
+            ? new ExceptionDedupSpanExporter(serialize, Duration.ofMinutes(1), 5)
+            : serialize;
+    spans = failedSpans();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH_SIZE)
+  public int export() {
+    for (int i = 0; i < BATCH_SIZE; i++) {
+      batch.add(spans[next].toSpanData());
+      next = (next + 1) & (SPANS - 1);
+    }
+    pipeline.export(batch);
+    batch.clear();
+    return size;
+  }
+
+  @TearDown
+  public void report() {
+    System.out.printf(
+        "%n%s, %d fingerprints: %d bytes per span%n",
+        exporter, fingerprints, bytes / Math.max(1, exported));
+  }
+
+  /** Creates ended server spans that each recorded an exception, spread over the fingerprints. */
+  private ReadableSpan[] failedSpans() {
+    SdkTracerProvider tracerProvider = SdkTracerProvider.builder().build();
+    Tracer tracer = tracerProvider.get("exception-dedup-benchmark");
+    StackTraceElement[] frames = new StackTraceElement[STACK_DEPTH];
+    for (int i = 0; i < STACK_DEPTH; i++) {
+      frames[i] =
+          new StackTraceElement(
+              "org.springframework.web.servlet.FrameworkServlet" + i,
+              "processRequest",
+              "FrameworkServlet.java",
+              1000 + i);
+    }
+    ReadableSpan[] spans = new ReadableSpan[SPANS];
+    for (int i = 0; i < SPANS; i++) {
+      StackTraceElement[] stackTrace = frames.clone();
+      stackTrace[0] =
+          new StackTraceElement(
+              "com.newrelic.app.Controller", "ping", "Controller.java", i % fingerprints);
+      IllegalStateException exception = new IllegalStateException("Error!");
+      exception.setStackTrace(stackTrace);
+      Span span =
+          tracer
+              .spanBuilder("GET /ping")
+              .setSpanKind(SpanKind.SERVER)
+              .setAttribute("http.route", "/ping")
+              .startSpan();
+      span.recordException(exception).setStatus(StatusCode.ERROR);
+      span.end();
+      spans[i] = (ReadableSpan) span;
+    }
+    return spans;
+  }
+}
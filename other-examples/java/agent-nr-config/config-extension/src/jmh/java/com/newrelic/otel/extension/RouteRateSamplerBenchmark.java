@@ -0,0 +1,76 @@
+package com.newrelic.otel.extension;
+
+import static io.opentelemetry.api.common.AttributeKey.stringKey;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.sdk.trace.samplers.SamplingResult;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@code shouldSample} of RouteRateSampler when every thread shares one sampler and
+ * requests spread over 4 hot routes, so threads keep racing on the same token buckets. The rate is
+ * far below the call rate, so almost every call finds its bucket empty, the path taken during a
+ * traffic spike.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RouteRateSamplerBenchmark {
+
+  private static final AttributeKey<String> HTTP_ROUTE = stringKey("http.route");
+  private static final String TRACE_ID = "4bf92f3577b34da6a3ce929d0e0e4736";
+
+  private RouteRateSampler sampler;
+  private Attributes[] routes;
+
+  @Setup
+  public void setup() {
+    sampler = new RouteRateSampler(SpanKind.SERVER, HTTP_ROUTE, 100);
+    routes = new Attributes[4];
+    for (int i = 0; i < routes.length; i++) {
+      routes[i] = Attributes.of(HTTP_ROUTE, "/api/v1/resource" + i + "/{id}");
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class Cursor {
+    int next;
+  }
+
+  @Benchmark
+  @Threads(1)
+  public SamplingResult oneThread(Cursor cursor) {
+    return sample(cursor);
+  }
+
+  @Benchmark
+  @Threads(8)
+  public SamplingResult eightThreads(Cursor cursor) {
+    return sample(cursor);
+  }
+
+  private SamplingResult sample(Cursor cursor) {
+    Attributes route = routes[cursor.next];
+    cursor.next = (cursor.next + 1) & (routes.length - 1);
+    return sampler.shouldSample(
+        Context.root(), TRACE_ID, "GET", SpanKind.SERVER, route, Collections.emptyList());
+  }
+}
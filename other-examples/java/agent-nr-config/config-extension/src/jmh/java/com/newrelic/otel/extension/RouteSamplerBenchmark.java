@@ -0,0 +1,112 @@
+package com.newrelic.otel.extension;
+
+import static io.opentelemetry.api.common.AttributeKey.stringKey;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.contrib.sampler.RuleBasedRoutingSampler;
+import io.opentelemetry.contrib.sampler.RuleBasedRoutingSamplerBuilder;
+import io.opentelemetry.sdk.trace.samplers.Sampler;
+import io.opentelemetry.sdk.trace.samplers.SamplingDecision;
+import io.opentelemetry.sdk.trace.samplers.SamplingResult;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the cost of {@code shouldSample} for a server span between RuleBasedRoutingSampler and
+ * RouteSampler with the same rules. The first rule drops {@code /actuator.*} as Customizer does by
+ * default; the others drop routes under {@code /internal/jobN}. Each call takes the next of 32
+ * route templates, some dropped by the first rule, some by the last one and most by none, which is
+ * the worst case for rule-by-rule matching.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RouteSamplerBenchmark {
+
+  private static final AttributeKey<String> HTTP_ROUTE = stringKey("http.route");
+  private static final String TRACE_ID = "4bf92f3577b34da6a3ce929d0e0e4736";
+
+  @Param({"1", "10", "100"})
+  int rules;
+
+  private Sampler ruleBased;
+  private Sampler routeSampler;
+  private Attributes[] routes;
+  private int next;
+
+  @Setup
+  public void setup() {
+    RuleBasedRoutingSamplerBuilder ruleBasedBuilder =
+        RuleBasedRoutingSampler.builder(SpanKind.SERVER, Sampler.alwaysOn());
+    RouteSampler.Builder routeSamplerBuilder =
+        RouteSampler.builder(SpanKind.SERVER, HTTP_ROUTE, Sampler.alwaysOn());
+    for (int i = 0; i < rules; i++) {
+      String pattern = i == 0 ? "/actuator.*" : "/internal/job" + i + "/.*";
+      ruleBasedBuilder.drop(HTTP_ROUTE, pattern);
+      routeSamplerBuilder.drop(pattern);
+    }
+    ruleBased = ruleBasedBuilder.build();
+    routeSampler = routeSamplerBuilder.build();
+
+    routes = new Attributes[32];
+    for (int i = 0; i < routes.length; i++) {
+      String route;
+      if (i % 8 == 0) {
+        route = "/actuator/health/" + i;
+      } else if (i % 8 == 1) {
+        route = "/internal/job" + (rules - 1) + "/run/" + i;
+      } else {
+        route = "/api/v1/resource" + i + "/{id}";
+      }
+      routes[i] = Attributes.of(HTTP_ROUTE, route, stringKey("http.request.method"), "GET");
+    }
+
+    // Both samplers must agree on every route for the comparison to mean anything
+    for (Attributes route : routes) {
+      if (decision(ruleBased, route) != decision(routeSampler, route)) {
+        throw new IllegalStateException("Samplers disagree on " + route);
+      }
+    }
+  }
+
+  @Benchmark
+  public SamplingResult ruleBasedRoutingSampler() {
+    return sample(ruleBased);
+  }
+
+  @Benchmark
+  public SamplingResult routeSampler() {
+    return sample(routeSampler);
+  }
+
+  private SamplingResult sample(Sampler sampler) {
+    Attributes route = routes[next];
+    next = (next + 1) & (routes.length - 1);
+    return sampler.shouldSample(
+        Context.root(), TRACE_ID, "GET", SpanKind.SERVER, route, Collections.emptyList());
+  }
+
+  private static SamplingDecision decision(Sampler sampler, Attributes attributes) {
+    return sampler
+        .shouldSample(
+            Context.root(), TRACE_ID, "GET", SpanKind.SERVER, attributes, Collections.emptyList())
+        .getDecision();
+  }
+}
@@ -0,0 +1,251 @@
+package com.newrelic.otel.extension;
+
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.ReadableSpan;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.SpanProcessor;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.BatchSpanProcessor;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Compares {@code onEnd} on the stock BatchSpanProcessor with RingBufferSpanProcessor and each of
+ * its wait strategies, with 1 to 64 threads ending spans at once. The processors share the same
+ * queue size (2048) and batch size (512) and export to an exporter that only counts, so the
+ * measurement is the hand-off itself. Every thread ends spans in a tight loop for RUN_SECONDS
+ * (default 2) after a one second warm-up, and times every 16th call.
+ *
+ * <p>For each run it prints calls per second across all threads, the 50th, 99th and 99.9th
+ * percentile time of a single {@code onEnd}, and the share of spans dropped because the queue was
+ * full. Thread counts come from THREADS (default 1,2,4,8,16,32,64). By default threads do nothing
+ * but end spans, which saturates any single consumer, so most calls see a full queue. WORK_NANOS
+ * adds that much busy work per span, like a request doing something between spans, to measure the
+ * hand-off below saturation. Results on a machine with fewer cores than threads measure scheduling
+ * as much as contention.
+ *
+ * <p>Run from the java root with: ./gradlew
+ * :agent-nr-config:config-extension:spanProcessorContentionBenchmark
+ */
+public class SpanProcessorContentionBenchmark {
+
+  private static final int QUEUE_SIZE = 2048;
+  private static final int BATCH_SIZE = 512;
+  private static final int SAMPLE_EVERY = 16;
+
+  private static final Logger QUIET = Logger.getLogger(BatchSpanProcessor.class.getName());
+
+  public static void main(String[] args) throws Exception {
+    // The stock processor warns about every batch it drops; the drop rate is reported instead
+    QUIET.setLevel(Level.OFF);
+    int[] threadCounts =
+        Arrays.stream(System.getenv().getOrDefault("THREADS", "1,2,4,8,16,32,64").split(","))
+            .mapToInt(value -> Integer.parseInt(value.trim()))
+            .toArray();
+    long workNanos = Long.parseLong(System.getenv().getOrDefault("WORK_NANOS", "0"));
+    long runNanos =
+        TimeUnit.SECONDS.toNanos(Long.parseLong(System.getenv().getOrDefault("RUN_SECONDS", "2")));
+
+    Map<String, Function<SpanExporter, SpanProcessor>> processors = new LinkedHashMap<>();
+    processors.put(
+        "batch",
+        exporter ->
+            BatchSpanProcessor.builder(exporter)
+                .setMaxQueueSize(QUEUE_SIZE)
+                .setMaxExportBatchSize(BATCH_SIZE)
+                .build());
+    for (RingBufferSpanProcessor.WaitStrategy waitStrategy :
+        RingBufferSpanProcessor.WaitStrategy.values()) {
+      processors.put(
+          "ring-" + waitStrategy.name().toLowerCase(),
+          exporter ->
+              RingBufferSpanProcessor.builder(exporter)
+                  .setCapacity(QUEUE_SIZE)
+                  .setMaxExportBatchSize(BATCH_SIZE)
+                  .setWaitStrategy(waitStrategy)
+                  .build());
+    }
+
+    ReadableSpan[] spans = endedSpans(4096);
+    System.out.printf(
+        "%7s %-10s %12s %9s %9s %10s %9s%n",
+        "threads", "processor", "calls/s", "p50 ns", "p99 ns", "p99.9 ns", "dropped");
+    for (int threads : threadCounts) {
+      for (Map.Entry<String, Function<SpanExporter, SpanProcessor>> entry : processors.entrySet()) {
+        run(entry.getKey(), entry.getValue(), threads, spans, workNanos, runNanos);
+      }
+    }
+  }
+
+  private static void run(
+      String name,
+      Function<SpanExporter, SpanProcessor> factory,
+      int threads,
+      ReadableSpan[] spans,
+      long workNanos,
+      long runNanos)
+      throws InterruptedException {
+    CountingExporter exporter = new CountingExporter();
+    SpanProcessor processor = factory.apply(exporter);
+    long warmupNanos = TimeUnit.SECONDS.toNanos(1);
+    long start = System.nanoTime() + warmupNanos;
+    long end = start + runNanos;
+    LongAdder calls = new LongAdder();
+    LongAdder allCalls = new LongAdder();
+    Histogram latencies = new Histogram();
+    CountDownLatch done = new CountDownLatch(threads);
+    List<Thread> workers = new ArrayList<>();
+    for (int t = 0; t < threads; t++) {
+      int offset = t * 61;
+      Thread worker =
+          new Thread(
+              () -> {
+                Histogram local = new Histogram();
+                long count = 0;
+                long all = 0;
+                int i = offset;
+                long now;
+                while ((now = System.nanoTime()) < end) {
+                  ReadableSpan span = spans[i++ & (spans.length - 1)];
+                  if (now >= start && (i & (SAMPLE_EVERY - 1)) == 0) {
+                    long before = System.nanoTime();
+                    processor.onEnd(span);
+                    local.record(System.nanoTime() - before);
+                  } else {
+                    processor.onEnd(span);
+                  }
+                  all++;
+                  if (workNanos > 0) {
+                    long workEnd = System.nanoTime() + workNanos;
+                    while (System.nanoTime() < workEnd) {
+                      Thread.onSpinWait();
+                    }
+                  }
+                  if (now >= start) {
+                    count++;
+                  }
+                }
+                calls.add(count);
+                allCalls.add(all);
+                latencies.merge(local);
+                done.countDown();
+              });
+      worker.start();
+      workers.add(worker);
+    }
+    done.await();
+    processor.forceFlush().join(30, TimeUnit.SECONDS);
+    processor.shutdown().join(30, TimeUnit.SECONDS);
+    // Spans ended during warm-up are exported too, so drops are counted over the whole run
+    long total = allCalls.sum();
+    long dropped = total - exporter.spans.sum();
+    System.out.printf(
+        "%7d %-10s %12.0f %9d %9d %10d %8.1f%%%n",
+        threads,
+        name,
+        calls.sum() * 1e9 / runNanos,
+        latencies.percentile(0.5),
+        latencies.percentile(0.99),
+        latencies.percentile(0.999),
+        100.0 * dropped / Math.max(1, total));
+  }
+
+  /** Creates sampled spans that have already ended, to hand to the processors again and again. */
+  private static ReadableSpan[] endedSpans(int count) {
+    SdkTracerProvider tracerProvider = SdkTracerProvider.builder().build();
+    Tracer tracer = tracerProvider.get("span-processor-contention-benchmark");
+    ReadableSpan[] spans = new ReadableSpan[count];
+    for (int i = 0; i < count; i++) {
+      Span span = tracer.spanBuilder("GET /ping").setAttribute("http.route", "/ping").startSpan();
+      span.end();
+      spans[i] = (ReadableSpan) span;
+    }
+    return spans;
+  }
+
+  /**
+   * Latencies in nanoseconds, exact below 1024 and to within about 6% above, in 16 buckets per
+   * power of two.
+   */
+  private static final class Histogram {
+
+    private final long[] counts = new long[1024 + 54 * 16];
+    private long total;
+
+    void record(long nanos) {
+      counts[index(Math.max(0, nanos))]++;
+      total++;
+    }
+
+    synchronized void merge(Histogram other) {
+      for (int i = 0; i < counts.length; i++) {
+        counts[i] += other.counts[i];
+      }
+      total += other.total;
+    }
+
+    long percentile(double quantile) {
+      long rank = (long) Math.ceil(quantile * total);
+      long seen = 0;
+      for (int i = 0; i < counts.length; i++) {
+        seen += counts[i];
+        if (seen >= rank && counts[i] > 0) {
+          return value(i);
+        }
+      }
+      return 0;
+    }
+
+    private static int index(long nanos) {
+      if (nanos < 1024) {
+        return (int) nanos;
+      }
+      int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+      int mantissa = (int) (nanos >>> (exponent - 4)) & 15;
+      return 1024 + (exponent - 10) * 16 + mantissa;
+    }
+
+    private static long value(int index) {
+      if (index < 1024) {
+        return index;
+      }
+      int exponent = (index - 1024) / 16 + 10;
+      int mantissa = (index - 1024) % 16;
+      return (16L + mantissa) << (exponent - 4);
+    }
+  }
+
+  private static final class CountingExporter implements SpanExporter {
+
+    final LongAdder spans = new LongAdder();
+
+    @Override
+    public CompletableResultCode export(Collection<SpanData> batch) {
+      spans.add(batch.size());
+      return CompletableResultCode.ofSuccess();
+    }
+
+    @Override
+    public CompletableResultCode flush() {
+      return CompletableResultCode.ofSuccess();
+    }
+
+    @Override
+    public CompletableResultCode shutdown() {
+      return CompletableResultCode.ofSuccess();
+    }
+  }
+}
@@ -0,0 +1,219 @@
+package com.newrelic.otel.extension;
+
+import io.opentelemetry.api.GlobalOpenTelemetry;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.sdk.OpenTelemetrySdk;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.metrics.SdkMeterProvider;
+import io.opentelemetry.sdk.metrics.data.LongPointData;
+import io.opentelemetry.sdk.metrics.data.MetricData;
+import io.opentelemetry.sdk.testing.exporter.InMemoryMetricReader;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.BatchSpanProcessor;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Drives TailSamplingSpanProcessor as fast as a few threads can create traces. Each trace has a
+ * server root and three children, and like {@code Controller.ping} a quarter of them fail. One in a
+ * hundred roots is slow. Another one in a hundred never ends its root, standing in for leaked spans
+ * or requests that outlive the decision wait, so those traces can only leave the buffer by
+ * eviction.
+ *
+ * <p>Two runs are compared: the defaults (10000 spans, 100000 decisions, 30s decision wait) and a
+ * buffer with no caps and no wait. Once a second it prints the trace rate, the heap in use after a
+ * full GC, and the processor's own buffered, kept, dropped and evicted metrics. With the cap, the
+ * heap levels off once the buffer is full. Without it, the heap grows with every abandoned trace.
+ *
+ * <p>Run from the java root with: ./gradlew :agent-nr-config:config-extension:tailSamplingLoadTest
+ * (THREADS, default 4, and RUN_SECONDS per run, default 15, are read from the environment).
+ */
+public class TailSamplingLoadTest {
+
+  private static final Logger QUIET = Logger.getLogger(BatchSpanProcessor.class.getName());
+
+  public static void main(String[] args) throws Exception {
+    int threads = Integer.parseInt(System.getenv().getOrDefault("THREADS", "4"));
+    int seconds = Integer.parseInt(System.getenv().getOrDefault("RUN_SECONDS", "15"));
+    // Kept traces arrive faster than the batch processor's queue drains, and it warns on every
+    // batch; that is not what is measured here
+    QUIET.setLevel(Level.OFF);
+
+    // The processor registers its metrics on the global meter provider, as it would in the agent
+    InMemoryMetricReader metricReader = InMemoryMetricReader.create();
+    SdkMeterProvider meterProvider =
+        SdkMeterProvider.builder().registerMetricReader(metricReader).build();
+    GlobalOpenTelemetry.set(OpenTelemetrySdk.builder().setMeterProvider(meterProvider).build());
+
+    run("capped", threads, seconds, metricReader, 10_000, 100_000, Duration.ofSeconds(30));
+    run(
+        "uncapped",
+        threads,
+        seconds,
+        metricReader,
+        Integer.MAX_VALUE,
+        Integer.MAX_VALUE,
+        Duration.ofNanos(Long.MAX_VALUE));
+    meterProvider.shutdown().join(10, TimeUnit.SECONDS);
+  }
+
+  private static void run(
+      String name,
+      int threads,
+      int seconds,
+      InMemoryMetricReader metricReader,
+      int maxSpans,
+      int maxDecisions,
+      Duration decisionWait)
+      throws InterruptedException {
+    CountingExporter exporter = new CountingExporter();
+    TailSamplingSpanProcessor processor =
+        new TailSamplingSpanProcessor(
+            BatchSpanProcessor.builder(exporter).build(),
+            0.1,
+            Duration.ofMillis(500),
+            maxSpans,
+            maxDecisions,
+            decisionWait);
+    SdkTracerProvider tracerProvider =
+        SdkTracerProvider.builder().addSpanProcessor(processor).build();
+    Tracer tracer = tracerProvider.get("tail-sampling-load-test");
+    // Counters are cumulative across runs, so this run's counts are the change from here
+    Map<String, Long> before = counters(metricReader);
+
+    System.out.printf(
+        "%s: %d threads, max spans %s%n",
+        name, threads, maxSpans == Integer.MAX_VALUE ? "none" : maxSpans);
+    System.out.printf(
+        "%4s %10s %9s %9s %9s %9s %9s %9s%n",
+        "s", "traces/s", "heap MB", "traces", "spans", "kept", "dropped", "evicted");
+    LongAdder traces = new LongAdder();
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+    List<Thread> workers = new ArrayList<>();
+    for (int i = 0; i < threads; i++) {
+      Thread worker =
+          new Thread(
+              () -> {
+                while (System.nanoTime() < deadline) {
+                  trace(tracer);
+                  traces.increment();
+                }
+              });
+      worker.start();
+      workers.add(worker);
+    }
+    long start = System.nanoTime();
+    long lastTraces = 0;
+    long lastNanos = start;
+    // Forced GCs take longer as the heap grows, so report by the clock rather than by count
+    while (lastNanos < deadline) {
+      Thread.sleep(1000);
+      long total = traces.sum();
+      long nanos = System.nanoTime();
+      System.gc();
+      long heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+      Map<String, Long> now = counters(metricReader);
+      System.out.printf(
+          "%4d %10d %9.1f %9d %9d %9d %9d %9d%n",
+          TimeUnit.NANOSECONDS.toSeconds(nanos - start),
+          (total - lastTraces) * TimeUnit.SECONDS.toNanos(1) / (nanos - lastNanos),
+          heap / 1e6,
+          now.getOrDefault("sampler.tail.buffered.traces", 0L),
+          now.getOrDefault("sampler.tail.buffered.spans", 0L),
+          delta(now, before, "sampler.tail.traces/kept"),
+          delta(now, before, "sampler.tail.traces/dropped"),
+          delta(now, before, "sampler.tail.evicted"));
+      lastTraces = total;
+      lastNanos = nanos;
+    }
+    for (Thread worker : workers) {
+      worker.join();
+    }
+    tracerProvider.shutdown().join(30, TimeUnit.SECONDS);
+    System.out.printf("exported %d spans%n%n", exporter.spans.sum());
+  }
+
+  private static void trace(Tracer tracer) {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    int kind = random.nextInt(100);
+    Span root =
+        tracer
+            .spanBuilder("GET /ping")
+            .setSpanKind(SpanKind.SERVER)
+            .setAttribute("http.route", "/ping")
+            .startSpan();
+    Context context = Context.root().with(root);
+    for (int i = 0; i < 3; i++) {
+      tracer.spanBuilder("child-" + i).setParent(context).startSpan().end();
+    }
+    if (random.nextInt(4) == 0) {
+      root.setStatus(StatusCode.ERROR);
+    }
+    if (kind == 0) {
+      // Abandoned: the root never ends
+      return;
+    }
+    if (kind == 1) {
+      // Slow: backdate the root's end by a second rather than sleeping
+      root.end(System.currentTimeMillis() + 1000, TimeUnit.MILLISECONDS);
+      return;
+    }
+    root.end();
+  }
+
+  private static long delta(Map<String, Long> now, Map<String, Long> before, String key) {
+    return now.getOrDefault(key, 0L) - before.getOrDefault(key, 0L);
+  }
+
+  /** Sums each long metric by name, and by name and decision where there is one. */
+  private static Map<String, Long> counters(InMemoryMetricReader metricReader) {
+    Map<String, Long> counters = new HashMap<>();
+    for (MetricData metric : metricReader.collectAllMetrics()) {
+      for (LongPointData point : metric.getLongSumData().getPoints()) {
+        String decision =
+            point.getAttributes().get(AttributeKey.stringKey("sampler.tail.decision"));
+        String key = decision == null ? metric.getName() : metric.getName() + "/" + decision;
+        counters.merge(key, point.getValue(), Long::sum);
+      }
+    }
+    return counters;
+  }
+
+  private static final class CountingExporter implements SpanExporter {
+
+    final LongAdder spans = new LongAdder();
+
+    @Override
+    public CompletableResultCode export(Collection<SpanData> batch) {
+      spans.add(batch.size());
+      return CompletableResultCode.ofSuccess();
+    }
+
+    @Override
+    public CompletableResultCode flush() {
+      return CompletableResultCode.ofSuccess();
+    }
+
+    @Override
+    public CompletableResultCode shutdown() {
+      return CompletableResultCode.ofSuccess();
+    }
+  }
+}
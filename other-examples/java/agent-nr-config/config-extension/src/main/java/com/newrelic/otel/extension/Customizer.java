@@ -4,12 +4,19 @@ import static io.opentelemetry.api.common.AttributeKey.stringKey;
 
 import io.opentelemetry.api.common.AttributeKey;
 import io.opentelemetry.api.trace.SpanKind;
-import io.opentelemetry.contrib.sampler.RuleBasedRoutingSampler;
 import io.opentelemetry.sdk.autoconfigure.spi.AutoConfigurationCustomizer;
 import io.opentelemetry.sdk.autoconfigure.spi.AutoConfigurationCustomizerProvider;
+import io.opentelemetry.sdk.autoconfigure.spi.ConfigProperties;
 import io.opentelemetry.sdk.resources.Resource;
+import io.opentelemetry.sdk.trace.SpanProcessor;
+import io.opentelemetry.sdk.trace.export.BatchSpanProcessor;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
 import io.opentelemetry.sdk.trace.samplers.Sampler;
+import java.time.Duration;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * Note this class is wired into SPI via {@code
@@ -22,20 +29,155 @@ public class Customizer implements AutoConfigurationCustomizerProvider {
 
   @Override
   public void customize(AutoConfigurationCustomizer autoConfiguration) {
-    // Add additional resource attributes programmatically
+    // Add additional resource attributes programmatically. The agent's own resource providers
+    // usually set an instance ID already; keep it rather than make a second one
     autoConfiguration.addResourceCustomizer(
         (resource, configProperties) ->
-            resource.merge(
-                Resource.builder().put(SERVICE_INSTANCE_ID, UUID.randomUUID().toString()).build()));
+            resource.getAttribute(SERVICE_INSTANCE_ID) != null
+                ? resource
+                : resource.merge(
+                    Resource.builder().put(SERVICE_INSTANCE_ID, randomInstanceId()).build()));
 
-    // Set the sampler to be the default parentbased_always_on, but drop calls to spring
-    // boot actuator endpoints
+    // Strip repeated stack traces, when enabled, from the spans each exporter is given. Being on
+    // the exporter, it only sees the traces the tail sampler keeps, and the spans below are
+    // exported through it too
+    autoConfiguration.addSpanExporterCustomizer(
+        (spanExporter, configProperties) ->
+            configProperties.getBoolean("otel.exception.dedup.enabled", false)
+                ? exceptionDedup(spanExporter, configProperties)
+                : spanExporter);
+
+    // Keep hold of the configured span exporters, so spans the rate limit turned away can still
+    // be exported when they end in error
+    List<SpanExporter> spanExporters = new CopyOnWriteArrayList<>();
+    autoConfiguration.addSpanExporterCustomizer(
+        (spanExporter, configProperties) -> {
+          if (routeRate(configProperties) > 0) {
+            spanExporters.add(spanExporter);
+          }
+          return spanExporter;
+        });
+
+    // Replace the stock batch span processor with the ring buffer one, when enabled
+    autoConfiguration.addSpanProcessorCustomizer(
+        (spanProcessor, configProperties) ->
+            spanProcessor instanceof BatchSpanProcessor
+                    && configProperties.getBoolean("otel.bsp.ring.enabled", false)
+                ? ringBuffer((BatchSpanProcessor) spanProcessor, configProperties)
+                : spanProcessor);
+
+    // Put the tail sampler, when enabled, in front of each exporting span processor. It has to
+    // wrap them rather than be added next to them, or every span would still be exported
+    autoConfiguration.addSpanProcessorCustomizer(
+        (spanProcessor, configProperties) ->
+            configProperties.getBoolean("otel.sampler.tail.enabled", false)
+                ? tailSampler(spanProcessor, configProperties)
+                : spanProcessor);
+
+    // Sample root spans by route, dropping calls to spring boot actuator endpoints, and let
+    // children follow their parent. With a route rate, the children of server spans over budget
+    // are recorded like their parent rather than dropped, so the exporters added here for the ones
+    // that fail can see them
     autoConfiguration.addTracerProviderCustomizer(
-        (sdkTracerProviderBuilder, configProperties) ->
-            sdkTracerProviderBuilder.setSampler(
-                Sampler.parentBased(
-                    RuleBasedRoutingSampler.builder(SpanKind.SERVER, Sampler.alwaysOn())
-                        .drop(HTTP_ROUTE, "/actuator.*")
-                        .build())));
+        (sdkTracerProviderBuilder, configProperties) -> {
+          RouteSampler routeSampler = routeSampler(configProperties);
+          sdkTracerProviderBuilder.setSampler(
+              routeRate(configProperties) > 0
+                  ? RouteRateSampler.parentBased(routeSampler)
+                  : Sampler.parentBased(routeSampler));
+          if (routeRate(configProperties) > 0) {
+            for (SpanExporter exporter : spanExporters) {
+              sdkTracerProviderBuilder.addSpanProcessor(new ErrorSpanProcessor(exporter));
+            }
+          }
+          return sdkTracerProviderBuilder;
+        });
+  }
+
+  /**
+   * Returns a random (version 4) UUID from {@link ThreadLocalRandom} rather than {@link
+   * UUID#randomUUID()}. An instance ID only has to be unique, not unpredictable, and the first
+   * {@code randomUUID()} in a JVM pays for seeding SecureRandom, which is tens of milliseconds of
+   * startup.
+   */
+  static String randomInstanceId() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    long mostSigBits = (random.nextLong() & ~0xF000L) | 0x4000L;
+    long leastSigBits = (random.nextLong() & ~(3L << 62)) | (2L << 62);
+    return new UUID(mostSigBits, leastSigBits).toString();
+  }
+
+  /**
+   * Builds the server span sampler from {@code otel.sampler.route.keep} and {@code
+   * otel.sampler.route.drop} (or {@code OTEL_SAMPLER_ROUTE_KEEP} / {@code
+   * OTEL_SAMPLER_ROUTE_DROP}), comma-separated {@code http.route} regexes. Keep rules are checked
+   * before drop rules. Routes matching neither are sampled, up to {@code otel.sampler.route.rate}
+   * spans per second per route when that is set.
+   */
+  static RouteSampler routeSampler(ConfigProperties config) {
+    double rate = routeRate(config);
+    Sampler fallback =
+        rate > 0 ? new RouteRateSampler(SpanKind.SERVER, HTTP_ROUTE, rate) : Sampler.alwaysOn();
+    RouteSampler.Builder builder = RouteSampler.builder(SpanKind.SERVER, HTTP_ROUTE, fallback);
+    config.getList("otel.sampler.route.keep", List.of()).forEach(builder::recordAndSample);
+    config.getList("otel.sampler.route.drop", List.of("/actuator.*")).forEach(builder::drop);
+    return builder.build();
+  }
+
+  /**
+   * Builds a ring buffer span processor to take the place of {@code stock}, sized by the standard
+   * {@code otel.bsp.*} properties, with the worker's wait strategy from {@code
+   * otel.bsp.ring.wait.strategy} ({@code OTEL_BSP_RING_WAIT_STRATEGY}): park (the default), yield
+   * or spin.
+   */
+  static RingBufferSpanProcessor ringBuffer(BatchSpanProcessor stock, ConfigProperties config) {
+    return RingBufferSpanProcessor.replacing(stock)
+        .setCapacity(config.getInt("otel.bsp.max.queue.size", 2048))
+        .setMaxExportBatchSize(config.getInt("otel.bsp.max.export.batch.size", 512))
+        .setScheduleDelay(config.getDuration("otel.bsp.schedule.delay", Duration.ofSeconds(5)))
+        .setExporterTimeout(config.getDuration("otel.bsp.export.timeout", Duration.ofSeconds(30)))
+        .setWaitStrategy(
+            RingBufferSpanProcessor.WaitStrategy.parse(
+                config.getString("otel.bsp.ring.wait.strategy", "park")))
+        .build();
+  }
+
+  /**
+   * Wraps {@code spanExporter} in an exporter that strips repeated stack traces, configured from
+   * {@code otel.exception.dedup.*} ({@code OTEL_EXCEPTION_DEDUP_*}): a stack trace is sent once per
+   * fingerprint per {@code window} (default 1m), and the fingerprint covers the exception type and
+   * the top {@code frames} stack frames (default 5).
+   */
+  static SpanExporter exceptionDedup(SpanExporter spanExporter, ConfigProperties config) {
+    return new ExceptionDedupSpanExporter(
+        spanExporter,
+        config.getDuration("otel.exception.dedup.window", Duration.ofMinutes(1)),
+        config.getInt("otel.exception.dedup.frames", 5));
+  }
+
+  /**
+   * Wraps {@code spanProcessor} in a tail sampler configured from {@code otel.sampler.tail.*}
+   * ({@code OTEL_SAMPLER_TAIL_*}): {@code ratio} of the traces without errors or slow roots are
+   * kept (default 0.1), {@code latency} is the slow root threshold (default 500ms), {@code
+   * max.spans} caps the spans held in memory (default 10000), {@code max.decisions} caps the
+   * decisions remembered for late spans (default 100000), and {@code decision.wait} is how long a
+   * trace may wait for its root, and a decision is remembered (default 30s).
+   */
+  static TailSamplingSpanProcessor tailSampler(
+      SpanProcessor spanProcessor, ConfigProperties config) {
+    return new TailSamplingSpanProcessor(
+        spanProcessor,
+        config.getDouble("otel.sampler.tail.ratio", 0.1),
+        config.getDuration("otel.sampler.tail.latency", Duration.ofMillis(500)),
+        config.getInt("otel.sampler.tail.max.spans", 10_000),
+        config.getInt("otel.sampler.tail.max.decisions", 100_000),
+        config.getDuration("otel.sampler.tail.decision.wait", Duration.ofSeconds(30)));
+  }
+
+  /**
+   * Target spans per second per route ({@code OTEL_SAMPLER_ROUTE_RATE}); 0, the default, is off.
+   */
+  private static double routeRate(ConfigProperties config) {
+    return config.getDouble("otel.sampler.route.rate", 0);
   }
 }
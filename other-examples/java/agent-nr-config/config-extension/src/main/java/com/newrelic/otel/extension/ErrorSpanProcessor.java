@@ -0,0 +1,77 @@
+package com.newrelic.otel.extension;
+
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.ReadWriteSpan;
+import io.opentelemetry.sdk.trace.ReadableSpan;
+import io.opentelemetry.sdk.trace.SpanProcessor;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.BatchSpanProcessor;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import java.util.Collection;
+
+/**
+ * Exports spans that were recorded but not sampled, such as the ones {@link RouteRateSampler} turns
+ * away, when they end with an error status. Sampled spans are left to the regular export pipeline,
+ * and unsampled spans without an error are discarded as usual.
+ *
+ * <p>The exporter is shared with the regular pipeline, which owns it, so shutting this processor
+ * down does not shut the exporter down.
+ */
+final class ErrorSpanProcessor implements SpanProcessor {
+
+  private final SpanProcessor delegate;
+
+  ErrorSpanProcessor(SpanExporter exporter) {
+    SpanExporter shared =
+        new SpanExporter() {
+          @Override
+          public CompletableResultCode export(Collection<SpanData> spans) {
+            return exporter.export(spans);
+          }
+
+          @Override
+          public CompletableResultCode flush() {
+            return exporter.flush();
+          }
+
+          @Override
+          public CompletableResultCode shutdown() {
+            return CompletableResultCode.ofSuccess();
+          }
+        };
+    this.delegate = BatchSpanProcessor.builder(shared).setExportUnsampledSpans(true).build();
+  }
+
+  @Override
+  public void onStart(Context parentContext, ReadWriteSpan span) {}
+
+  @Override
+  public boolean isStartRequired() {
+    return false;
+  }
+
+  @Override
+  public void onEnd(ReadableSpan span) {
+    if (!span.getSpanContext().isSampled()
+        && span.toSpanData().getStatus().getStatusCode() == StatusCode.ERROR) {
+      delegate.onEnd(span);
+    }
+  }
+
+  @Override
+  public boolean isEndRequired() {
+    return true;
+  }
+
+  @Override
+  public CompletableResultCode forceFlush() {
+    return delegate.forceFlush();
+  }
+
+  @Override
+  public CompletableResultCode shutdown() {
+    return delegate.shutdown();
+  }
+}
@@ -0,0 +1,310 @@
+package com.newrelic.otel.extension;
+
+import static io.opentelemetry.api.common.AttributeKey.longKey;
+import static io.opentelemetry.api.common.AttributeKey.stringKey;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.Meter;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.data.DelegatingSpanData;
+import io.opentelemetry.sdk.trace.data.EventData;
+import io.opentelemetry.sdk.trace.data.ExceptionEventData;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Removes repeated stack traces from exception events before spans are exported. It wraps the span
+ * exporter, so it works on the span data the exporting span processor has already built, and
+ * fingerprints each exception event by its exception type and top stack frames. The first exception
+ * with a fingerprint in each window is passed on whole. Later ones in the same window are passed on
+ * without {@code exception.stacktrace}, which is most of an exception event's size. Every exception
+ * event gets {@code exception.fingerprint}, so the shortened ones can be matched to the full one.
+ * The shortened ones also get {@code exception.fingerprint.count}, the number of times the
+ * fingerprint has been seen so far in the window. Spans without exception events are passed on
+ * untouched.
+ *
+ * <p>Up to 1024 fingerprints are tracked at once. Past that, exceptions with new fingerprints keep
+ * their stack traces until older windows expire.
+ *
+ * <p>The number of stack traces sent and suppressed, and the characters of stack trace suppressed,
+ * are reported on the global meter provider once the agent has installed it.
+ */
+final class ExceptionDedupSpanExporter implements SpanExporter {
+
+  static final AttributeKey<String> FINGERPRINT = stringKey("exception.fingerprint");
+  static final AttributeKey<Long> FINGERPRINT_COUNT = longKey("exception.fingerprint.count");
+  private static final AttributeKey<String> EXCEPTION_TYPE = stringKey("exception.type");
+  private static final AttributeKey<String> EXCEPTION_STACKTRACE =
+      stringKey("exception.stacktrace");
+  private static final AttributeKey<String> OUTCOME = stringKey("exception.dedup.outcome");
+  private static final Attributes SENT = Attributes.of(OUTCOME, "sent");
+  private static final Attributes SUPPRESSED = Attributes.of(OUTCOME, "suppressed");
+  private static final String EXCEPTION_EVENT = "exception";
+  private static final String FRAME_PREFIX = "\tat ";
+  private static final String HIDDEN_CLASS_SUFFIX = "/0x";
+  private static final int MAX_FINGERPRINTS = 1024;
+  private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  private final SpanExporter delegate;
+  private final long windowNanos;
+  private final int frames;
+  private final Map<String, Window> windows = new ConcurrentHashMap<>();
+  private volatile long purgeAfterNanos = System.nanoTime();
+
+  private final LongAdder sent = new LongAdder();
+  private final LongAdder suppressed = new LongAdder();
+  private final LongAdder suppressedChars = new LongAdder();
+  private final ExtensionMetrics metrics = new ExtensionMetrics(this::registerMetrics);
+
+  ExceptionDedupSpanExporter(SpanExporter delegate, Duration window, int frames) {
+    if (frames < 0) {
+      throw new IllegalArgumentException("frames must not be negative: " + frames);
+    }
+    this.delegate = delegate;
+    this.windowNanos = window.toNanos();
+    this.frames = frames;
+  }
+
+  @Override
+  public CompletableResultCode export(Collection<SpanData> spans) {
+    metrics.registerIfReady();
+    List<SpanData> batch = new ArrayList<>(spans.size());
+    for (SpanData span : spans) {
+      batch.add(dedup(span));
+    }
+    return delegate.export(batch);
+  }
+
+  @Override
+  public CompletableResultCode flush() {
+    return delegate.flush();
+  }
+
+  @Override
+  public CompletableResultCode shutdown() {
+    return delegate.shutdown();
+  }
+
+  /** Returns {@code span} with its exception events rewritten, or itself when it has none. */
+  private SpanData dedup(SpanData span) {
+    List<EventData> events = span.getEvents();
+    List<EventData> rewritten = null;
+    for (int i = 0; i < events.size(); i++) {
+      EventData event = events.get(i);
+      if (!EXCEPTION_EVENT.equals(event.getName())) {
+        continue;
+      }
+      if (rewritten == null) {
+        rewritten = new ArrayList<>(events);
+      }
+      rewritten.set(i, dedup(event, System.nanoTime()));
+    }
+    return rewritten == null ? span : new DedupSpanData(span, rewritten);
+  }
+
+  private EventData dedup(EventData event, long now) {
+    String fingerprint = fingerprint(event);
+    Window window = windows.get(fingerprint);
+    if (window == null || now - window.startNanos >= windowNanos) {
+      window = startWindow(fingerprint, window, now);
+    }
+    long count = window == null ? 1 : window.count.incrementAndGet();
+    Attributes attributes = event.getAttributes();
+    String stackTrace = attributes.get(EXCEPTION_STACKTRACE);
+    if (count == 1 || stackTrace == null) {
+      sent.increment();
+      return copy(event, attributes.toBuilder().put(FINGERPRINT, fingerprint).build());
+    }
+    suppressed.increment();
+    suppressedChars.add(stackTrace.length());
+    return copy(
+        event,
+        attributes.toBuilder()
+            .remove(EXCEPTION_STACKTRACE)
+            .put(FINGERPRINT, fingerprint)
+            .put(FINGERPRINT_COUNT, count)
+            .build());
+  }
+
+  /**
+   * Starts a new window for {@code fingerprint} in place of {@code expired}, if there is one, and
+   * returns the window now in use. Returns null when too many fingerprints are tracked to start
+   * one.
+   */
+  private Window startWindow(String fingerprint, Window expired, long now) {
+    if (expired == null && windows.size() >= MAX_FINGERPRINTS) {
+      // Look for expired windows only once the oldest one can have expired, rather than on every
+      // new fingerprint while the table is full
+      if (now - purgeAfterNanos < 0) {
+        return null;
+      }
+      long oldest = now;
+      for (Iterator<Window> it = windows.values().iterator(); it.hasNext(); ) {
+        long startNanos = it.next().startNanos;
+        if (now - startNanos >= windowNanos) {
+          it.remove();
+        } else if (startNanos - oldest < 0) {
+          oldest = startNanos;
+        }
+      }
+      purgeAfterNanos = oldest + windowNanos;
+      if (windows.size() >= MAX_FINGERPRINTS) {
+        return null;
+      }
+    }
+    return windows.compute(
+        fingerprint,
+        (key, current) ->
+            current == null || now - current.startNanos >= windowNanos ? new Window(now) : current);
+  }
+
+  /**
+   * Returns a fingerprint of the exception type and the top frames of the stack trace, as 16 hex
+   * digits. A frame counts by its class, method and line, without the class loader and module
+   * names, or the address in a hidden class's name, that can change from run to run. Frames are
+   * taken from the exception itself where the event still has it, and otherwise parsed from {@code
+   * exception.stacktrace}, which gives the same result.
+   */
+  String fingerprint(EventData event) {
+    long hash = FNV_OFFSET;
+    if (event instanceof ExceptionEventData) {
+      Throwable exception = ((ExceptionEventData) event).getException();
+      String type = exception.getClass().getName();
+      hash = mix(hash(hash, type, 0, type.length()), '\n');
+      StackTraceElement[] stackTrace = exception.getStackTrace();
+      for (int i = 0; i < Math.min(frames, stackTrace.length); i++) {
+        String className = stackTrace[i].getClassName();
+        String methodName = stackTrace[i].getMethodName();
+        int hidden = className.indexOf(HIDDEN_CLASS_SUFFIX);
+        hash = hash(hash, className, 0, hidden < 0 ? className.length() : hidden);
+        hash = hash(mix(hash, '.'), methodName, 0, methodName.length());
+        // A line without a file name is not printed, so it does not count
+        int line = stackTrace[i].getFileName() == null ? -1 : stackTrace[i].getLineNumber();
+        hash = mix(hash, Math.max(-1, line));
+      }
+    } else {
+      Attributes attributes = event.getAttributes();
+      String type = String.valueOf(attributes.get(EXCEPTION_TYPE));
+      hash = mix(hash(hash, type, 0, type.length()), '\n');
+      String stackTrace = attributes.get(EXCEPTION_STACKTRACE);
+      // The top-level exception's frames are the "\tat " lines straight after its message; a
+      // cause's frames come after a "Caused by:" line. Each is [loader/][module/]class.method
+      // (file:line), or (file), (Native Method) or (Unknown Source) when there is no line
+      int from = stackTrace == null ? -1 : stackTrace.indexOf(FRAME_PREFIX);
+      for (int i = 0; i < frames && from >= 0; i++) {
+        int end = stackTrace.indexOf('\n', from);
+        end = end < 0 ? stackTrace.length() : end;
+        int open = stackTrace.indexOf('(', from);
+        int close = stackTrace.lastIndexOf(')', end);
+        if (open < 0 || open > end || close < open) {
+          break;
+        }
+        // A hidden class's name ends in /0x<address>, up to the dot before the method. Any other
+        // slash before the class name ends the loader or module name, neither of which can be
+        // followed by a digit
+        int hidden = stackTrace.indexOf(HIDDEN_CLASS_SUFFIX, from);
+        hidden = hidden < 0 || hidden > open ? -1 : hidden;
+        int classEnd = hidden < 0 ? open : hidden;
+        int start =
+            Math.max(from + FRAME_PREFIX.length(), stackTrace.lastIndexOf('/', classEnd - 1) + 1);
+        hash = hash(hash, stackTrace, start, classEnd);
+        if (hidden >= 0) {
+          int method = stackTrace.indexOf('.', hidden);
+          hash = hash(hash, stackTrace, method < 0 || method > open ? open : method, open);
+        }
+        int colon = stackTrace.lastIndexOf(':', close);
+        hash = mix(hash, colon > open ? line(stackTrace, colon + 1, close) : -1);
+        from =
+            end < stackTrace.length() && stackTrace.startsWith(FRAME_PREFIX, end + 1)
+                ? end + 1
+                : -1;
+      }
+    }
+    String hex = Long.toHexString(hash);
+    return hex.length() == 16 ? hex : "0".repeat(16 - hex.length()) + hex;
+  }
+
+  /** FNV-1a over the characters of {@code value} from {@code from} to {@code to}. */
+  private static long hash(long hash, String value, int from, int to) {
+    for (int i = from; i < to; i++) {
+      hash = (hash ^ value.charAt(i)) * FNV_PRIME;
+    }
+    return hash;
+  }
+
+  private static long mix(long hash, long value) {
+    return (hash ^ value) * FNV_PRIME;
+  }
+
+  private static int line(String value, int from, int to) {
+    int line = 0;
+    for (int i = from; i < to; i++) {
+      char digit = value.charAt(i);
+      if (digit < '0' || digit > '9') {
+        return -1;
+      }
+      line = line * 10 + (digit - '0');
+    }
+    return from < to ? line : -1;
+  }
+
+  private static EventData copy(EventData event, Attributes attributes) {
+    return EventData.create(
+        event.getEpochNanos(),
+        event.getName(),
+        attributes,
+        attributes.size() + event.getDroppedAttributesCount());
+  }
+
+  private void registerMetrics(Meter meter) {
+    meter
+        .counterBuilder("exception.dedup.stacktraces")
+        .setDescription("Exception stack traces seen before export, by whether they were sent.")
+        .buildWithCallback(
+            measurement -> {
+              measurement.record(sent.sum(), SENT);
+              measurement.record(suppressed.sum(), SUPPRESSED);
+            });
+    meter
+        .counterBuilder("exception.dedup.suppressed.chars")
+        .setDescription("Characters of stack trace not exported because they repeated one sent.")
+        .buildWithCallback(measurement -> measurement.record(suppressedChars.sum()));
+  }
+
+  private static final class Window {
+
+    final long startNanos;
+    final AtomicLong count = new AtomicLong();
+
+    Window(long startNanos) {
+      this.startNanos = startNanos;
+    }
+  }
+
+  /** Span data with its exception events rewritten. */
+  private static final class DedupSpanData extends DelegatingSpanData {
+
+    private final List<EventData> events;
+
+    DedupSpanData(SpanData spanData, List<EventData> events) {
+      super(spanData);
+      this.events = events;
+    }
+
+    @Override
+    public List<EventData> getEvents() {
+      return events;
+    }
+  }
+}
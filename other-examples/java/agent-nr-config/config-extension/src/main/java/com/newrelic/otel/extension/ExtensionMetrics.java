@@ -0,0 +1,34 @@
+package com.newrelic.otel.extension;
+
+import io.opentelemetry.api.GlobalOpenTelemetry;
+import io.opentelemetry.api.metrics.Meter;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Registers a component's metrics on the global meter provider. The agent installs that provider
+ * only after it has built the SDK, and with it this extension's samplers, processors and exporters,
+ * so a component cannot register its metrics when it is created. Instead it calls {@link
+ * #registerIfReady} on its hot path, which costs a volatile read once the metrics are registered.
+ */
+final class ExtensionMetrics {
+
+  private static final String METER_NAME = "com.newrelic.otel.extension";
+
+  private final Consumer<Meter> register;
+  private final AtomicBoolean registered = new AtomicBoolean();
+
+  /**
+   * @param register registers the component's instruments on the meter it is given
+   */
+  ExtensionMetrics(Consumer<Meter> register) {
+    this.register = register;
+  }
+
+  /** Registers the metrics once the global meter provider is installed, and only the first time. */
+  void registerIfReady() {
+    if (!registered.get() && GlobalOpenTelemetry.isSet() && registered.compareAndSet(false, true)) {
+      register.accept(GlobalOpenTelemetry.getMeter(METER_NAME));
+    }
+  }
+}
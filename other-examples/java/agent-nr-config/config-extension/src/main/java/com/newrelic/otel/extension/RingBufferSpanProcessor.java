@@ -0,0 +1,367 @@
+package com.newrelic.otel.extension;
+
+import io.opentelemetry.api.metrics.Meter;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.ReadWriteSpan;
+import io.opentelemetry.sdk.trace.ReadableSpan;
+import io.opentelemetry.sdk.trace.SpanProcessor;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.BatchSpanProcessor;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A batch span processor built on a bounded multi-producer, single-consumer ring buffer, for hosts
+ * where many request threads end spans at once.
+ *
+ * <p>A thread ending a sampled span claims the next slot by compare-and-set on the tail sequence
+ * and then publishes the span into that slot. It never takes a lock or allocates. When the buffer
+ * is full the span is dropped and counted, which is reported as the {@code
+ * span.processor.ring.dropped} counter on the global meter provider once the agent has installed
+ * it. A single worker thread takes published spans in order, a batch at a time, and exports a batch
+ * when it is full or when the schedule delay has passed since its first span was taken. It moves
+ * the head sequence once per batch, so producers checking for space see it change rarely.
+ *
+ * <p>How the worker waits for spans is the {@link WaitStrategy}.
+ */
+final class RingBufferSpanProcessor implements SpanProcessor {
+
+  private static final Logger logger = Logger.getLogger(RingBufferSpanProcessor.class.getName());
+
+  /** How the worker waits when fewer than a batch of spans are ready. */
+  enum WaitStrategy {
+    /**
+     * Parks until the schedule delay passes, or until a producer fills a batch and wakes it. It
+     * uses no CPU while idle, and wake-ups cost producers an unpark once per batch.
+     */
+    PARK,
+    /** Yields the CPU between checks. It picks up spans sooner, at the cost of a busy core. */
+    YIELD,
+    /** Spins between checks. It has the lowest hand-off latency and keeps a core fully busy. */
+    SPIN;
+
+    static WaitStrategy parse(String value) {
+      return valueOf(value.trim().toUpperCase(Locale.ROOT));
+    }
+  }
+
+  private final SpanExporter exporter;
+  private final Supplier<CompletableResultCode> closeExporter;
+  private final int batchSize;
+  private final long scheduleDelayNanos;
+  private final long exporterTimeoutNanos;
+  private final WaitStrategy waitStrategy;
+
+  private final AtomicReferenceArray<ReadableSpan> ring;
+  private final int mask;
+  // The next sequence producers claim, and the next one the worker takes
+  private final AtomicLong tail = new AtomicLong();
+  private final AtomicLong head = new AtomicLong();
+  private final LongAdder dropped = new LongAdder();
+
+  private final Thread worker;
+  private final AtomicBoolean workerParked = new AtomicBoolean();
+  // Spans the parked worker still needs to fill its batch; written before workerParked is set
+  private volatile int spansNeeded;
+  private final AtomicReference<CompletableResultCode> flushRequest = new AtomicReference<>();
+  private final AtomicBoolean shutdownRequested = new AtomicBoolean();
+  private final CompletableResultCode shutdownResult = new CompletableResultCode();
+  private final ExtensionMetrics metrics = new ExtensionMetrics(this::registerMetrics);
+
+  private RingBufferSpanProcessor(Builder builder) {
+    this.exporter = builder.exporter;
+    this.closeExporter = builder.closeExporter;
+    this.batchSize = builder.maxExportBatchSize;
+    this.scheduleDelayNanos = builder.scheduleDelay.toNanos();
+    this.exporterTimeoutNanos = builder.exporterTimeout.toNanos();
+    this.waitStrategy = builder.waitStrategy;
+    int capacity = 1;
+    while (capacity < Math.max(builder.capacity, batchSize)) {
+      capacity <<= 1;
+    }
+    this.ring = new AtomicReferenceArray<>(capacity);
+    this.mask = capacity - 1;
+    this.worker = new Thread(this::work, "RingBufferSpanProcessor_WorkerThread");
+    worker.setDaemon(true);
+    worker.start();
+  }
+
+  static Builder builder(SpanExporter exporter) {
+    return new Builder(exporter, exporter::shutdown);
+  }
+
+  /**
+   * Returns a builder for a processor that takes the place of {@code stock} on its exporter. {@code
+   * stock} must not receive spans. It is shut down in place of the exporter, which closes the
+   * exporter once and stops its idle worker thread.
+   */
+  static Builder replacing(BatchSpanProcessor stock) {
+    return new Builder(stock.getSpanExporter(), stock::shutdown);
+  }
+
+  @Override
+  public void onStart(Context parentContext, ReadWriteSpan span) {}
+
+  @Override
+  public boolean isStartRequired() {
+    return false;
+  }
+
+  @Override
+  public void onEnd(ReadableSpan span) {
+    if (!span.getSpanContext().isSampled()) {
+      return;
+    }
+    metrics.registerIfReady();
+    long sequence;
+    do {
+      sequence = tail.get();
+      if (sequence - head.get() > mask) {
+        dropped.increment();
+        return;
+      }
+    } while (!tail.compareAndSet(sequence, sequence + 1));
+    ring.lazySet((int) sequence & mask, span);
+    // Wake a parked worker once a batch is ready, rather than let it sleep out the delay
+    if (workerParked.get()
+        && sequence + 1 - head.get() >= spansNeeded
+        && workerParked.compareAndSet(true, false)) {
+      LockSupport.unpark(worker);
+    }
+  }
+
+  @Override
+  public boolean isEndRequired() {
+    return true;
+  }
+
+  @Override
+  public CompletableResultCode forceFlush() {
+    if (shutdownRequested.get()) {
+      return shutdownResult;
+    }
+    CompletableResultCode result = new CompletableResultCode();
+    CompletableResultCode pending = flushRequest.compareAndExchange(null, result);
+    if (pending != null) {
+      return pending;
+    }
+    LockSupport.unpark(worker);
+    return result;
+  }
+
+  @Override
+  public CompletableResultCode shutdown() {
+    if (shutdownRequested.compareAndSet(false, true)) {
+      LockSupport.unpark(worker);
+    }
+    return shutdownResult;
+  }
+
+  /** The number of spans dropped because the buffer was full. */
+  long droppedSpans() {
+    return dropped.sum();
+  }
+
+  private void registerMetrics(Meter meter) {
+    meter
+        .counterBuilder("span.processor.ring.dropped")
+        .setDescription("Sampled spans dropped because the span ring buffer was full.")
+        .buildWithCallback(measurement -> measurement.record(dropped.sum()));
+  }
+
+  private void work() {
+    List<SpanData> batch = new ArrayList<>(batchSize);
+    // The schedule delay runs from when the first span of a batch is taken
+    long nextExport = 0;
+    while (!shutdownRequested.get()) {
+      boolean wasEmpty = batch.isEmpty();
+      take(batch, tail.get());
+      if (wasEmpty && !batch.isEmpty()) {
+        nextExport = System.nanoTime() + scheduleDelayNanos;
+      }
+      CompletableResultCode flush = flushRequest.get();
+      if (flush != null) {
+        // Everything claimed before the flush was asked for goes out with it
+        drain(batch, tail.get());
+        flushRequest.set(null);
+        flush.succeed();
+      } else if (batch.size() >= batchSize
+          || (!batch.isEmpty() && System.nanoTime() - nextExport >= 0)) {
+        export(batch);
+      } else if (tail.get() - head.get() < batchSize - batch.size()) {
+        await(
+            batch.isEmpty() ? System.nanoTime() + scheduleDelayNanos : nextExport,
+            batchSize - batch.size());
+      }
+    }
+    drain(batch, tail.get());
+    CompletableResultCode pending = flushRequest.getAndSet(null);
+    if (pending != null) {
+      pending.succeed();
+    }
+    CompletableResultCode closed = closeExporter.get();
+    closed.whenComplete(
+        () -> {
+          if (closed.isSuccess()) {
+            shutdownResult.succeed();
+          } else {
+            shutdownResult.fail();
+          }
+        });
+  }
+
+  /**
+   * Moves published spans below {@code limit} into {@code batch} until it is full. Stops at a slot
+   * that is claimed but not yet published.
+   */
+  private void take(List<SpanData> batch, long limit) {
+    long start = head.get();
+    long sequence = start;
+    while (sequence < limit && batch.size() < batchSize) {
+      int index = (int) sequence & mask;
+      ReadableSpan span = ring.get(index);
+      if (span == null) {
+        break;
+      }
+      ring.lazySet(index, null);
+      batch.add(span.toSpanData());
+      sequence++;
+    }
+    if (sequence != start) {
+      head.lazySet(sequence);
+    }
+  }
+
+  /** Exports everything up to {@code limit}, waiting for producers that have claimed slots. */
+  private void drain(List<SpanData> batch, long limit) {
+    while (head.get() < limit) {
+      take(batch, limit);
+      if (batch.size() >= batchSize) {
+        export(batch);
+      } else if (head.get() < limit) {
+        // A producer has claimed a slot and is about to publish into it
+        Thread.onSpinWait();
+      }
+    }
+    export(batch);
+  }
+
+  private void export(List<SpanData> batch) {
+    if (batch.isEmpty()) {
+      return;
+    }
+    try {
+      exporter.export(new ArrayList<>(batch)).join(exporterTimeoutNanos, TimeUnit.NANOSECONDS);
+    } catch (RuntimeException e) {
+      logger.log(Level.WARNING, "Exporter threw an exception", e);
+    } finally {
+      batch.clear();
+    }
+  }
+
+  /**
+   * Waits until {@code nextExport}, or until {@code needed} more spans, enough to fill the batch
+   * with the ones already taken, are in the buffer.
+   */
+  private void await(long nextExport, int needed) {
+    switch (waitStrategy) {
+      case PARK:
+        spansNeeded = needed;
+        workerParked.set(true);
+        // Recheck after announcing, so a batch that filled meanwhile is not slept through
+        if (tail.get() - head.get() < needed
+            && flushRequest.get() == null
+            && !shutdownRequested.get()) {
+          LockSupport.parkNanos(this, Math.max(0, nextExport - System.nanoTime()));
+        }
+        workerParked.set(false);
+        break;
+      case YIELD:
+        Thread.yield();
+        break;
+      case SPIN:
+        Thread.onSpinWait();
+        break;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "RingBufferSpanProcessor{exporter="
+        + exporter
+        + ",capacity="
+        + ring.length()
+        + ",batchSize="
+        + batchSize
+        + ",waitStrategy="
+        + waitStrategy
+        + "}";
+  }
+
+  static final class Builder {
+
+    private final SpanExporter exporter;
+    private final Supplier<CompletableResultCode> closeExporter;
+    private int capacity = 2048;
+    private int maxExportBatchSize = 512;
+    private Duration scheduleDelay = Duration.ofSeconds(5);
+    private Duration exporterTimeout = Duration.ofSeconds(30);
+    private WaitStrategy waitStrategy = WaitStrategy.PARK;
+
+    private Builder(SpanExporter exporter, Supplier<CompletableResultCode> closeExporter) {
+      this.exporter = exporter;
+      this.closeExporter = closeExporter;
+    }
+
+    /** Sets the number of spans the buffer holds, rounded up to a power of two. */
+    Builder setCapacity(int capacity) {
+      this.capacity = capacity;
+      return this;
+    }
+
+    Builder setMaxExportBatchSize(int maxExportBatchSize) {
+      this.maxExportBatchSize = maxExportBatchSize;
+      return this;
+    }
+
+    Builder setScheduleDelay(Duration scheduleDelay) {
+      this.scheduleDelay = scheduleDelay;
+      return this;
+    }
+
+    Builder setExporterTimeout(Duration exporterTimeout) {
+      this.exporterTimeout = exporterTimeout;
+      return this;
+    }
+
+    Builder setWaitStrategy(WaitStrategy waitStrategy) {
+      this.waitStrategy = waitStrategy;
+      return this;
+    }
+
+    RingBufferSpanProcessor build() {
+      if (capacity < 1 || maxExportBatchSize < 1) {
+        throw new IllegalArgumentException(
+            "capacity and maxExportBatchSize must be positive: "
+                + capacity
+                + ", "
+                + maxExportBatchSize);
+      }
+      return new RingBufferSpanProcessor(this);
+    }
+  }
+}
@@ -0,0 +1,204 @@
+package com.newrelic.otel.extension;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.Meter;
+import io.opentelemetry.api.metrics.ObservableDoubleMeasurement;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.sdk.trace.data.LinkData;
+import io.opentelemetry.sdk.trace.samplers.Sampler;
+import io.opentelemetry.sdk.trace.samplers.SamplingResult;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Samples at most a target number of spans per second for each route, so span volume stays flat
+ * when traffic spikes instead of growing with load. Spans of the configured kind that carry the
+ * route attribute draw from that route's token bucket. Everything else is always sampled.
+ *
+ * <p>Each bucket is a single {@link AtomicLong} updated by compare-and-set (the generic cell rate
+ * algorithm). It holds the time at which the bucket will next be full, allows a burst of one
+ * second's worth of spans, and never blocks. There is one bucket per route up to {@link
+ * #MAX_ROUTES}; routes beyond that share one overflow bucket.
+ *
+ * <p>Spans over budget are {@link SamplingResult#recordOnly() recorded but not sampled} rather than
+ * dropped. That way {@link ErrorSpanProcessor} can still export the ones that end in error, which a
+ * head sampler cannot know when the span starts. A plain parent-based sampler would drop the
+ * children of such a span; {@link #parentBased} records them too, so an error below the server span
+ * is exported as well.
+ *
+ * <p>The share of each route's spans that was sampled since the last collection is reported as the
+ * {@code sampler.route.probability} gauge. The gauge is registered on the global meter provider
+ * once the agent has installed it.
+ */
+final class RouteRateSampler implements Sampler {
+
+  static final int MAX_ROUTES = 1024;
+  private static final String OVERFLOW_ROUTE = "other";
+
+  private final SpanKind spanKind;
+  private final AttributeKey<String> attributeKey;
+  private final double spansPerSecond;
+  private final long intervalNanos;
+  private final long toleranceNanos;
+  private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+  private final Bucket overflow;
+  private final ExtensionMetrics metrics = new ExtensionMetrics(this::registerMetrics);
+
+  RouteRateSampler(SpanKind spanKind, AttributeKey<String> attributeKey, double spansPerSecond) {
+    if (!(spansPerSecond > 0)) {
+      throw new IllegalArgumentException("spansPerSecond must be positive: " + spansPerSecond);
+    }
+    this.spanKind = spanKind;
+    this.attributeKey = attributeKey;
+    this.spansPerSecond = spansPerSecond;
+    this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / spansPerSecond));
+    // A full bucket holds one second of spans, and never less than one span
+    this.toleranceNanos = (long) ((Math.max(1, spansPerSecond) - 1) * intervalNanos);
+    this.overflow = new Bucket(OVERFLOW_ROUTE, System.nanoTime());
+  }
+
+  @Override
+  public SamplingResult shouldSample(
+      Context parentContext,
+      String traceId,
+      String name,
+      SpanKind spanKind,
+      Attributes attributes,
+      List<LinkData> parentLinks) {
+    if (spanKind != this.spanKind) {
+      return SamplingResult.recordAndSample();
+    }
+    String route = attributes.get(attributeKey);
+    if (route == null) {
+      return SamplingResult.recordAndSample();
+    }
+    metrics.registerIfReady();
+    return bucket(route).tryAcquire(System.nanoTime())
+        ? SamplingResult.recordAndSample()
+        : SamplingResult.recordOnly();
+  }
+
+  /**
+   * Returns a parent-based sampler over {@code root} that records, without sampling, the children
+   * of a local parent that was recorded but not sampled. Children of a local parent that was
+   * dropped, and of an unsampled remote parent, are dropped as usual.
+   */
+  static Sampler parentBased(Sampler root) {
+    return Sampler.parentBasedBuilder(root)
+        .setLocalParentNotSampled(RecordingParent.INSTANCE)
+        .build();
+  }
+
+  private Bucket bucket(String route) {
+    Bucket bucket = buckets.get(route);
+    if (bucket == null) {
+      if (buckets.size() >= MAX_ROUTES) {
+        return overflow;
+      }
+      bucket = buckets.computeIfAbsent(route, r -> new Bucket(r, System.nanoTime()));
+    }
+    return bucket;
+  }
+
+  private void registerMetrics(Meter meter) {
+    meter
+        .gaugeBuilder("sampler.route.probability")
+        .setDescription("Share of server spans on each route sampled since the last collection.")
+        .setUnit("1")
+        .buildWithCallback(
+            measurement -> {
+              buckets.values().forEach(bucket -> bucket.report(measurement));
+              overflow.report(measurement);
+            });
+  }
+
+  @Override
+  public String getDescription() {
+    return "RouteRateSampler{kind="
+        + spanKind
+        + ",key="
+        + attributeKey
+        + ",spansPerSecond="
+        + spansPerSecond
+        + "}";
+  }
+
+  @Override
+  public String toString() {
+    return getDescription();
+  }
+
+  /** Records a span whose parent is recording, and drops it otherwise. */
+  private enum RecordingParent implements Sampler {
+    INSTANCE;
+
+    @Override
+    public SamplingResult shouldSample(
+        Context parentContext,
+        String traceId,
+        String name,
+        SpanKind spanKind,
+        Attributes attributes,
+        List<LinkData> parentLinks) {
+      return Span.fromContext(parentContext).isRecording()
+          ? SamplingResult.recordOnly()
+          : SamplingResult.drop();
+    }
+
+    @Override
+    public String getDescription() {
+      return "RecordingParent";
+    }
+  }
+
+  private final class Bucket {
+
+    // The time at which the bucket will be full again; admitting a span pushes it one interval
+    // later
+    private final AtomicLong fullAt;
+    private final LongAdder seen = new LongAdder();
+    private final LongAdder sampled = new LongAdder();
+    private final Attributes attributes;
+    // Only touched by the metrics callback, which the SDK does not run concurrently
+    private long reportedSeen;
+    private long reportedSampled;
+
+    Bucket(String route, long now) {
+      this.fullAt = new AtomicLong(now);
+      this.attributes = Attributes.of(attributeKey, route);
+    }
+
+    boolean tryAcquire(long now) {
+      seen.increment();
+      while (true) {
+        long current = fullAt.get();
+        long start = Math.max(current, now);
+        if (start - now > toleranceNanos) {
+          return false;
+        }
+        if (fullAt.compareAndSet(current, start + intervalNanos)) {
+          sampled.increment();
+          return true;
+        }
+      }
+    }
+
+    void report(ObservableDoubleMeasurement measurement) {
+      long seenNow = seen.sum();
+      long sampledNow = sampled.sum();
+      long seenDelta = seenNow - reportedSeen;
+      if (seenDelta > 0) {
+        measurement.record((double) (sampledNow - reportedSampled) / seenDelta, attributes);
+      }
+      reportedSeen = seenNow;
+      reportedSampled = sampledNow;
+    }
+  }
+}
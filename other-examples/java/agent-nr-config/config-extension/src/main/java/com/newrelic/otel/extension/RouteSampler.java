@@ -0,0 +1,210 @@
+package com.newrelic.otel.extension;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.sdk.trace.data.LinkData;
+import io.opentelemetry.sdk.trace.samplers.Sampler;
+import io.opentelemetry.sdk.trace.samplers.SamplingResult;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * A drop-in replacement for {@code RuleBasedRoutingSampler} on a single route attribute, such as
+ * {@code http.route}.
+ *
+ * <p>Rules are regular expressions with the same semantics as {@code RuleBasedRoutingSampler}: they
+ * are checked in order, the first one found anywhere in the value wins, and values matching no rule
+ * go to the fallback sampler. Two things make it cheaper. Rules that are plain literals (optionally
+ * anchored, optionally ending in {@code .*}) are compiled to {@code contains}, {@code startsWith}
+ * or {@code equals}, so no regex engine runs. And because a service has a small, fixed set of route
+ * templates, the outcome for each route is kept in a decision table, so after the first span on a
+ * route a lookup is one hash map read. The table stops growing at {@link #MAX_CACHED_ROUTES}
+ * entries, in case the attribute carries unbounded values, and routes beyond that are matched
+ * against the rules every time.
+ */
+final class RouteSampler implements Sampler {
+
+  static final int MAX_CACHED_ROUTES = 1024;
+
+  private final SpanKind spanKind;
+  private final AttributeKey<String> attributeKey;
+  private final Sampler fallback;
+  private final Rule[] rules;
+  private final Map<String, Sampler> decisions = new ConcurrentHashMap<>();
+
+  private RouteSampler(Builder builder) {
+    this.spanKind = builder.spanKind;
+    this.attributeKey = builder.attributeKey;
+    this.fallback = builder.fallback;
+    this.rules = builder.rules.toArray(new Rule[0]);
+  }
+
+  static Builder builder(SpanKind spanKind, AttributeKey<String> attributeKey, Sampler fallback) {
+    return new Builder(spanKind, attributeKey, fallback);
+  }
+
+  @Override
+  public SamplingResult shouldSample(
+      Context parentContext,
+      String traceId,
+      String name,
+      SpanKind spanKind,
+      Attributes attributes,
+      List<LinkData> parentLinks) {
+    Sampler sampler = fallback;
+    if (spanKind == this.spanKind) {
+      String value = attributes.get(attributeKey);
+      if (value != null) {
+        sampler = decide(value);
+      }
+    }
+    return sampler.shouldSample(parentContext, traceId, name, spanKind, attributes, parentLinks);
+  }
+
+  private Sampler decide(String value) {
+    Sampler sampler = decisions.get(value);
+    if (sampler == null) {
+      sampler = match(value);
+      if (decisions.size() < MAX_CACHED_ROUTES) {
+        decisions.putIfAbsent(value, sampler);
+      }
+    }
+    return sampler;
+  }
+
+  private Sampler match(String value) {
+    for (Rule rule : rules) {
+      if (rule.matches(value)) {
+        return rule.sampler;
+      }
+    }
+    return fallback;
+  }
+
+  @Override
+  public String getDescription() {
+    return "RouteSampler{kind="
+        + spanKind
+        + ",key="
+        + attributeKey
+        + ",rules="
+        + rules.length
+        + ",fallback="
+        + fallback.getDescription()
+        + "}";
+  }
+
+  @Override
+  public String toString() {
+    return getDescription();
+  }
+
+  static final class Builder {
+
+    private final SpanKind spanKind;
+    private final AttributeKey<String> attributeKey;
+    private final Sampler fallback;
+    private final List<Rule> rules = new ArrayList<>();
+
+    private Builder(SpanKind spanKind, AttributeKey<String> attributeKey, Sampler fallback) {
+      this.spanKind = spanKind;
+      this.attributeKey = attributeKey;
+      this.fallback = fallback;
+    }
+
+    /** Drops spans whose value matches {@code pattern}. */
+    Builder drop(String pattern) {
+      rules.add(Rule.compile(pattern, Sampler.alwaysOff()));
+      return this;
+    }
+
+    /** Records and samples spans whose value matches {@code pattern}. */
+    Builder recordAndSample(String pattern) {
+      rules.add(Rule.compile(pattern, Sampler.alwaysOn()));
+      return this;
+    }
+
+    RouteSampler build() {
+      return new RouteSampler(this);
+    }
+  }
+
+  private abstract static class Rule {
+
+    // Anything that makes a pattern more than a literal string; '.' alone is covered too
+    private static final Pattern METACHARACTERS = Pattern.compile("[\\\\.\\[\\]{}()*+?^$|]");
+
+    final Sampler sampler;
+
+    Rule(Sampler sampler) {
+      this.sampler = sampler;
+    }
+
+    abstract boolean matches(String value);
+
+    /**
+     * Compiles a pattern that {@code Matcher.find()} would apply. A literal with a leading {@code
+     * ^}, a trailing {@code .*} or a trailing {@code $} maps directly to a string operation;
+     * anything else stays a regex.
+     */
+    static Rule compile(String pattern, Sampler sampler) {
+      String literal = pattern;
+      boolean anchoredStart = literal.startsWith("^");
+      if (anchoredStart) {
+        literal = literal.substring(1);
+      }
+      boolean anchoredEnd = false;
+      if (literal.endsWith(".*")) {
+        literal = literal.substring(0, literal.length() - 2);
+      } else if (literal.endsWith("$") && !literal.endsWith("\\$")) {
+        literal = literal.substring(0, literal.length() - 1);
+        anchoredEnd = true;
+      }
+      if (METACHARACTERS.matcher(literal).find()) {
+        Pattern regex = Pattern.compile(pattern);
+        return new Rule(sampler) {
+          @Override
+          boolean matches(String value) {
+            return regex.matcher(value).find();
+          }
+        };
+      }
+      String text = literal;
+      if (anchoredStart && anchoredEnd) {
+        return new Rule(sampler) {
+          @Override
+          boolean matches(String value) {
+            return value.equals(text);
+          }
+        };
+      }
+      if (anchoredStart) {
+        return new Rule(sampler) {
+          @Override
+          boolean matches(String value) {
+            return value.startsWith(text);
+          }
+        };
+      }
+      if (anchoredEnd) {
+        return new Rule(sampler) {
+          @Override
+          boolean matches(String value) {
+            return value.endsWith(text);
+          }
+        };
+      }
+      return new Rule(sampler) {
+        @Override
+        boolean matches(String value) {
+          return value.contains(text);
+        }
+      };
+    }
+  }
+}
@@ -0,0 +1,365 @@
+package com.newrelic.otel.extension;
+
+import static io.opentelemetry.api.common.AttributeKey.stringKey;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.Meter;
+import io.opentelemetry.api.trace.SpanContext;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.ReadWriteSpan;
+import io.opentelemetry.sdk.trace.ReadableSpan;
+import io.opentelemetry.sdk.trace.SpanProcessor;
+import io.opentelemetry.sdk.trace.samplers.Sampler;
+import io.opentelemetry.sdk.trace.samplers.SamplingDecision;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides which traces to export after they end rather than when they start. It sits in front of
+ * the exporting span processor and holds each trace's ended spans until the trace's local root span
+ * (the first span of the trace in this process) ends. The trace is then kept if any of its spans
+ * has an error status or if the local root took at least the latency threshold. Otherwise it is
+ * kept at the given ratio, chosen by trace ID like {@code traceidratio} so the choice is the same
+ * in every service. Kept spans are passed to the delegate, and the rest are discarded. Spans the
+ * head sampler recorded but did not sample, such as those over a route's rate limit, are passed
+ * straight to the delegate, which does not export them either, so they never take buffer space.
+ *
+ * <p>Memory is bounded by a cap on the number of buffered spans, which also caps the traces waiting
+ * for a decision, since each holds at least one span. When the cap is reached, or a trace has
+ * waited longer than the decision wait (for instance because its root never ends), the oldest
+ * waiting trace is evicted. Its decision is then made on the spans seen so far. Its root has not
+ * ended, so it has been open at least since the earliest of those spans started, and that is taken
+ * as its latency: a trace evicted for waiting too long is slow, and kept.
+ *
+ * <p>A decision is remembered for the decision wait, so spans that end after their local root, such
+ * as async work, follow it. Remembered decisions have a cap of their own, and the oldest are
+ * forgotten when it is reached; they never push a waiting trace out. A late span of a forgotten
+ * trace starts a new one.
+ *
+ * <p>The number of buffered traces and spans, and the number of traces kept, dropped and evicted,
+ * are reported on the global meter provider once the agent has installed it.
+ */
+final class TailSamplingSpanProcessor implements SpanProcessor {
+
+  private static final AttributeKey<String> DECISION = stringKey("sampler.tail.decision");
+  private static final Attributes KEPT = Attributes.of(DECISION, "kept");
+  private static final Attributes DROPPED = Attributes.of(DECISION, "dropped");
+
+  private final SpanProcessor delegate;
+  private final Sampler ratioSampler;
+  private final long latencyThresholdNanos;
+  private final int maxSpans;
+  private final int maxDecisions;
+  private final long decisionWaitNanos;
+
+  // Every trace with spans buffered or a decision remembered, by trace ID
+  private final Map<String, Trace> traces = new ConcurrentHashMap<>();
+  // Guarded by itself: traces waiting for a decision, in the order they were first seen, and
+  // decided traces, in the order they were decided. Each is the order its traces leave in
+  private final LinkedHashSet<Trace> waiting = new LinkedHashSet<>();
+  private final LinkedHashSet<Trace> decided = new LinkedHashSet<>();
+  // Written under the waiting lock so that onEnd can tell whether there is anything to evict
+  // without taking it: the size of decided, and the earliest time anything in either set was
+  // first seen or decided
+  private volatile int decidedCount;
+  private volatile long oldestNanos = System.nanoTime();
+  private final AtomicInteger bufferedTraces = new AtomicInteger();
+  private final AtomicInteger bufferedSpans = new AtomicInteger();
+
+  private final LongAdder kept = new LongAdder();
+  private final LongAdder dropped = new LongAdder();
+  private final LongAdder evicted = new LongAdder();
+  private final ExtensionMetrics metrics = new ExtensionMetrics(this::registerMetrics);
+
+  TailSamplingSpanProcessor(
+      SpanProcessor delegate,
+      double ratio,
+      Duration latencyThreshold,
+      int maxSpans,
+      int maxDecisions,
+      Duration decisionWait) {
+    if (maxSpans < 1) {
+      throw new IllegalArgumentException("maxSpans must be positive: " + maxSpans);
+    }
+    if (maxDecisions < 0) {
+      throw new IllegalArgumentException("maxDecisions must not be negative: " + maxDecisions);
+    }
+    this.delegate = delegate;
+    this.ratioSampler = Sampler.traceIdRatioBased(ratio);
+    this.latencyThresholdNanos = latencyThreshold.toNanos();
+    this.maxSpans = maxSpans;
+    this.maxDecisions = maxDecisions;
+    this.decisionWaitNanos = decisionWait.toNanos();
+  }
+
+  @Override
+  public void onStart(Context parentContext, ReadWriteSpan span) {
+    delegate.onStart(parentContext, span);
+  }
+
+  @Override
+  public boolean isStartRequired() {
+    return delegate.isStartRequired();
+  }
+
+  @Override
+  public void onEnd(ReadableSpan span) {
+    metrics.registerIfReady();
+    if (!span.getSpanContext().isSampled()) {
+      delegate.onEnd(span);
+      return;
+    }
+    long now = System.nanoTime();
+    String traceId = span.getSpanContext().getTraceId();
+    SpanContext parent = span.getParentSpanContext();
+    boolean localRoot = !parent.isValid() || parent.isRemote();
+    Trace trace = traces.get(traceId);
+    if (trace == null) {
+      trace = traces.computeIfAbsent(traceId, id -> newTrace(id, now));
+    }
+    if (trace.end(span, localRoot, now)) {
+      decided(trace, now);
+    }
+    evict(now);
+  }
+
+  @Override
+  public boolean isEndRequired() {
+    return true;
+  }
+
+  @Override
+  public CompletableResultCode forceFlush() {
+    return delegate.forceFlush();
+  }
+
+  @Override
+  public CompletableResultCode shutdown() {
+    // Whatever is still waiting is decided on what has been seen, rather than lost
+    List<Trace> remaining;
+    synchronized (waiting) {
+      remaining = new ArrayList<>(waiting);
+      waiting.clear();
+    }
+    long now = System.nanoTime();
+    remaining.forEach(trace -> trace.evict(now));
+    return delegate.shutdown();
+  }
+
+  private Trace newTrace(String traceId, long now) {
+    Trace trace = new Trace(traceId, now);
+    bufferedTraces.incrementAndGet();
+    synchronized (waiting) {
+      if (waiting.isEmpty() && decided.isEmpty()) {
+        oldestNanos = now;
+      }
+      waiting.add(trace);
+    }
+    return trace;
+  }
+
+  /** Moves a trace that has just been decided from waiting to the remembered decisions. */
+  private void decided(Trace trace, long now) {
+    synchronized (waiting) {
+      waiting.remove(trace);
+      if (waiting.isEmpty() && decided.isEmpty()) {
+        oldestNanos = now;
+      }
+      trace.decidedNanos = now;
+      decided.add(trace);
+      decidedCount = decided.size();
+    }
+  }
+
+  /**
+   * Forgets the oldest decisions while too many are remembered, and any remembered for longer than
+   * the decision wait. Then evicts the oldest waiting traces while too many spans are buffered, and
+   * any trace that has waited longer than the decision wait.
+   */
+  private void evict(long now) {
+    if (bufferedSpans.get() <= maxSpans
+        && decidedCount <= maxDecisions
+        && now - oldestNanos <= decisionWaitNanos) {
+      return;
+    }
+    List<Trace> forgotten = new ArrayList<>();
+    List<Trace> evicted = new ArrayList<>();
+    synchronized (waiting) {
+      for (Iterator<Trace> it = decided.iterator(); it.hasNext(); ) {
+        Trace trace = it.next();
+        if (decided.size() <= maxDecisions && now - trace.decidedNanos <= decisionWaitNanos) {
+          break;
+        }
+        it.remove();
+        forgotten.add(trace);
+      }
+      decidedCount = decided.size();
+      long spans = bufferedSpans.get();
+      for (Iterator<Trace> it = waiting.iterator(); it.hasNext(); ) {
+        Trace trace = it.next();
+        if (spans <= maxSpans && now - trace.firstSeenNanos <= decisionWaitNanos) {
+          break;
+        }
+        it.remove();
+        evicted.add(trace);
+        spans -= trace.size;
+      }
+      long oldest = now;
+      if (!waiting.isEmpty()) {
+        oldest = waiting.iterator().next().firstSeenNanos;
+      }
+      if (!decided.isEmpty() && decided.iterator().next().decidedNanos - oldest < 0) {
+        oldest = decided.iterator().next().decidedNanos;
+      }
+      oldestNanos = oldest;
+    }
+    // Outside the lock: newTrace takes it while the map holds a lock of its own, and deciding takes
+    // the trace's lock
+    for (Trace trace : forgotten) {
+      traces.remove(trace.traceId, trace);
+    }
+    for (Trace trace : evicted) {
+      if (trace.evict(now)) {
+        decided(trace, now);
+      }
+    }
+  }
+
+  private boolean decide(
+      String traceId, List<ReadableSpan> spans, boolean error, long rootLatencyNanos) {
+    boolean keep = error || rootLatencyNanos >= latencyThresholdNanos || sampledByRatio(traceId);
+    if (keep) {
+      kept.increment();
+      spans.forEach(delegate::onEnd);
+    } else {
+      dropped.increment();
+    }
+    return keep;
+  }
+
+  private boolean sampledByRatio(String traceId) {
+    return ratioSampler
+            .shouldSample(
+                Context.root(),
+                traceId,
+                "",
+                SpanKind.INTERNAL,
+                Attributes.empty(),
+                Collections.emptyList())
+            .getDecision()
+        == SamplingDecision.RECORD_AND_SAMPLE;
+  }
+
+  private static boolean isError(ReadableSpan span) {
+    return span.toSpanData().getStatus().getStatusCode() == StatusCode.ERROR;
+  }
+
+  private void registerMetrics(Meter meter) {
+    meter
+        .upDownCounterBuilder("sampler.tail.buffered.traces")
+        .setDescription("Traces waiting for a tail sampling decision.")
+        .buildWithCallback(measurement -> measurement.record(bufferedTraces.get()));
+    meter
+        .upDownCounterBuilder("sampler.tail.buffered.spans")
+        .setDescription("Ended spans held until their trace is decided.")
+        .buildWithCallback(measurement -> measurement.record(bufferedSpans.get()));
+    meter
+        .counterBuilder("sampler.tail.traces")
+        .setDescription("Traces decided by the tail sampler, by decision.")
+        .buildWithCallback(
+            measurement -> {
+              measurement.record(kept.sum(), KEPT);
+              measurement.record(dropped.sum(), DROPPED);
+            });
+    meter
+        .counterBuilder("sampler.tail.evicted")
+        .setDescription("Traces decided before their local root ended, to bound memory.")
+        .buildWithCallback(measurement -> measurement.record(evicted.sum()));
+  }
+
+  private final class Trace {
+
+    final String traceId;
+    final long firstSeenNanos;
+    // Guarded by the processor's waiting lock
+    long decidedNanos;
+    // The number of buffered spans, read without the lock to estimate what evicting frees
+    volatile int size;
+    // Guarded by this; spans is null once the trace is decided
+    private List<ReadableSpan> spans = new ArrayList<>();
+    private boolean error;
+    private boolean keep;
+    // When the earliest buffered span started, on the System.nanoTime() clock
+    private long earliestStartNanos;
+
+    Trace(String traceId, long firstSeenNanos) {
+      this.traceId = traceId;
+      this.firstSeenNanos = firstSeenNanos;
+      this.earliestStartNanos = firstSeenNanos;
+    }
+
+    /**
+     * Buffers {@code span}, or follows the trace's decision if it has one.
+     *
+     * @return whether this span decided the trace
+     */
+    boolean end(ReadableSpan span, boolean localRoot, long now) {
+      boolean forward;
+      synchronized (this) {
+        if (spans != null) {
+          spans.add(span);
+          error |= isError(span);
+          if (!localRoot) {
+            earliestStartNanos = Math.min(earliestStartNanos, now - span.getLatencyNanos());
+            size = spans.size();
+            bufferedSpans.incrementAndGet();
+            return false;
+          }
+          bufferedSpans.addAndGet(1 - spans.size());
+          bufferedTraces.decrementAndGet();
+          keep = decide(traceId, spans, error, span.getLatencyNanos());
+          spans = null;
+          size = 0;
+          return true;
+        }
+        forward = keep;
+      }
+      // The trace was already decided; a late span follows that decision
+      if (forward) {
+        delegate.onEnd(span);
+      }
+      return false;
+    }
+
+    /**
+     * Decides the trace on the spans buffered so far. The root, which started before all of them
+     * and has not ended, has taken at least as long as since the earliest of them started.
+     *
+     * @return whether the trace was still waiting for a decision
+     */
+    synchronized boolean evict(long now) {
+      if (spans == null) {
+        return false;
+      }
+      evicted.increment();
+      bufferedSpans.addAndGet(-spans.size());
+      bufferedTraces.decrementAndGet();
+      keep = decide(traceId, spans, error, now - earliestStartNanos);
+      spans = null;
+      size = 0;
+      return true;
+    }
+  }
+}
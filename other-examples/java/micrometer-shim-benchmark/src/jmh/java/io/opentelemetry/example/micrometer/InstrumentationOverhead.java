@@ -0,0 +1,73 @@
+package io.opentelemetry.example.micrometer;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs InstrumentationOverheadBenchmark once for each thread count in THREADS (default 1,4,16),
+ * since a JMH run has a single thread count, and then prints every result in one table: the time
+ * per call, its margin of error, the time above {@code none} at the same thread count, and the
+ * bytes allocated per call.
+ *
+ * <p>Run from the java root with: ./gradlew
+ * :micrometer-shim-benchmark:instrumentationOverheadBenchmark
+ */
+public class InstrumentationOverhead {
+
+  public static void main(String[] args) throws Exception {
+    int[] threadCounts =
+        Arrays.stream(System.getenv().getOrDefault("THREADS", "1,4,16").split(","))
+            .mapToInt(value -> Integer.parseInt(value.trim()))
+            .toArray();
+    Map<Integer, Collection<RunResult>> results = new LinkedHashMap<>();
+    for (int threads : threadCounts) {
+      results.put(
+          threads,
+          new Runner(
+                  new OptionsBuilder()
+                      .include(InstrumentationOverheadBenchmark.class.getName())
+                      .threads(threads)
+                      .addProfiler(GCProfiler.class)
+                      .build())
+              .run());
+    }
+
+    System.out.println();
+    System.out.printf(
+        "%7s %-10s %10s %8s %12s %10s%n", "threads", "path", "ns/op", "error", "over none", "B/op");
+    results.forEach(
+        (threads, runResults) -> {
+          double none =
+              runResults.stream()
+                  .filter(result -> result.getParams().getParam("path").equals("none"))
+                  .mapToDouble(result -> result.getPrimaryResult().getScore())
+                  .findFirst()
+                  .orElse(Double.NaN);
+          for (RunResult runResult : runResults) {
+            Result<?> time = runResult.getPrimaryResult();
+            // Named "·gc.alloc.rate.norm" before JMH 1.37
+            Result<?> allocation =
+                runResult.getSecondaryResults().entrySet().stream()
+                    .filter(entry -> entry.getKey().endsWith("gc.alloc.rate.norm"))
+                    .map(Map.Entry::getValue)
+                    .findFirst()
+                    .orElse(null);
+            System.out.printf(
+                "%7d %-10s %10.1f %8.1f %12.1f %10.1f%n",
+                threads,
+                runResult.getParams().getParam("path"),
+                time.getScore(),
+                time.getScoreError(),
+                time.getScore() - none,
+                allocation == null ? Double.NaN : allocation.getScore());
+          }
+        });
+  }
+}
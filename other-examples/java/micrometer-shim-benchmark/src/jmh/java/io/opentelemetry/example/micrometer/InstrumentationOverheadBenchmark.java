@@ -0,0 +1,193 @@
+package io.opentelemetry.example.micrometer;
+
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.DoubleHistogram;
+import io.opentelemetry.sdk.OpenTelemetrySdk;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.metrics.Aggregation;
+import io.opentelemetry.sdk.metrics.InstrumentType;
+import io.opentelemetry.sdk.metrics.SdkMeterProvider;
+import io.opentelemetry.sdk.metrics.data.AggregationTemporality;
+import io.opentelemetry.sdk.metrics.data.MetricData;
+import io.opentelemetry.sdk.metrics.export.MetricExporter;
+import io.opentelemetry.sdk.metrics.export.PeriodicMetricReader;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+
+/**
+ * Measures what timing a method costs per call, on each path the application could take to record
+ * {@code dowork.time}:
+ *
+ * <ul>
+ *   <li>{@code none}: the method alone
+ *   <li>{@code otel}: {@code System.nanoTime()} around the call and a {@code
+ *       DoubleHistogram.record} on the SDK, with the attributes {@code TimedAspect} would add
+ *   <li>{@code micrometer}: the same around {@code Timer.record} on the OpenTelemetry micrometer
+ *       registry, with the timer looked up once
+ *   <li>{@code timed}: a {@code @Timed} method called through a Spring AOP proxy with {@code
+ *       TimedAspect}, like {@code Service.doWork}
+ * </ul>
+ *
+ * <p>Every path records into the application's meter provider and registry, with its cardinality
+ * limits and exponential histograms, and all threads share the same instruments. The method burns a
+ * fixed {@code Blackhole.consumeCPU(WORK_TOKENS)}, so the difference from {@code none} is the cost
+ * of timing it. Run it at several thread counts with InstrumentationOverhead.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class InstrumentationOverheadBenchmark {
+
+  static final long WORK_TOKENS = 50;
+
+  @Param({"none", "otel", "micrometer", "timed"})
+  public String path;
+
+  private SdkMeterProvider meterProvider;
+  private MeterRegistry registry;
+  private Work work;
+  private DoubleHistogram histogram;
+  private Attributes attributes;
+  private Timer timer;
+
+  @Setup
+  public void setup() {
+    meterProvider =
+        Application.meterProvider(
+            PeriodicMetricReader.builder(new DiscardingExporter())
+                .setInterval(Duration.ofSeconds(60))
+                .build());
+    OpenTelemetrySdk openTelemetry =
+        OpenTelemetrySdk.builder().setMeterProvider(meterProvider).build();
+    registry =
+        Application.meterRegistry(
+            openTelemetry,
+            new CardinalityLimitMeterFilter(
+                Application.DEFAULT_CARDINALITY_LIMIT,
+                Application.CARDINALITY_LIMITS,
+                Application.MAX_METERS));
+    // The tags TimedAspect adds to a method that did not throw
+    Tags tags = Tags.of("class", Work.class.getName(), "method", "doWork", "exception", "none");
+    work = new Work();
+    switch (path) {
+      case "otel":
+        histogram =
+            openTelemetry
+                .getMeter("io.opentelemetry.example.micrometer")
+                .histogramBuilder("dowork.time")
+                .setUnit("ms")
+                .build();
+        attributes =
+            Attributes.builder()
+                .put("class", Work.class.getName())
+                .put("method", "doWork")
+                .put("exception", "none")
+                .build();
+        break;
+      case "micrometer":
+        timer = Timer.builder("dowork.time").tags(tags).register(registry);
+        break;
+      case "timed":
+        AspectJProxyFactory proxyFactory = new AspectJProxyFactory(work);
+        // A class proxy, as Spring Boot creates for Service
+        proxyFactory.setProxyTargetClass(true);
+        proxyFactory.addAspect(new TimedAspect(registry));
+        work = proxyFactory.getProxy();
+        break;
+      default:
+        break;
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    registry.close();
+    meterProvider.shutdown().join(10, TimeUnit.SECONDS);
+  }
+
+  @Benchmark
+  public void call() {
+    switch (path) {
+      case "otel":
+        {
+          long start = System.nanoTime();
+          work.doWork();
+          histogram.record((System.nanoTime() - start) / 1e6, attributes);
+          break;
+        }
+      case "micrometer":
+        {
+          long start = System.nanoTime();
+          work.doWork();
+          timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+          break;
+        }
+      default:
+        work.doWork();
+        break;
+    }
+  }
+
+  /** The timed method. Public and not final, so Spring can proxy it. */
+  public static class Work {
+
+    @Timed("dowork.time")
+    public void doWork() {
+      Blackhole.consumeCPU(WORK_TOKENS);
+    }
+  }
+
+  /** Exports nothing, with the temporality and histogram aggregation of the application's. */
+  private static final class DiscardingExporter implements MetricExporter {
+
+    @Override
+    public CompletableResultCode export(Collection<MetricData> metrics) {
+      return CompletableResultCode.ofSuccess();
+    }
+
+    @Override
+    public AggregationTemporality getAggregationTemporality(InstrumentType instrumentType) {
+      return AggregationTemporality.DELTA;
+    }
+
+    @Override
+    public Aggregation getDefaultAggregation(InstrumentType instrumentType) {
+      return instrumentType == InstrumentType.HISTOGRAM
+          ? Aggregation.base2ExponentialBucketHistogram()
+          : Aggregation.defaultAggregation();
+    }
+
+    @Override
+    public CompletableResultCode flush() {
+      return CompletableResultCode.ofSuccess();
+    }
+
+    @Override
+    public CompletableResultCode shutdown() {
+      return CompletableResultCode.ofSuccess();
+    }
+  }
+}
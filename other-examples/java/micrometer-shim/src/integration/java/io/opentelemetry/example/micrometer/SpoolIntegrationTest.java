@@ -0,0 +1,222 @@
+package io.opentelemetry.example.micrometer;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.DoubleHistogram;
+import io.opentelemetry.api.metrics.LongCounter;
+import io.opentelemetry.api.metrics.Meter;
+import io.opentelemetry.sdk.metrics.SdkMeterProvider;
+import io.opentelemetry.sdk.metrics.export.PeriodicMetricReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Runs the application's metric exporter against a local OTLP HTTP stub that stalls, goes down and
+ * comes back. Every second, a counter is recorded with an {@code interval} attribute naming the
+ * second, along with a histogram per route, and exported with delta temporality every second, with
+ * a 2 second export timeout. The stub is up for UP_SECONDS (default 5). For SLOW_SECONDS (default
+ * 5) it still reads and records each request but answers only after the exporter has given up, as a
+ * backend that has stalled after reading a request would. It is then stopped for DOWN_SECONDS
+ * (default 15), and started again on the same port for UP_SECONDS more.
+ *
+ * <p>It then checks that every interval reached the stub exactly once and in order, request by
+ * request, so that nothing the stub read while slow was sent again, and prints the requests
+ * received, split into live exports and replayed ones, and the bytes on the wire against the same
+ * requests uncompressed. It exits with status 1 if an interval is missing, repeated or out of
+ * order.
+ *
+ * <p>Run from the java root with: ./gradlew :micrometer-shim:spoolIntegrationTest
+ */
+public class SpoolIntegrationTest {
+
+  private static final Pattern INTERVAL = Pattern.compile("interval-(\\d{5})");
+  private static final AttributeKey<String> INTERVAL_KEY = AttributeKey.stringKey("interval");
+  private static final AttributeKey<String> ROUTE_KEY = AttributeKey.stringKey("http.route");
+  private static final int ROUTES = 20;
+  private static final Duration EXPORT_TIMEOUT = Duration.ofSeconds(2);
+
+  // The exporter logs each failed export while the stub is down; the spooling is reported instead
+  private static final Logger QUIET = Logger.getLogger("io.opentelemetry.exporter");
+  private static final Logger QUIET_READER = Logger.getLogger("io.opentelemetry.sdk.metrics");
+
+  public static void main(String[] args) throws Exception {
+    int upSeconds = Integer.parseInt(System.getenv().getOrDefault("UP_SECONDS", "5"));
+    int slowSeconds = Integer.parseInt(System.getenv().getOrDefault("SLOW_SECONDS", "5"));
+    int downSeconds = Integer.parseInt(System.getenv().getOrDefault("DOWN_SECONDS", "15"));
+    QUIET.setLevel(Level.OFF);
+    QUIET_READER.setLevel(Level.OFF);
+
+    Stub stub = new Stub();
+    stub.start(0);
+    int port = stub.port();
+    Path spoolDirectory = Files.createTempDirectory("micrometer-shim-spool");
+    SdkMeterProvider meterProvider =
+        Application.meterProvider(
+            PeriodicMetricReader.builder(
+                    Application.metricExporter(
+                        "http://127.0.0.1:" + port + "/v1/metrics",
+                        Map.of("api-key", "integration-test"),
+                        spoolDirectory,
+                        EXPORT_TIMEOUT))
+                .setInterval(Duration.ofSeconds(1))
+                .build());
+    Meter meter = meterProvider.get("spool-integration-test");
+    LongCounter counter = meter.counterBuilder("spool.test.intervals").build();
+    DoubleHistogram latency = meter.histogramBuilder("spool.test.latency").setUnit("ms").build();
+
+    int seconds = upSeconds + slowSeconds + downSeconds + upSeconds;
+    for (int second = 0; second < seconds; second++) {
+      if (second == upSeconds) {
+        stub.slow = true;
+        System.out.printf("%3ds: stub slow%n", second);
+      } else if (second == upSeconds + slowSeconds) {
+        stub.stop();
+        stub.slow = false;
+        System.out.printf("%3ds: stub down%n", second);
+      } else if (second == upSeconds + slowSeconds + downSeconds) {
+        stub.start(port);
+        System.out.printf("%3ds: stub up%n", second);
+      }
+      counter.add(1, Attributes.of(INTERVAL_KEY, String.format("interval-%05d", second)));
+      for (int route = 0; route < ROUTES; route++) {
+        Attributes attributes = Attributes.of(ROUTE_KEY, "/api/v1/resource/" + route);
+        for (int i = 0; i < 50; i++) {
+          latency.record(1 + (route * 50 + i) % 997 / 10.0, attributes);
+        }
+      }
+      Thread.sleep(1000);
+    }
+    meterProvider.shutdown().join(30, TimeUnit.SECONDS);
+    stub.stop();
+    Files.list(spoolDirectory).forEach(file -> file.toFile().delete());
+    Files.delete(spoolDirectory);
+
+    List<Integer> received = stub.intervals;
+    boolean inOrder = true;
+    for (int i = 0; i < received.size(); i++) {
+      inOrder &= received.get(i) == i;
+    }
+    boolean complete = inOrder && received.size() == seconds;
+    System.out.println();
+    System.out.printf("intervals recorded:    %d%n", seconds);
+    System.out.printf(
+        "intervals received:    %d, %s%n",
+        received.size(), complete ? "all once, in order" : "MISSING, REPEATED OR OUT OF ORDER");
+    System.out.printf(
+        "requests:              %d live, %d replayed from the spool, %d read but not answered%n",
+        stub.liveRequests, stub.replayedRequests, stub.unansweredRequests);
+    System.out.printf(
+        "bytes on the wire:     %d gzipped, %d uncompressed (%.1fx)%n",
+        stub.wireBytes, stub.uncompressedBytes, (double) stub.uncompressedBytes / stub.wireBytes);
+    if (!complete) {
+      System.out.println("received: " + received);
+      System.exit(1);
+    }
+  }
+
+  /**
+   * An OTLP HTTP metrics endpoint that records what it receives. While {@code slow}, it answers
+   * each request only after the exporter has timed out.
+   */
+  private static final class Stub {
+
+    final List<Integer> intervals = new ArrayList<>();
+    long liveRequests;
+    long replayedRequests;
+    long unansweredRequests;
+    long wireBytes;
+    long uncompressedBytes;
+    volatile boolean slow;
+    private HttpServer server;
+    private ExecutorService executor;
+
+    void start(int port) throws IOException {
+      server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+      server.createContext("/v1/metrics", this::handle);
+      // A handler waiting to answer late must not hold up reading the next request
+      executor = Executors.newCachedThreadPool();
+      server.setExecutor(executor);
+      server.start();
+    }
+
+    int port() {
+      return server.getAddress().getPort();
+    }
+
+    void stop() {
+      server.stop(0);
+      executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+      boolean answerLate = slow;
+      record(exchange);
+      if (answerLate) {
+        try {
+          Thread.sleep(EXPORT_TIMEOUT.toMillis() + 1000);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      try {
+        exchange.sendResponseHeaders(200, -1);
+      } catch (IOException e) {
+        // The exporter has given up and closed the connection
+      }
+      exchange.close();
+    }
+
+    private synchronized void record(HttpExchange exchange) throws IOException {
+      byte[] body;
+      try (InputStream in = exchange.getRequestBody()) {
+        body = in.readAllBytes();
+      }
+      byte[] request = body;
+      if ("gzip".equals(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(body))) {
+          request = in.readAllBytes();
+        }
+      }
+      wireBytes += body.length;
+      uncompressedBytes += request.length;
+      String userAgent = exchange.getRequestHeaders().getFirst("User-Agent");
+      if (userAgent != null && userAgent.startsWith("OTel-OTLP-Exporter-Java")) {
+        liveRequests++;
+      } else {
+        replayedRequests++;
+      }
+      // The attribute values are plain UTF-8 in the protobuf encoding. A request can hold several
+      // intervals, when collections were skipped while an export was retrying, in no set order
+      List<Integer> requestIntervals = new ArrayList<>();
+      Matcher matcher = INTERVAL.matcher(new String(request, StandardCharsets.ISO_8859_1));
+      while (matcher.find()) {
+        requestIntervals.add(Integer.parseInt(matcher.group(1)));
+      }
+      Collections.sort(requestIntervals);
+      intervals.addAll(requestIntervals);
+      if (slow) {
+        unansweredRequests++;
+      }
+    }
+  }
+}
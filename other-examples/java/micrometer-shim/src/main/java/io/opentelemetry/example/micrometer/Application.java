@@ -4,16 +4,26 @@ import io.micrometer.core.aop.TimedAspect;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.opentelemetry.api.OpenTelemetry;
 import io.opentelemetry.exporter.otlp.http.metrics.OtlpHttpMetricExporter;
+import io.opentelemetry.exporter.otlp.http.metrics.OtlpHttpMetricExporterBuilder;
 import io.opentelemetry.instrumentation.micrometer.v1_5.OpenTelemetryMeterRegistry;
 import io.opentelemetry.sdk.OpenTelemetrySdk;
 import io.opentelemetry.sdk.metrics.Aggregation;
+import io.opentelemetry.sdk.metrics.InstrumentSelector;
 import io.opentelemetry.sdk.metrics.InstrumentType;
 import io.opentelemetry.sdk.metrics.SdkMeterProvider;
+import io.opentelemetry.sdk.metrics.SdkMeterProviderBuilder;
+import io.opentelemetry.sdk.metrics.View;
 import io.opentelemetry.sdk.metrics.export.AggregationTemporalitySelector;
 import io.opentelemetry.sdk.metrics.export.DefaultAggregationSelector;
+import io.opentelemetry.sdk.metrics.export.MetricExporter;
+import io.opentelemetry.sdk.metrics.export.MetricReader;
 import io.opentelemetry.sdk.metrics.export.PeriodicMetricReader;
 import io.opentelemetry.sdk.resources.Resource;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Path;
 import java.time.Duration;
+import java.util.Map;
 import java.util.Optional;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
@@ -22,6 +32,21 @@ import org.springframework.context.annotation.Bean;
 @SpringBootApplication
 public class Application {
 
+  // Series each instrument keeps before further attribute sets are recorded into one overflow
+  // series, both in the micrometer registry and in the SDK. Instruments not listed get the default
+  static final int DEFAULT_CARDINALITY_LIMIT = 2000;
+  static final Map<String, Integer> CARDINALITY_LIMITS = Map.of("dowork.time", 100);
+  // Meter names kept in the micrometer registry before new meters are dropped
+  static final int MAX_METERS = 1000;
+
+  // Metric batches that fail to export are spooled here, gzipped, until the endpoint is back. Past
+  // the cap, the oldest are dropped
+  static final Path SPOOL_DIRECTORY =
+      Path.of(System.getProperty("java.io.tmpdir"), "micrometer-shim-spool");
+  static final int SPOOL_SEGMENT_BYTES = 4 * 1024 * 1024;
+  static final long SPOOL_MAX_BYTES = 64 * 1024 * 1024;
+  static final Duration EXPORT_TIMEOUT = Duration.ofSeconds(10);
+
   public static void main(String[] args) {
     SpringApplication.run(Application.class, args);
   }
@@ -33,47 +58,98 @@ public class Application {
   }
 
   @Bean
-  public OpenTelemetry openTelemetry() {
+  public OpenTelemetry openTelemetry() throws IOException {
     return OpenTelemetrySdk.builder()
         .setMeterProvider(
-            SdkMeterProvider.builder()
-                .setResource(
-                    Resource.getDefault().toBuilder()
-                        .put("service.name", "micrometer-shim")
-                        // Include instrumentation.provider=micrometer to enable micrometer metrics
-                        // experience in New Relic
-                        .put("instrumentation.provider", "micrometer")
-                        .build())
-                .registerMetricReader(
-                    PeriodicMetricReader.builder(
-                            OtlpHttpMetricExporter.builder()
-                                .setEndpoint("https://otlp.nr-data.net/v1/metrics")
-                                .addHeader(
-                                    "api-key",
-                                    Optional.ofNullable(System.getenv("NEW_RELIC_LICENSE_KEY"))
-                                        .filter(str -> !str.isEmpty() && !str.isBlank())
-                                        .orElseThrow())
-                                // IMPORTANT: New Relic requires metrics to be delta temporality
-                                .setAggregationTemporalitySelector(
-                                    AggregationTemporalitySelector.deltaPreferred())
-                                // Use exponential histogram aggregation for histogram instruments
-                                // to
-                                // produce better data and compression
-                                .setDefaultAggregationSelector(
-                                    DefaultAggregationSelector.getDefault()
-                                        .with(
-                                            InstrumentType.HISTOGRAM,
-                                            Aggregation.base2ExponentialBucketHistogram()))
-                                .build())
-                        // Match default micrometer collection interval of 60 seconds
-                        .setInterval(Duration.ofSeconds(60))
-                        .build())
-                .build())
+            meterProvider(
+                PeriodicMetricReader.builder(
+                        metricExporter(
+                            "https://otlp.nr-data.net/v1/metrics",
+                            Map.of(
+                                "api-key",
+                                Optional.ofNullable(System.getenv("NEW_RELIC_LICENSE_KEY"))
+                                    .filter(str -> !str.isEmpty() && !str.isBlank())
+                                    .orElseThrow()),
+                            SPOOL_DIRECTORY,
+                            EXPORT_TIMEOUT))
+                    // Match default micrometer collection interval of 60 seconds
+                    .setInterval(Duration.ofSeconds(60))
+                    .build()))
         .build();
   }
 
   @Bean
   public MeterRegistry meterRegistry(OpenTelemetry openTelemetry) {
-    return OpenTelemetryMeterRegistry.builder(openTelemetry).build();
+    return meterRegistry(
+        openTelemetry,
+        new CardinalityLimitMeterFilter(DEFAULT_CARDINALITY_LIMIT, CARDINALITY_LIMITS, MAX_METERS));
+  }
+
+  /**
+   * Builds the meter provider around {@code metricReader}, with each instrument limited to its
+   * entry in {@link #CARDINALITY_LIMITS}, through a view, or else to {@link
+   * #DEFAULT_CARDINALITY_LIMIT}.
+   */
+  static SdkMeterProvider meterProvider(MetricReader metricReader) {
+    SdkMeterProviderBuilder builder =
+        SdkMeterProvider.builder()
+            .setResource(
+                Resource.getDefault().toBuilder()
+                    .put("service.name", "micrometer-shim")
+                    // Include instrumentation.provider=micrometer to enable micrometer metrics
+                    // experience in New Relic
+                    .put("instrumentation.provider", "micrometer")
+                    .build())
+            .registerMetricReader(metricReader, instrumentType -> DEFAULT_CARDINALITY_LIMIT);
+    CARDINALITY_LIMITS.forEach(
+        (name, limit) ->
+            builder.registerView(
+                InstrumentSelector.builder().setName(name).build(),
+                View.builder().setCardinalityLimit(limit).build()));
+    return builder.build();
+  }
+
+  /**
+   * Builds the exporter that sends metrics to {@code endpoint}, gzipped, and keeps batches that
+   * fail in a segment log in {@code spoolDirectory} until the endpoint is back. Each request is
+   * given up on after {@code timeout}.
+   */
+  static MetricExporter metricExporter(
+      String endpoint, Map<String, String> headers, Path spoolDirectory, Duration timeout)
+      throws IOException {
+    OtlpHttpMetricExporterBuilder builder =
+        OtlpHttpMetricExporter.builder()
+            .setEndpoint(endpoint)
+            .setCompression("gzip")
+            .setTimeout(timeout)
+            // The spool stands in for retries. A retry sent after the spooling exporter has given
+            // up on a batch could deliver it alongside the spooled copy
+            .setRetryPolicy(null)
+            // IMPORTANT: New Relic requires metrics to be delta temporality
+            .setAggregationTemporalitySelector(AggregationTemporalitySelector.deltaPreferred())
+            // Use exponential histogram aggregation for histogram instruments
+            // to produce better data and compression
+            .setDefaultAggregationSelector(
+                DefaultAggregationSelector.getDefault()
+                    .with(InstrumentType.HISTOGRAM, Aggregation.base2ExponentialBucketHistogram()));
+    headers.forEach(builder::addHeader);
+    return new SpoolingMetricExporter(
+        builder.build(),
+        new SegmentLog(spoolDirectory, SPOOL_SEGMENT_BYTES, SPOOL_MAX_BYTES),
+        URI.create(endpoint),
+        headers,
+        timeout);
+  }
+
+  /**
+   * Builds the micrometer registry bridged to {@code openTelemetry}, with {@code filter} bounding
+   * its meters and reporting what it has dropped or folded into overflow series.
+   */
+  static MeterRegistry meterRegistry(
+      OpenTelemetry openTelemetry, CardinalityLimitMeterFilter filter) {
+    MeterRegistry registry = OpenTelemetryMeterRegistry.builder(openTelemetry).build();
+    registry.config().meterFilter(filter);
+    filter.registerMetrics(openTelemetry.getMeter("io.opentelemetry.example.micrometer"));
+    return registry;
   }
 }
@@ -0,0 +1,127 @@
+package io.opentelemetry.example.micrometer;
+
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.config.MeterFilterReply;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounds the series micrometer keeps for each meter. The micrometer registry holds a meter for
+ * every distinct name and tag combination it has seen, for as long as the application runs, and the
+ * OpenTelemetry registry backs each one with its own attribute set. So a meter tagged with
+ * something unbounded, like a user ID, grows the heap and every export without limit, whatever the
+ * SDK's own limit.
+ *
+ * <p>Each meter name keeps the first {@code limit} tag combinations it sees. Any further ones are
+ * recorded into a single overflow series, tagged {@code otel.metric.overflow=true} like the SDK's
+ * own overflow series. Beyond {@code maxMeters} meter names, new meters are dropped.
+ */
+public class CardinalityLimitMeterFilter implements MeterFilter {
+
+  static final String OVERFLOW_TAG = "otel.metric.overflow";
+  private static final Tags OVERFLOW = Tags.of(OVERFLOW_TAG, "true");
+  private static final AttributeKey<String> METRIC_NAME = AttributeKey.stringKey("metric.name");
+
+  private final int defaultLimit;
+  private final Map<String, Integer> limits;
+  private final int maxMeters;
+  private final Map<String, Series> meters = new ConcurrentHashMap<>();
+  private final LongAdder dropped = new LongAdder();
+
+  /**
+   * @param defaultLimit the tag combinations kept for each meter name not in {@code limits}
+   * @param limits the tag combinations kept, by meter name
+   * @param maxMeters the meter names kept
+   */
+  public CardinalityLimitMeterFilter(int defaultLimit, Map<String, Integer> limits, int maxMeters) {
+    this.defaultLimit = defaultLimit;
+    this.limits = limits;
+    this.maxMeters = maxMeters;
+  }
+
+  @Override
+  public Meter.Id map(Meter.Id id) {
+    Series series = series(id.getName());
+    return series == null ? id : series.admit(id);
+  }
+
+  @Override
+  public MeterFilterReply accept(Meter.Id id) {
+    if (series(id.getName()) != null) {
+      return MeterFilterReply.NEUTRAL;
+    }
+    dropped.increment();
+    return MeterFilterReply.DENY;
+  }
+
+  /**
+   * Reports, on {@code meter}, the tag combinations kept and the ones folded into the overflow
+   * series for each meter name, and the meters dropped because there were too many names.
+   */
+  public void registerMetrics(io.opentelemetry.api.metrics.Meter meter) {
+    meter
+        .upDownCounterBuilder("micrometer.cardinality.series")
+        .setDescription("Tag combinations kept for each micrometer meter.")
+        .buildWithCallback(
+            measurement ->
+                meters.forEach(
+                    (name, series) ->
+                        measurement.record(series.ids.size(), Attributes.of(METRIC_NAME, name))));
+    meter
+        .counterBuilder("micrometer.cardinality.overflowed")
+        .setDescription(
+            "Registrations of a micrometer meter with a new tag combination past its limit, which"
+                + " were recorded into its overflow series.")
+        .buildWithCallback(
+            measurement ->
+                meters.forEach(
+                    (name, series) ->
+                        measurement.record(
+                            series.overflowed.sum(), Attributes.of(METRIC_NAME, name))));
+    meter
+        .counterBuilder("micrometer.cardinality.dropped")
+        .setDescription("Registrations of micrometer meters dropped because there were too many.")
+        .buildWithCallback(measurement -> measurement.record(dropped.sum()));
+  }
+
+  /** Returns the series kept for the meter name, or null if there are too many names to add it. */
+  private Series series(String name) {
+    Series series = meters.get(name);
+    if (series == null && meters.size() < maxMeters) {
+      series =
+          meters.computeIfAbsent(name, key -> new Series(limits.getOrDefault(key, defaultLimit)));
+    }
+    return series;
+  }
+
+  private static final class Series {
+
+    final int limit;
+    final Set<Meter.Id> ids = ConcurrentHashMap.newKeySet();
+    final LongAdder overflowed = new LongAdder();
+
+    Series(int limit) {
+      this.limit = limit;
+    }
+
+    Meter.Id admit(Meter.Id id) {
+      if (ids.contains(id)) {
+        return id;
+      }
+      synchronized (this) {
+        if (ids.size() < limit) {
+          ids.add(id);
+          return id;
+        }
+      }
+      overflowed.increment();
+      return id.replaceTags(OVERFLOW);
+    }
+  }
+}
@@ -0,0 +1,217 @@
+package io.opentelemetry.example.micrometer;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A first-in, first-out queue of byte records kept on disk. Records are appended to the newest of a
+ * series of fixed-size segment files and read from the oldest, each file memory-mapped while it is
+ * in use. A segment is deleted once it has been read. The total size is capped: when a new segment
+ * would pass the cap, the oldest one is deleted, unread records and all, and those records are
+ * counted as dropped.
+ *
+ * <p>Each segment starts with its write and read positions, so records that have not been read
+ * survive a restart and are read from where they were left. Every change is forced to disk before
+ * the call returns.
+ */
+final class SegmentLog {
+
+  private static final String SUFFIX = ".segment";
+  // The write position, then the read position
+  private static final int HEADER_BYTES = 8;
+
+  private final Path directory;
+  private final int segmentBytes;
+  private final int maxSegments;
+  private final Deque<Segment> segments = new ArrayDeque<>();
+  private long nextSequence;
+  private long dropped;
+
+  /**
+   * Opens the log in {@code directory}, creating it if needed, and picks up any segments left
+   * there.
+   *
+   * @param segmentBytes the size of each segment file, which bounds the size of a record
+   * @param maxBytes the most the segments may take up together
+   */
+  SegmentLog(Path directory, int segmentBytes, long maxBytes) throws IOException {
+    if (segmentBytes <= HEADER_BYTES + 4 || maxBytes < segmentBytes) {
+      throw new IllegalArgumentException(
+          "segmentBytes must hold a record and fit in maxBytes: " + segmentBytes + ", " + maxBytes);
+    }
+    this.directory = directory;
+    this.segmentBytes = segmentBytes;
+    this.maxSegments = (int) Math.min(Integer.MAX_VALUE, maxBytes / segmentBytes);
+    Files.createDirectories(directory);
+    List<Path> existing;
+    try (Stream<Path> files = Files.list(directory)) {
+      existing =
+          files
+              .filter(file -> file.getFileName().toString().endsWith(SUFFIX))
+              .sorted()
+              .collect(Collectors.toList());
+    }
+    for (Path file : existing) {
+      String name = file.getFileName().toString();
+      nextSequence =
+          Math.max(
+              nextSequence, Long.parseLong(name.substring(0, name.length() - SUFFIX.length())) + 1);
+      Segment segment = new Segment(file, segmentBytes);
+      if (segment.unread == 0) {
+        segment.delete();
+      } else {
+        segments.addLast(segment);
+      }
+    }
+  }
+
+  /**
+   * Appends {@code record}, first deleting the oldest segment if a new one would pass the size cap.
+   *
+   * @throws IllegalArgumentException if the record does not fit in a segment
+   */
+  synchronized void append(byte[] record) throws IOException {
+    if (4 + record.length > segmentBytes - HEADER_BYTES) {
+      throw new IllegalArgumentException(
+          "A "
+              + record.length
+              + " byte record does not fit in a "
+              + segmentBytes
+              + " byte segment");
+    }
+    Segment newest = segments.peekLast();
+    if (newest == null || !newest.fits(record.length)) {
+      if (segments.size() >= maxSegments) {
+        Segment oldest = segments.removeFirst();
+        dropped += oldest.unread;
+        oldest.delete();
+      }
+      newest =
+          new Segment(
+              directory.resolve(String.format("%019d%s", nextSequence++, SUFFIX)), segmentBytes);
+      segments.addLast(newest);
+    }
+    newest.append(record);
+  }
+
+  /** Returns the oldest record that has not been removed, or null if there is none. */
+  synchronized byte[] peek() {
+    Segment oldest = segments.peekFirst();
+    return oldest == null ? null : oldest.peek();
+  }
+
+  /** Removes the oldest record, the one {@link #peek()} returns. */
+  synchronized void remove() throws IOException {
+    Segment oldest = segments.peekFirst();
+    if (oldest == null) {
+      return;
+    }
+    oldest.remove();
+    if (oldest.unread == 0) {
+      segments.removeFirst();
+      oldest.delete();
+    }
+  }
+
+  synchronized boolean isEmpty() {
+    return segments.isEmpty();
+  }
+
+  /** The number of records waiting to be read. */
+  synchronized long size() {
+    return segments.stream().mapToLong(segment -> segment.unread).sum();
+  }
+
+  /** The number of records deleted unread to keep within the size cap. */
+  synchronized long dropped() {
+    return dropped;
+  }
+
+  /** One segment file, mapped into memory. Each record is its length, then its bytes. */
+  private static final class Segment {
+
+    private final Path file;
+    private final MappedByteBuffer buffer;
+    private int writePosition;
+    private int readPosition;
+    int unread;
+
+    Segment(Path file, int segmentBytes) throws IOException {
+      this.file = file;
+      try (FileChannel channel =
+          FileChannel.open(
+              file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+        // The mapping stays valid after the channel is closed
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+      }
+      writePosition = buffer.getInt(0);
+      readPosition = buffer.getInt(4);
+      if (writePosition < HEADER_BYTES
+          || writePosition > segmentBytes
+          || readPosition < HEADER_BYTES
+          || readPosition > writePosition) {
+        // A new file, or one whose header cannot be trusted
+        writePosition = HEADER_BYTES;
+        readPosition = HEADER_BYTES;
+        writeHeader();
+      }
+      for (int position = readPosition; position < writePosition; ) {
+        int length = buffer.getInt(position);
+        if (length < 0 || position + 4 + length > writePosition) {
+          // A record cut short; keep the ones before it
+          writePosition = position;
+          writeHeader();
+          break;
+        }
+        position += 4 + length;
+        unread++;
+      }
+    }
+
+    boolean fits(int length) {
+      return writePosition + 4 + length <= buffer.capacity();
+    }
+
+    void append(byte[] record) {
+      buffer.putInt(writePosition, record.length);
+      buffer.put(writePosition + 4, record);
+      writePosition += 4 + record.length;
+      writeHeader();
+      unread++;
+    }
+
+    byte[] peek() {
+      if (unread == 0) {
+        return null;
+      }
+      byte[] record = new byte[buffer.getInt(readPosition)];
+      buffer.get(readPosition + 4, record);
+      return record;
+    }
+
+    void remove() {
+      readPosition += 4 + buffer.getInt(readPosition);
+      writeHeader();
+      unread--;
+    }
+
+    void delete() throws IOException {
+      Files.deleteIfExists(file);
+    }
+
+    private void writeHeader() {
+      buffer.putInt(0, writePosition);
+      buffer.putInt(4, readPosition);
+      buffer.force();
+    }
+  }
+}
@@ -0,0 +1,220 @@
+package io.opentelemetry.example.micrometer;
+
+import io.opentelemetry.exporter.internal.FailedExportException;
+import io.opentelemetry.exporter.internal.otlp.metrics.MetricsRequestMarshaler;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.common.export.MemoryMode;
+import io.opentelemetry.sdk.metrics.Aggregation;
+import io.opentelemetry.sdk.metrics.InstrumentType;
+import io.opentelemetry.sdk.metrics.data.AggregationTemporality;
+import io.opentelemetry.sdk.metrics.data.MetricData;
+import io.opentelemetry.sdk.metrics.export.MetricExporter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.net.http.HttpClient;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Keeps the metrics {@code delegate} fails to export instead of losing them. With delta
+ * temporality, each export is the only copy of its interval's data, so a batch that cannot be sent
+ * is written to {@code spool} as a gzipped OTLP request, and batches after it are queued behind it.
+ * Each export first replays the spool, oldest first, posting the stored requests to {@code
+ * endpoint} itself, and only sends its own batch through the delegate once the spool is empty. So
+ * the backend receives the intervals in order.
+ *
+ * <p>A batch is spooled only when it definitely did not arrive: the endpoint answered with an error
+ * status, or no connection could be made. When the outcome is unknown, for instance because the
+ * endpoint accepted the request but did not answer in time, sending it again could count its delta
+ * data twice, so it is reported as failed and not resent; the same goes for a replayed request. So
+ * each interval arrives at most once, and exactly once unless the endpoint stops answering requests
+ * it has read. The delegate must not retry on its own, or a retry it sends after giving up here
+ * could arrive as well.
+ *
+ * <p>A stored request the endpoint rejects outright, with a 4xx status other than 408 or 429, is
+ * logged and dropped, since sending it again would not help.
+ */
+final class SpoolingMetricExporter implements MetricExporter {
+
+  private static final Logger logger = Logger.getLogger(SpoolingMetricExporter.class.getName());
+
+  private final MetricExporter delegate;
+  private final SegmentLog spool;
+  private final URI endpoint;
+  private final Map<String, String> headers;
+  private final Duration timeout;
+  private final HttpClient client;
+
+  /**
+   * @param delegate the exporter that sends new batches, with retries off and {@code timeout} as
+   *     its own timeout
+   * @param endpoint the OTLP HTTP metrics endpoint the delegate sends to
+   * @param headers the headers the delegate sends, such as the api key
+   * @param timeout how long to wait for an export or a replayed request before treating it as
+   *     failed
+   */
+  SpoolingMetricExporter(
+      MetricExporter delegate,
+      SegmentLog spool,
+      URI endpoint,
+      Map<String, String> headers,
+      Duration timeout) {
+    this.delegate = delegate;
+    this.spool = spool;
+    this.endpoint = endpoint;
+    this.headers = headers;
+    this.timeout = timeout;
+    this.client = HttpClient.newBuilder().connectTimeout(timeout).build();
+  }
+
+  @Override
+  public synchronized CompletableResultCode export(Collection<MetricData> metrics) {
+    if (replay()) {
+      // The delegate gives up after the timeout itself; waiting longer only guards against a
+      // sender that does not
+      CompletableResultCode result =
+          delegate.export(metrics).join(timeout.toMillis() * 2, TimeUnit.MILLISECONDS);
+      if (result.isSuccess()) {
+        return result;
+      }
+      if (!result.isDone() || !neverArrived(result.getFailureThrowable())) {
+        logger.log(
+            Level.WARNING,
+            "Export of "
+                + metrics.size()
+                + " metrics got no answer; not spooling them, since the endpoint may have them",
+            result.getFailureThrowable());
+        return CompletableResultCode.ofFailure();
+      }
+    }
+    try {
+      spool.append(gzippedRequest(metrics));
+      return CompletableResultCode.ofSuccess();
+    } catch (IOException | IllegalArgumentException e) {
+      logger.log(Level.WARNING, "Failed to spool " + metrics.size() + " metrics, dropping them", e);
+      return CompletableResultCode.ofFailure();
+    }
+  }
+
+  /**
+   * Sends the spooled requests, oldest first, until one fails. A request that gets no answer is
+   * removed rather than sent again, since the endpoint may have it.
+   *
+   * @return whether the spool is empty
+   */
+  private boolean replay() {
+    try {
+      for (byte[] request = spool.peek(); request != null; request = spool.peek()) {
+        int status;
+        try {
+          status = post(request);
+        } catch (IOException e) {
+          if (neverArrived(e)) {
+            logger.log(Level.FINE, "Failed to replay spooled metrics", e);
+          } else {
+            logger.log(
+                Level.WARNING,
+                "A spooled metrics request got no answer; dropping it, "
+                    + "since the endpoint may have it",
+                e);
+            spool.remove();
+          }
+          return false;
+        }
+        if (status >= 400 && status < 500 && status != 408 && status != 429) {
+          logger.warning("Dropping a spooled metrics request the endpoint rejected: " + status);
+        } else if (status < 200 || status >= 300) {
+          return false;
+        }
+        spool.remove();
+      }
+      return true;
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Failed to read the metrics spool", e);
+      return false;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  private int post(byte[] request) throws IOException, InterruptedException {
+    HttpRequest.Builder builder =
+        HttpRequest.newBuilder(endpoint)
+            .timeout(timeout)
+            .header("Content-Type", "application/x-protobuf")
+            .header("Content-Encoding", "gzip")
+            .POST(HttpRequest.BodyPublishers.ofByteArray(request));
+    headers.forEach(builder::header);
+    return client.send(builder.build(), HttpResponse.BodyHandlers.discarding()).statusCode();
+  }
+
+  /**
+   * Returns whether {@code failure} shows that a request did not reach the endpoint: it answered
+   * with an error status, or no connection was made. Any other failure, such as a timeout waiting
+   * for the answer, leaves open whether it arrived.
+   */
+  private static boolean neverArrived(Throwable failure) {
+    if (failure instanceof FailedExportException exportFailure
+        && exportFailure.failedWithResponse()) {
+      return true;
+    }
+    for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+      if (cause instanceof ConnectException
+          || cause instanceof NoRouteToHostException
+          || cause instanceof UnknownHostException
+          || cause instanceof HttpConnectTimeoutException) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Serializes {@code metrics} as an OTLP export request, the way the delegate would send it. */
+  private static byte[] gzippedRequest(Collection<MetricData> metrics) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+      MetricsRequestMarshaler.create(metrics).writeBinaryTo(gzip);
+    }
+    return bytes.toByteArray();
+  }
+
+  @Override
+  public AggregationTemporality getAggregationTemporality(InstrumentType instrumentType) {
+    return delegate.getAggregationTemporality(instrumentType);
+  }
+
+  @Override
+  public Aggregation getDefaultAggregation(InstrumentType instrumentType) {
+    return delegate.getDefaultAggregation(instrumentType);
+  }
+
+  @Override
+  public MemoryMode getMemoryMode() {
+    return delegate.getMemoryMode();
+  }
+
+  @Override
+  public CompletableResultCode flush() {
+    return delegate.flush();
+  }
+
+  @Override
+  public synchronized CompletableResultCode shutdown() {
+    // Give the backlog a last chance; what is left stays on disk for the next start
+    replay();
+    return delegate.shutdown();
+  }
+}
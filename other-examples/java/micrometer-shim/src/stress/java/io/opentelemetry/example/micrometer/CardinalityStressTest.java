@@ -0,0 +1,153 @@
+package io.opentelemetry.example.micrometer;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.instrumentation.micrometer.v1_5.OpenTelemetryMeterRegistry;
+import io.opentelemetry.sdk.OpenTelemetrySdk;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.metrics.Aggregation;
+import io.opentelemetry.sdk.metrics.InstrumentType;
+import io.opentelemetry.sdk.metrics.SdkMeterProvider;
+import io.opentelemetry.sdk.metrics.data.AggregationTemporality;
+import io.opentelemetry.sdk.metrics.data.MetricData;
+import io.opentelemetry.sdk.metrics.data.PointData;
+import io.opentelemetry.sdk.metrics.export.MetricExporter;
+import io.opentelemetry.sdk.metrics.export.PeriodicMetricReader;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Registers a {@code dowork.time} timer with a new {@code user.id} tag value for every recording,
+ * the way a badly tagged {@code @Timed} method would, for VALUES (default 1,000,000) distinct
+ * values. It runs twice. The first run has the application's cardinality limits. The second has the
+ * setup from before the limits, with the SDK's built-in limit and no micrometer filter. Metrics are
+ * exported with delta temporality every second, as the application does every 60 seconds.
+ *
+ * <p>Every 100,000 values it prints the heap in use after a full GC, the meters in the micrometer
+ * registry, and the data points and overflow points in the last export. A run stops early if the
+ * heap passes 80% of its maximum.
+ *
+ * <p>Run from the java root with: ./gradlew :micrometer-shim:cardinalityStressTest
+ */
+public class CardinalityStressTest {
+
+  private static final int REPORT_EVERY = 100_000;
+
+  private static final Logger QUIET = Logger.getLogger("io.opentelemetry.sdk.metrics.internal");
+
+  public static void main(String[] args) throws Exception {
+    int values = Integer.parseInt(System.getenv().getOrDefault("VALUES", "1000000"));
+    // The SDK warns when an instrument passes its cardinality limit; the overflow points are
+    // reported instead
+    QUIET.setLevel(Level.OFF);
+    run("limited", values, true);
+    run("unlimited", values, false);
+  }
+
+  private static void run(String name, int values, boolean limited) throws InterruptedException {
+    CountingExporter exporter = new CountingExporter();
+    PeriodicMetricReader metricReader =
+        PeriodicMetricReader.builder(exporter).setInterval(Duration.ofSeconds(1)).build();
+    SdkMeterProvider meterProvider =
+        limited
+            ? Application.meterProvider(metricReader)
+            : SdkMeterProvider.builder().registerMetricReader(metricReader).build();
+    OpenTelemetrySdk openTelemetry =
+        OpenTelemetrySdk.builder().setMeterProvider(meterProvider).build();
+    MeterRegistry registry =
+        limited
+            ? Application.meterRegistry(
+                openTelemetry,
+                new CardinalityLimitMeterFilter(
+                    Application.DEFAULT_CARDINALITY_LIMIT,
+                    Application.CARDINALITY_LIMITS,
+                    Application.MAX_METERS))
+            : OpenTelemetryMeterRegistry.builder(openTelemetry).build();
+
+    System.out.printf("%s: %d distinct user.id values%n", name, values);
+    System.out.printf(
+        "%9s %9s %9s %12s %15s%n", "values", "heap MB", "meters", "last export", "overflow points");
+    long maxHeap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getMax();
+    for (int i = 1; i <= values; i++) {
+      Timer.builder("dowork.time")
+          .tag("user.id", Integer.toString(i))
+          .register(registry)
+          .record(i % 1000, TimeUnit.MILLISECONDS);
+      if (i % REPORT_EVERY == 0) {
+        System.gc();
+        long heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        System.out.printf(
+            "%9d %9.1f %9d %12d %15d%n",
+            i, heap / 1e6, registry.getMeters().size(), exporter.points, exporter.overflowPoints);
+        if (heap > maxHeap * 0.8) {
+          System.out.printf("stopped: the heap is over 80%% of its %.0f MB%n", maxHeap / 1e6);
+          break;
+        }
+      }
+    }
+    registry.close();
+    meterProvider.shutdown().join(10, TimeUnit.SECONDS);
+    System.out.println();
+  }
+
+  /**
+   * Exports with delta temporality and exponential histograms, like the application's exporter, and
+   * counts the data points in each export.
+   */
+  private static final class CountingExporter implements MetricExporter {
+
+    private static final AttributeKey<Boolean> SDK_OVERFLOW =
+        AttributeKey.booleanKey(CardinalityLimitMeterFilter.OVERFLOW_TAG);
+    private static final AttributeKey<String> FILTER_OVERFLOW =
+        AttributeKey.stringKey(CardinalityLimitMeterFilter.OVERFLOW_TAG);
+
+    volatile long points;
+    volatile long overflowPoints;
+
+    @Override
+    public CompletableResultCode export(Collection<MetricData> metrics) {
+      long points = 0;
+      long overflowPoints = 0;
+      for (MetricData metric : metrics) {
+        for (PointData point : metric.getData().getPoints()) {
+          points++;
+          Attributes attributes = point.getAttributes();
+          if (attributes.get(SDK_OVERFLOW) != null || attributes.get(FILTER_OVERFLOW) != null) {
+            overflowPoints++;
+          }
+        }
+      }
+      this.points = points;
+      this.overflowPoints = overflowPoints;
+      return CompletableResultCode.ofSuccess();
+    }
+
+    @Override
+    public AggregationTemporality getAggregationTemporality(InstrumentType instrumentType) {
+      return AggregationTemporality.DELTA;
+    }
+
+    @Override
+    public Aggregation getDefaultAggregation(InstrumentType instrumentType) {
+      return instrumentType == InstrumentType.HISTOGRAM
+          ? Aggregation.base2ExponentialBucketHistogram()
+          : Aggregation.defaultAggregation();
+    }
+
+    @Override
+    public CompletableResultCode flush() {
+      return CompletableResultCode.ofSuccess();
+    }
+
+    @Override
+    public CompletableResultCode shutdown() {
+      return CompletableResultCode.ofSuccess();
+    }
+  }
+}
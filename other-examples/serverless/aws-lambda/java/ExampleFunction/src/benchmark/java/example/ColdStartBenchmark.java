@@ -0,0 +1,146 @@
+package example;
+
+import ch.qos.logback.classic.Level;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.sun.net.httpserver.HttpServer;
+
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Measures cold starts by launching a fresh JVM per run, for each PRIMING mode. Each child process
+ * loads the handler and invokes it twice against the local stub from {@link WarmInvocationBenchmark}.
+ * It reports three times:
+ *
+ * <ul>
+ *   <li>init: JVM start until the handler class is initialized, which is Lambda's init phase;</li>
+ *   <li>first: the first invocation, which a user waits for after init;</li>
+ *   <li>second: the next, warm invocation, for reference.</li>
+ * </ul>
+ *
+ * Every invocation includes the 2.5 s the handler's custom spans sleep for, so first minus second
+ * is the cold-start penalty the user sees on top of a warm invocation.
+ *
+ * With PRIMING=init the priming work is added to init and removed from the first invocation. With
+ * SnapStart and PRIMING=checkpoint it is paid once, when the version is published: a restored
+ * environment skips init and starts with the first-invocation time of the init row. A local JVM
+ * has no snapshots, so that mode is not run here.
+ *
+ * The child inherits this process's environment, so e.g. JAVA_TOOL_OPTIONS=-javaagent:... adds an
+ * OTel agent. RUNS (default 5) sets the runs per mode, and the medians are reported.
+ *
+ * Run with: ./gradlew coldStartBenchmark
+ */
+public class ColdStartBenchmark {
+
+    private static final String RESULT = "COLD_START_RESULT";
+    private static final List<String> MODES = List.of("none", "init");
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("child")) {
+            child();
+            return;
+        }
+        int runs = Integer.parseInt(System.getenv().getOrDefault("RUNS", "5"));
+        HttpServer stub = WarmInvocationBenchmark.startStub(0);
+        String endpoint = "http://127.0.0.1:" + stub.getAddress().getPort();
+        try {
+            System.out.printf("%d cold starts per mode, medians%n", runs);
+            System.out.printf("%-10s %9s %9s %9s %16s%n", "PRIMING", "init ms", "first ms", "second ms", "first-second ms");
+            for (String mode : MODES) {
+                double[][] results = new double[4][runs];
+                for (int run = 0; run < runs; run++) {
+                    double[] result = launch(mode, endpoint);
+                    for (int i = 0; i < result.length; i++) {
+                        results[i][run] = result[i];
+                    }
+                    results[3][run] = result[1] - result[2];
+                }
+                System.out.printf("%-10s %9.1f %9.1f %9.1f %16.1f%n", mode,
+                        median(results[0]), median(results[1]), median(results[2]), median(results[3]));
+            }
+        } finally {
+            stub.stop(0);
+        }
+    }
+
+    private static double[] launch(String mode, String endpoint) throws Exception {
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        ProcessBuilder builder = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                ColdStartBenchmark.class.getName(), "child");
+        Map<String, String> env = builder.environment();
+        env.put("PRIMING", mode);
+        env.put("IP_LOOKUP_URL", endpoint + "/ip");
+        env.put("S3_ENDPOINT", endpoint);
+        env.put("DYNAMODB_ENDPOINT", endpoint);
+        env.put("DYNAMODB_TABLE", "example");
+        env.put("AWS_REGION", "us-east-1");
+        env.put("AWS_ACCESS_KEY_ID", "stub");
+        env.put("AWS_SECRET_ACCESS_KEY", "stub");
+        builder.redirectErrorStream(true);
+        Process process = builder.start();
+        double[] result = null;
+        StringBuilder output = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(RESULT)) {
+                    result = Arrays.stream(line.substring(RESULT.length()).trim().split(" "))
+                            .mapToDouble(Double::parseDouble).toArray();
+                } else {
+                    output.append(line).append('\n');
+                }
+            }
+        }
+        if (process.waitFor() != 0 || result == null) {
+            throw new IllegalStateException("Cold start run failed:\n" + output);
+        }
+        return result;
+    }
+
+    /** Runs in the child JVM: initialize the handler, invoke it twice and print the timings. */
+    private static void child() throws Exception {
+        // The SDK logs every request at DEBUG with logback's default configuration
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        // Initializing App runs its static initializer, including any PRIMING=init work
+        Class.forName("example.App");
+        App app = new App();
+        double init = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+
+        long start = System.nanoTime();
+        int status = app.handleRequest(new APIGatewayProxyRequestEvent(), null).getStatusCode();
+        double first = (System.nanoTime() - start) / 1e6;
+        start = System.nanoTime();
+        app.handleRequest(new APIGatewayProxyRequestEvent(), null);
+        double second = (System.nanoTime() - start) / 1e6;
+
+        System.setOut(out);
+        if (status != 200) {
+            throw new IllegalStateException("Invocation returned " + status);
+        }
+        System.out.printf("%s %.1f %.1f %.1f%n", RESULT, init, first, second);
+        // The shared clients' non-daemon threads would otherwise keep the JVM alive
+        System.exit(0);
+    }
+
+    private static double median(double[] values) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
@@ -0,0 +1,215 @@
+package example;
+
+import ch.qos.logback.classic.Level;
+
+import com.sun.net.httpserver.HttpServer;
+
+import io.opentelemetry.api.GlobalOpenTelemetry;
+import io.opentelemetry.api.metrics.GlobalMeterProvider;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Scope;
+import io.opentelemetry.exporter.otlp.http.metrics.OtlpHttpMetricExporter;
+import io.opentelemetry.exporter.otlp.http.trace.OtlpHttpSpanExporter;
+import io.opentelemetry.sdk.OpenTelemetrySdk;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.metrics.SdkMeterProvider;
+import io.opentelemetry.sdk.metrics.export.PeriodicMetricReader;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.export.BatchSpanProcessor;
+
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Times the response path of invocations that end with a telemetry flush, as the OTel Lambda layer
+ * does after every invocation, against a local OTLP stub that delays its responses.
+ *
+ * Each invocation runs {@link App#callDownstream} inside a SERVER span, so it produces that span,
+ * the OkHttp client span and a queueSizeChange data point. Then, like the layer's agent, it
+ * flushes the tracer and meter providers together and waits on both. Two waits are compared:
+ *
+ * <ul>
+ *   <li>unbounded: wait until both exports finish, so every stub delay is on the response path;</li>
+ *   <li>budget: stop waiting after FLUSH_BUDGET_MS. That is what the layer's
+ *       OTEL_INSTRUMENTATION_AWS_LAMBDA_FLUSH_TIMEOUT does. An export still running when the
+ *       budget runs out keeps its data, and unexported spans stay queued in the batch processor.
+ *       Both are carried into the next invocation's flush instead of being dropped.</li>
+ * </ul>
+ *
+ * The stub delays every OTLP request by STUB_DELAY_MS (default 50). Every SLOW_EVERY-th request
+ * (default 50) instead takes SLOW_DELAY_MS (default 1000), standing in for a slow collector or
+ * backend. After each mode a final unbounded flush drains what was carried over. The check then
+ * compares the number of invocation spans the stub received with the number created, so nothing
+ * was lost.
+ *
+ * Run with: ./gradlew flushBudgetBenchmark
+ */
+public class FlushBudgetBenchmark {
+
+    private static final int WARMUP = 20;
+    private static final int INVOCATIONS = 200;
+    private static final String TABLE = "example";
+    // Unique bytes to count in the OTLP payloads; every exported invocation span carries its name once
+    private static final String SPAN_NAME = "flush-budget-invocation";
+    private static final long UNBOUNDED_MS = TimeUnit.MINUTES.toMillis(1);
+
+    private static final AtomicLong receivedSpans = new AtomicLong();
+    private static final AtomicInteger otlpRequests = new AtomicInteger();
+
+    public static void main(String[] args) throws Exception {
+        // The SDK logs every request at DEBUG with logback's default configuration
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+        System.setProperty("aws.region", "us-east-1");
+        System.setProperty("aws.accessKeyId", "stub");
+        System.setProperty("aws.secretAccessKey", "stub");
+
+        long budgetMs = Long.parseLong(System.getenv().getOrDefault("FLUSH_BUDGET_MS", "100"));
+        long delayMs = Long.parseLong(System.getenv().getOrDefault("STUB_DELAY_MS", "50"));
+        int slowEvery = Integer.parseInt(System.getenv().getOrDefault("SLOW_EVERY", "50"));
+        long slowDelayMs = Long.parseLong(System.getenv().getOrDefault("SLOW_DELAY_MS", "1000"));
+
+        HttpServer downstream = WarmInvocationBenchmark.startStub(0);
+        HttpServer otlp = startOtlpStub(delayMs, slowEvery, slowDelayMs);
+        String otlpEndpoint = "http://127.0.0.1:" + otlp.getAddress().getPort();
+
+        // Exports only happen when flushed, as in a Lambda environment that is frozen between invocations
+        SdkTracerProvider tracerProvider = SdkTracerProvider.builder()
+                .addSpanProcessor(BatchSpanProcessor.builder(
+                                OtlpHttpSpanExporter.builder().setEndpoint(otlpEndpoint + "/v1/traces").build())
+                        .setScheduleDelay(Duration.ofHours(1))
+                        .build())
+                .build();
+        SdkMeterProvider meterProvider = SdkMeterProvider.builder()
+                .registerMetricReader(PeriodicMetricReader.builder(
+                                OtlpHttpMetricExporter.builder().setEndpoint(otlpEndpoint + "/v1/metrics").build())
+                        .setInterval(Duration.ofHours(1))
+                        .newMetricReaderFactory())
+                .build();
+        // Must happen before App is loaded, since it resolves its tracer and meter statically
+        GlobalOpenTelemetry.set(OpenTelemetrySdk.builder().setTracerProvider(tracerProvider).build());
+        GlobalMeterProvider.set(meterProvider);
+        Tracer tracer = GlobalOpenTelemetry.getTracer("flush-budget-benchmark");
+
+        URI endpoint = URI.create("http://127.0.0.1:" + downstream.getAddress().getPort());
+        App app = new App();
+        PrintStream out = System.out;
+        try (Clients clients = Clients.create(endpoint, endpoint)) {
+            System.out.printf("%d invocations each; OTLP stub delay %d ms, every %d request %d ms%n",
+                    INVOCATIONS, delayMs, slowEvery, slowDelayMs);
+            System.out.printf("%-14s %8s %8s %8s %8s %10s %9s%n",
+                    "flush wait", "p50 ms", "p90 ms", "p99 ms", "max ms", "cut off", "delivered");
+            for (long waitMs : new long[] {UNBOUNDED_MS, budgetMs}) {
+                // The handler prints every step; keep the report readable
+                System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+                long[] nanos = new long[INVOCATIONS];
+                int cutOff = 0;
+                for (int i = -WARMUP; i < INVOCATIONS; i++) {
+                    if (i == 0) {
+                        flush(tracerProvider, meterProvider, UNBOUNDED_MS);
+                        receivedSpans.set(0);
+                        otlpRequests.set(0);
+                    }
+                    long start = System.nanoTime();
+                    Span span = tracer.spanBuilder(SPAN_NAME).setSpanKind(SpanKind.SERVER).startSpan();
+                    try (Scope ignored = span.makeCurrent()) {
+                        app.callDownstream(clients, endpoint + "/ip", TABLE);
+                    } finally {
+                        span.end();
+                    }
+                    boolean done = flush(tracerProvider, meterProvider, waitMs);
+                    if (i >= 0) {
+                        nanos[i] = System.nanoTime() - start;
+                        cutOff += done ? 0 : 1;
+                    }
+                }
+                // What is still queued or in flight is exported by a later invocation's flush
+                flush(tracerProvider, meterProvider, UNBOUNDED_MS);
+                System.setOut(out);
+                report(waitMs == UNBOUNDED_MS ? "unbounded" : "budget " + budgetMs + "ms", nanos, cutOff,
+                        receivedSpans.get() + "/" + INVOCATIONS);
+            }
+        } finally {
+            System.setOut(out);
+            tracerProvider.shutdown().join(10, TimeUnit.SECONDS);
+            meterProvider.shutdown().join(10, TimeUnit.SECONDS);
+            downstream.stop(0);
+            otlp.stop(0);
+        }
+    }
+
+    /**
+     * Flushes both signals in parallel and waits up to {@code waitMs}; returns whether both
+     * finished in time. A flush that is not done keeps running and is not cancelled.
+     */
+    private static boolean flush(SdkTracerProvider tracerProvider, SdkMeterProvider meterProvider, long waitMs) {
+        CompletableResultCode result = CompletableResultCode.ofAll(
+                Arrays.asList(tracerProvider.forceFlush(), meterProvider.forceFlush()));
+        return result.join(waitMs, TimeUnit.MILLISECONDS).isDone();
+    }
+
+    private static void report(String mode, long[] nanos, int cutOff, String delivered) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        System.out.printf("%-14s %8.2f %8.2f %8.2f %8.2f %10d %9s%n", mode,
+                sorted[sorted.length / 2] / 1e6, sorted[sorted.length * 9 / 10] / 1e6,
+                sorted[sorted.length * 99 / 100] / 1e6, sorted[sorted.length - 1] / 1e6, cutOff, delivered);
+    }
+
+    /** Accepts OTLP/HTTP exports, counting exported invocation spans, after an injected delay. */
+    private static HttpServer startOtlpStub(long delayMs, int slowEvery, long slowDelayMs) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "otlp-stub");
+            thread.setDaemon(true);
+            return thread;
+        }));
+        byte[] spanName = SPAN_NAME.getBytes(StandardCharsets.UTF_8);
+        server.createContext("/", exchange -> {
+            try {
+                byte[] body = exchange.getRequestBody().readAllBytes();
+                int request = otlpRequests.incrementAndGet();
+                Thread.sleep(slowEvery > 0 && request % slowEvery == 0 ? slowDelayMs : delayMs);
+                if (exchange.getRequestURI().getPath().equals("/v1/traces")) {
+                    receivedSpans.addAndGet(count(body, spanName));
+                }
+                exchange.getResponseHeaders().set("Content-Type", "application/x-protobuf");
+                exchange.sendResponseHeaders(200, -1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                exchange.close();
+            }
+        });
+        server.start();
+        return server;
+    }
+
+    private static int count(byte[] haystack, byte[] needle) {
+        int count = 0;
+        outer:
+        for (int i = 0; i <= haystack.length - needle.length; i++) {
+            for (int j = 0; j < needle.length; j++) {
+                if (haystack[i + j] != needle[j]) {
+                    continue outer;
+                }
+            }
+            count++;
+            i += needle.length - 1;
+        }
+        return count;
+    }
+}
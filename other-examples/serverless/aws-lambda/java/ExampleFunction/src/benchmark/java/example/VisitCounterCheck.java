@@ -0,0 +1,251 @@
+package example;
+
+import ch.qos.logback.classic.Level;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.slf4j.LoggerFactory;
+
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeAction;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValueUpdate;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Runs the visit counter from many concurrent "containers" against an in-process DynamoDB stand-in
+ * that keeps real item state, and checks the stored count against the number of invocations. Each
+ * container is one thread with its own clients, invoking sequentially as a Lambda instance does,
+ * and every container counts visits for the same IP. Three ways of counting are compared:
+ *
+ * <ul>
+ *   <li>read-modify-write: GetItem, then UpdateItem with a PUT of count + 1 or PutItem for a new
+ *       item, as the handler used to do;</li>
+ *   <li>atomic: one UpdateItem with {@code ADD #count :n} per invocation ({@link VisitCounter}
+ *       without coalescing);</li>
+ *   <li>coalesced: increments batched per container for COALESCE_MS and flushed as one ADD, with a
+ *       final flush when each container stops.</li>
+ * </ul>
+ *
+ * STUB_LATENCY_MS (default 2) is added to every stub response to stand in for the network round
+ * trip; CONTAINERS (default 8) and INVOCATIONS (default 200, per container) size the run, and
+ * INTERVAL_MS (default 1) spaces each container's invocations so that coalescing windows elapse.
+ *
+ * Run with: ./gradlew visitCounterCheck
+ */
+public class VisitCounterCheck {
+
+    private static final String TABLE = "example";
+    private static final String IP = "203.0.113.7";
+
+    private static final Pattern KEY_IP = Pattern.compile("\"ip\":\\{\"S\":\"([^\"]*)\"\\}");
+    private static final Pattern ADD_VALUE = Pattern.compile("\":n\":\\{\"N\":\"(\\d+)\"\\}");
+    private static final Pattern COUNT_VALUE = Pattern.compile("\"count\":\\{(?:\"Value\":\\{|\"Action\":\"PUT\",\"Value\":\\{)?\"N\":\"(\\d+)\"");
+
+    private final int containers;
+    private final int invocations;
+    private final long intervalMs;
+    private final Map<String, Long> items = new ConcurrentHashMap<>();
+    private final AtomicLong requests = new AtomicLong();
+
+    private VisitCounterCheck(int containers, int invocations, long intervalMs) {
+        this.containers = containers;
+        this.invocations = invocations;
+        this.intervalMs = intervalMs;
+    }
+
+    public static void main(String[] args) throws Exception {
+        // The SDK logs every request at DEBUG with logback's default configuration
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+        System.setProperty("aws.region", "us-east-1");
+        System.setProperty("aws.accessKeyId", "stub");
+        System.setProperty("aws.secretAccessKey", "stub");
+
+        long stubLatencyMs = Long.parseLong(System.getenv().getOrDefault("STUB_LATENCY_MS", "2"));
+        int containers = Integer.parseInt(System.getenv().getOrDefault("CONTAINERS", "8"));
+        int invocations = Integer.parseInt(System.getenv().getOrDefault("INVOCATIONS", "200"));
+        long coalesceMs = Long.parseLong(System.getenv().getOrDefault("COALESCE_MS", "50"));
+        long intervalMs = Long.parseLong(System.getenv().getOrDefault("INTERVAL_MS", "1"));
+
+        VisitCounterCheck check = new VisitCounterCheck(containers, invocations, intervalMs);
+        HttpServer stub = check.startStub(stubLatencyMs);
+        URI endpoint = URI.create("http://127.0.0.1:" + stub.getAddress().getPort());
+        try {
+            System.out.printf("%d containers x %d invocations %d ms apart on one key, stub latency %d ms per call%n",
+                    containers, invocations, intervalMs, stubLatencyMs);
+            System.out.printf("%-18s %8s %8s %8s %9s %8s %8s%n",
+                    "mode", "expected", "stored", "lost", "requests", "p50 ms", "p99 ms");
+            check.run("read-modify-write", endpoint, () -> VisitCounterCheck::readModifyWrite);
+            check.run("atomic", endpoint, () -> counting(new VisitCounter(0)));
+            check.run("coalesced " + coalesceMs + "ms", endpoint, () -> counting(new VisitCounter(coalesceMs)));
+        } finally {
+            stub.stop(0);
+        }
+    }
+
+    /** One simulated execution environment, invoked sequentially. */
+    private interface Container {
+        void invoke(DynamoDbClient dynamoDb);
+
+        /** What the shutdown hook does when the environment is reclaimed. */
+        default void stop(DynamoDbClient dynamoDb) {
+        }
+    }
+
+    private static Container counting(VisitCounter counter) {
+        return new Container() {
+            @Override
+            public void invoke(DynamoDbClient dynamoDb) {
+                counter.record(dynamoDb, TABLE, IP);
+            }
+
+            @Override
+            public void stop(DynamoDbClient dynamoDb) {
+                counter.flush(dynamoDb, TABLE);
+            }
+        };
+    }
+
+    private void run(String mode, URI endpoint, Supplier<Container> factory) throws Exception {
+        items.clear();
+        requests.set(0);
+        ExecutorService pool = Executors.newFixedThreadPool(containers);
+        List<Future<long[]>> results = new ArrayList<>();
+        for (int c = 0; c < containers; c++) {
+            results.add(pool.submit(() -> {
+                long[] nanos = new long[invocations];
+                Container container = factory.get();
+                try (Clients clients = Clients.create(endpoint, endpoint)) {
+                    for (int i = 0; i < invocations; i++) {
+                        long start = System.nanoTime();
+                        container.invoke(clients.dynamoDb);
+                        nanos[i] = System.nanoTime() - start;
+                        Thread.sleep(intervalMs);
+                    }
+                    container.stop(clients.dynamoDb);
+                }
+                return nanos;
+            }));
+        }
+        long[] all = new long[containers * invocations];
+        int offset = 0;
+        for (Future<long[]> result : results) {
+            long[] nanos = result.get();
+            System.arraycopy(nanos, 0, all, offset, nanos.length);
+            offset += nanos.length;
+        }
+        pool.shutdown();
+
+        long expected = (long) containers * invocations;
+        long stored = items.getOrDefault(IP, 0L);
+        Arrays.sort(all);
+        System.out.printf("%-18s %8d %8d %8d %9d %8.2f %8.2f%n", mode, expected, stored, expected - stored,
+                requests.get(), all[all.length / 2] / 1e6, all[all.length * 99 / 100] / 1e6);
+    }
+
+    /** The handler's former two-round-trip update, kept here as the baseline. */
+    private static void readModifyWrite(DynamoDbClient dynamoDb) {
+        Map<String, AttributeValue> key = Map.of("ip", AttributeValue.builder().s(IP).build());
+        Map<String, AttributeValue> item = dynamoDb.getItem(GetItemRequest.builder().tableName(TABLE).key(key).build()).item();
+        if (!item.isEmpty()) {
+            int incr = Integer.parseInt(item.get("count").n()) + 1;
+            dynamoDb.updateItem(UpdateItemRequest.builder()
+                    .tableName(TABLE)
+                    .key(key)
+                    .attributeUpdates(Map.of("count", AttributeValueUpdate.builder()
+                            .value(AttributeValue.builder().n(Integer.toString(incr)).build())
+                            .action(AttributeAction.PUT)
+                            .build()))
+                    .build());
+        } else {
+            dynamoDb.putItem(PutItemRequest.builder()
+                    .tableName(TABLE)
+                    .item(Map.of("ip", AttributeValue.builder().s(IP).build(),
+                            "count", AttributeValue.builder().n("1").build()))
+                    .build());
+        }
+    }
+
+    /**
+     * A DynamoDB stand-in holding one numeric count per ip. Each request is applied atomically, as
+     * DynamoDB applies a single item write, and requests are served concurrently.
+     */
+    private HttpServer startStub(long latencyMs) throws IOException {
+        // Without TCP_NODELAY, Nagle's algorithm and delayed ACKs stall every keep-alive response by ~40ms
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "dynamodb-stub");
+            thread.setDaemon(true);
+            return thread;
+        }));
+        server.createContext("/", exchange -> {
+            try {
+                if (latencyMs > 0) {
+                    Thread.sleep(latencyMs);
+                }
+                requests.incrementAndGet();
+                String target = exchange.getRequestHeaders().getFirst("X-Amz-Target");
+                String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+                String ip = group(KEY_IP, body);
+                if (target.endsWith(".GetItem")) {
+                    Long count = items.get(ip);
+                    respond(exchange, count == null ? "{}"
+                            : "{\"Item\":{\"ip\":{\"S\":\"" + ip + "\"},\"count\":{\"N\":\"" + count + "\"}}}");
+                } else if (target.endsWith(".PutItem")) {
+                    items.put(ip, Long.parseLong(group(COUNT_VALUE, body)));
+                    respond(exchange, "{}");
+                } else if (target.endsWith(".UpdateItem") && body.contains("\"UpdateExpression\":\"ADD #count :n\"")) {
+                    long count = items.merge(ip, Long.parseLong(group(ADD_VALUE, body)), Long::sum);
+                    respond(exchange, "{\"Attributes\":{\"count\":{\"N\":\"" + count + "\"}}}");
+                } else if (target.endsWith(".UpdateItem")) {
+                    items.put(ip, Long.parseLong(group(COUNT_VALUE, body.substring(body.indexOf("\"AttributeUpdates\"")))));
+                    respond(exchange, "{}");
+                } else {
+                    throw new IllegalArgumentException("Unsupported request: " + target);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                exchange.close();
+            }
+        });
+        server.start();
+        return server;
+    }
+
+    private static String group(Pattern pattern, String body) {
+        Matcher matcher = pattern.matcher(body);
+        if (!matcher.find()) {
+            throw new IllegalArgumentException("No " + pattern + " in " + body);
+        }
+        return matcher.group(1);
+    }
+
+    private static void respond(HttpExchange exchange, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/x-amz-json-1.0");
+        exchange.sendResponseHeaders(200, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+}
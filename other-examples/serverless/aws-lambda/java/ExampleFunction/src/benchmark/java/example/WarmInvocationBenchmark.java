@@ -0,0 +1,144 @@
+package example;
+
+import ch.qos.logback.classic.Level;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Times the downstream part of a warm invocation ({@link App#callDownstream}) against a local stub
+ * that answers the IP lookup, S3 ListBuckets and DynamoDB UpdateItem calls, in two modes:
+ *
+ * <ul>
+ *   <li>per-invocation: new clients are built for every invocation and closed afterwards, as the
+ *       handler used to do;</li>
+ *   <li>reused: one set of clients serves every invocation, as {@link Clients#shared()} does.</li>
+ * </ul>
+ *
+ * The stub speaks plain HTTP on localhost and adds STUB_LATENCY_MS per call, so the difference
+ * shown here is client construction and TCP connection setup only. Against the real endpoints
+ * every per-invocation call also pays DNS and a TLS handshake, so the saving is larger.
+ *
+ * Run with: ./gradlew warmInvocationBenchmark
+ */
+public class WarmInvocationBenchmark {
+
+    private static final int WARMUP = 50;
+    private static final int INVOCATIONS = 300;
+    private static final String TABLE = "example";
+
+    public static void main(String[] args) throws Exception {
+        // The SDK logs every request at DEBUG with logback's default configuration
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+        System.setProperty("aws.region", "us-east-1");
+        System.setProperty("aws.accessKeyId", "stub");
+        System.setProperty("aws.secretAccessKey", "stub");
+
+        long stubLatencyMs = Long.parseLong(System.getenv().getOrDefault("STUB_LATENCY_MS", "0"));
+        HttpServer stub = startStub(stubLatencyMs);
+        URI endpoint = URI.create("http://127.0.0.1:" + stub.getAddress().getPort());
+        String ipLookupUrl = endpoint + "/ip";
+        App app = new App();
+        PrintStream out = System.out;
+
+        try {
+            // The handler prints every step; keep the report readable
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+            long[] perInvocation = new long[INVOCATIONS];
+            for (int i = -WARMUP; i < INVOCATIONS; i++) {
+                long start = System.nanoTime();
+                try (Clients clients = Clients.create(endpoint, endpoint)) {
+                    app.callDownstream(clients, ipLookupUrl, TABLE);
+                }
+                if (i >= 0) {
+                    perInvocation[i] = System.nanoTime() - start;
+                }
+            }
+
+            long[] reused = new long[INVOCATIONS];
+            try (Clients clients = Clients.create(endpoint, endpoint)) {
+                for (int i = -WARMUP; i < INVOCATIONS; i++) {
+                    long start = System.nanoTime();
+                    app.callDownstream(clients, ipLookupUrl, TABLE);
+                    if (i >= 0) {
+                        reused[i] = System.nanoTime() - start;
+                    }
+                }
+            }
+
+            System.setOut(out);
+            System.out.printf("%d warm invocations each, stub latency %d ms per call%n", INVOCATIONS, stubLatencyMs);
+            System.out.printf("%-16s %8s %8s %8s %8s%n", "clients", "p50 ms", "p90 ms", "p99 ms", "mean ms");
+            report("per-invocation", perInvocation);
+            report("reused", reused);
+        } finally {
+            System.setOut(out);
+            stub.stop(0);
+        }
+    }
+
+    private static void report(String mode, long[] nanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        System.out.printf("%-16s %8.2f %8.2f %8.2f %8.2f%n", mode,
+                millis(sorted[sorted.length / 2]), millis(sorted[sorted.length * 9 / 10]),
+                millis(sorted[sorted.length * 99 / 100]), Arrays.stream(nanos).average().orElse(0) / 1e6);
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    /** One server standing in for icanhazip.com, S3 and DynamoDB, told apart by path and headers. */
+    static HttpServer startStub(long latencyMs) throws IOException {
+        // Without TCP_NODELAY, Nagle's algorithm and delayed ACKs stall every keep-alive response by ~40ms
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            try {
+                if (latencyMs > 0) {
+                    Thread.sleep(latencyMs);
+                }
+                String target = exchange.getRequestHeaders().getFirst("X-Amz-Target");
+                if (exchange.getRequestURI().getPath().equals("/ip")) {
+                    respond(exchange, "text/plain", "203.0.113.7\n");
+                } else if (target == null) {
+                    respond(exchange, "application/xml", "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                            + "<ListAllMyBucketsResult xmlns=\"http://s3.amazonaws.com/doc/2006-03-01/\">"
+                            + "<Owner><ID>stub</ID><DisplayName>stub</DisplayName></Owner><Buckets>"
+                            + "<Bucket><Name>example</Name><CreationDate>2024-01-01T00:00:00.000Z</CreationDate></Bucket>"
+                            + "</Buckets></ListAllMyBucketsResult>");
+                } else if (target.endsWith(".UpdateItem")) {
+                    respond(exchange, "application/x-amz-json-1.0", "{\"Attributes\":{\"count\":{\"N\":\"1\"}}}");
+                } else {
+                    respond(exchange, "application/x-amz-json-1.0", "{}");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                exchange.close();
+            }
+        });
+        server.start();
+        return server;
+    }
+
+    private static void respond(HttpExchange exchange, String contentType, String body) throws IOException {
+        exchange.getRequestBody().readAllBytes();
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(200, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+}
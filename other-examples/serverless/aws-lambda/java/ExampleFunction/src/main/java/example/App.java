@@ -14,9 +14,7 @@ import io.opentelemetry.api.metrics.Meter;
 import io.opentelemetry.api.trace.Span;
 import io.opentelemetry.api.trace.Tracer;
 import io.opentelemetry.context.Scope;
-import io.opentelemetry.instrumentation.okhttp.v3_0.OkHttpTracing;
 
-import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
 
@@ -31,6 +29,7 @@ import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.s3.model.Bucket;
 import software.amazon.awssdk.services.s3.model.ListBucketsResponse;
 
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
@@ -56,9 +55,32 @@ public class App implements RequestHandler<APIGatewayProxyRequestEvent, APIGatew
                     .put(STATUS_CODE, "200")
                     .build();
 
+    private static final String IP_LOOKUP_URL = System.getenv()
+            .getOrDefault("IP_LOOKUP_URL", "https://icanhazip.com");
+
+    // DYNAMODB_COALESCE_MS > 0 batches count increments within this warm container; see VisitCounter
+    private static final VisitCounter visits = new VisitCounter(
+            Long.parseLong(System.getenv().getOrDefault("DYNAMODB_COALESCE_MS", "0")));
+
+    static {
+        if (visits.coalescing()) {
+            // The runtime gets a SIGTERM before the environment shuts down when an extension (the OTel layer) is registered
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                if (visits.hasPending()) {
+                    visits.flush(Clients.shared().dynamoDb, System.getenv("DYNAMODB_TABLE"));
+                }
+            }));
+        }
+    }
+
     private static final Tracer tracer = GlobalOpenTelemetry.getTracer("myTracer");
     private static final Logger log = LoggerFactory.getLogger(App.class);
 
+    static {
+        // PRIMING=init|checkpoint warms the clients and telemetry before the first invocation; see Priming
+        Priming.configure();
+    }
+
 
     public APIGatewayProxyResponseEvent handleRequest(final APIGatewayProxyRequestEvent input, final Context context) {
 
@@ -73,45 +95,17 @@ public class App implements RequestHandler<APIGatewayProxyRequestEvent, APIGatew
         APIGatewayProxyResponseEvent response = new APIGatewayProxyResponseEvent()
                 .withHeaders(headers);
 
-        OkHttpClient client = new OkHttpClient.Builder()
-                .addInterceptor(OkHttpTracing.create(GlobalOpenTelemetry.get()).newInterceptor())
-                .build();
-        Request request = new Request.Builder().url("https://icanhazip.com").build();
-
         String tableName = System.getenv("DYNAMODB_TABLE");
         String body;
         int statusCode;
-        try (S3Client s3Client = S3Client.create();
-             DynamoDbClient dynamoDbClient = DynamoDbClient.create();
-             Response okhttpResponse = client.newCall(request).execute()) {
-
-            //get IP
-            String ipVal = Objects.requireNonNull(okhttpResponse.body()).string();
-            System.out.printf("IP: %s%n", ipVal);
-            log.info(String.format("IP: %s", ipVal));
-
-            //list S3 Buckets
-            ListBucketsResponse listBucketsResponse = getS3BucketsResponse(s3Client);
-
-            //get table item
-            Map<String, AttributeValue> item = getDynamoDbItem(tableName, dynamoDbClient, ipVal);
-            System.out.printf("Item contents %s%n", item.toString());
-            log.info(String.format("Item contents %s", item));
-            if (!item.isEmpty()) {
-                updateDynamoDbItem(tableName, dynamoDbClient, item);
-            } else {
-                createDynamoDbItem(tableName, dynamoDbClient, ipVal);
-            }
-
-            // Generate a sample counter metric using the OpenTelemetry Java Metrics API
-            int bucketCount = listBucketsResponse.buckets().size();
-            bucketCounter.add(bucketCount, METRIC_ATTRIBUTES);
+        try {
+            // Clients are created on the first invocation and reused by every warm one after it
+            body = callDownstream(Clients.shared(), IP_LOOKUP_URL, tableName);
 
             //run custom span with parent and child span
             customSpan();
 
             statusCode = 200;
-            body = String.format("{ \"bucket_count\": %d, \"ip\": \"%s\" }", bucketCount, ipVal);
         } catch (ResourceNotFoundException e) {
             statusCode = 500;
             String message = String.format("Error: The Amazon DynamoDB table \"%s\" can't be found.\n", tableName);
@@ -138,6 +132,41 @@ public class App implements RequestHandler<APIGatewayProxyRequestEvent, APIGatew
                 .withBody(body);
     }
 
+    /**
+     * Looks up the caller's IP, lists S3 buckets and counts the visit in DynamoDB, returning the
+     * response body. Package-private so WarmInvocationBenchmark can time it against a local stub.
+     */
+    String callDownstream(Clients clients, String ipLookupUrl, String tableName) throws IOException {
+        Request request = new Request.Builder().url(ipLookupUrl).build();
+
+        //get IP
+        String ipVal;
+        try (Response okhttpResponse = clients.http.newCall(request).execute()) {
+            ipVal = Objects.requireNonNull(okhttpResponse.body()).string();
+        }
+        System.out.printf("IP: %s%n", ipVal);
+        log.info(String.format("IP: %s", ipVal));
+
+        //list S3 Buckets
+        ListBucketsResponse listBucketsResponse = getS3BucketsResponse(clients.s3);
+
+        //count the visit
+        long count = visits.record(clients.dynamoDb, tableName, ipVal);
+        if (count == VisitCounter.DEFERRED) {
+            System.out.println("Visit count update deferred to the next flush");
+            log.info("Visit count update deferred to the next flush");
+        } else {
+            System.out.printf("Visit count %d%n", count);
+            log.info(String.format("Visit count %d", count));
+        }
+
+        // Generate a sample counter metric using the OpenTelemetry Java Metrics API
+        int bucketCount = listBucketsResponse.buckets().size();
+        bucketCounter.add(bucketCount, METRIC_ATTRIBUTES);
+
+        return String.format("{ \"bucket_count\": %d, \"ip\": \"%s\" }", bucketCount, ipVal);
+    }
+
     private void customSpan() throws InterruptedException {
         Span parentSpan = tracer.spanBuilder("Parent Span")
                 .setAttribute("ParentAttribute1", "Mom")
@@ -166,63 +195,6 @@ public class App implements RequestHandler<APIGatewayProxyRequestEvent, APIGatew
         }
     }
 
-    private void createDynamoDbItem(String tableName, DynamoDbClient dynamoDbClient, String ipVal) {
-        System.out.println("Creating new dynamoDB item...");
-        log.info("Creating new dynamoDB item...");
-        Map<String, AttributeValue> addItem = new HashMap<>();
-
-        addItem.put("ip", AttributeValue.builder().s(ipVal).build());
-        addItem.put("count", AttributeValue.builder().n("0").build());
-
-        PutItemRequest pir = PutItemRequest.builder()
-                .tableName(tableName)
-                .item(addItem)
-                .build();
-        dynamoDbClient.putItem(pir);
-    }
-
-    private void updateDynamoDbItem(String tableName, DynamoDbClient dynamoDbClient, Map<String, AttributeValue> item) {
-        System.out.println("Updating dynamoDB item...");
-        log.info("Updating dynamoDB item...");
-
-        Map<String,AttributeValue> itemKey = new HashMap<>();
-        Map<String, AttributeValueUpdate> updatedValues = new HashMap<>();
-
-        itemKey.put("ip", AttributeValue.builder().s(item.get("ip").s()).build());
-
-        // Update the column specified by name with updatedVal
-        int incr = Integer.parseInt(item.get("count").n()) + 1;
-
-        updatedValues.put("count", AttributeValueUpdate.builder()
-                .value(AttributeValue.builder().n(Integer.toString(incr)).build())
-                .action(AttributeAction.PUT)
-                .build());
-        UpdateItemRequest uir = UpdateItemRequest.builder()
-                .tableName(tableName)
-                .key(itemKey)
-                .attributeUpdates(updatedValues)
-                .build();
-
-        dynamoDbClient.updateItem(uir);
-    }
-
-    private Map<String, AttributeValue> getDynamoDbItem(String tableName, DynamoDbClient dynamoDbClient, String ipVal) {
-
-        Map<String, AttributeValue> keyToGet = new HashMap<>();
-        keyToGet.put("ip", AttributeValue.builder()
-                .s(ipVal)
-                .build());
-
-        System.out.println("Getting dynamoDB item...");
-        log.info("Getting dynamoDB item...");
-        GetItemRequest gir = GetItemRequest.builder()
-                .key(keyToGet)
-                .tableName(tableName)
-                .build();
-
-        return dynamoDbClient.getItem(gir).item();
-    }
-
     @NotNull
     private ListBucketsResponse getS3BucketsResponse(S3Client s3Client) {
         //print out buckets
@@ -0,0 +1,103 @@
+package example;
+
+import io.opentelemetry.api.GlobalOpenTelemetry;
+import io.opentelemetry.instrumentation.okhttp.v3_0.OkHttpTracing;
+
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+
+import software.amazon.awssdk.http.SdkHttpClient;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClientBuilder;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3ClientBuilder;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The HTTP, S3 and DynamoDB clients the function calls.
+ *
+ * Building these clients and opening their connections (DNS, TCP, TLS) costs far more than the
+ * calls themselves, so {@link #shared()} creates them once per execution environment, on first
+ * use, and every warm invocation reuses them along with their pooled connections. A Lambda
+ * instance handles one invocation at a time, so the pools are small. The SDK's idle-connection
+ * reaper thread is turned off: it cannot run while the environment is frozen between invocations,
+ * and stale connections are detected and replaced when they are next leased.
+ */
+final class Clients implements AutoCloseable {
+
+    private static final int MAX_CONNECTIONS = 4;
+    private static final Duration CONNECTION_MAX_IDLE = Duration.ofMinutes(1);
+
+    final OkHttpClient http;
+    final S3Client s3;
+    final DynamoDbClient dynamoDb;
+    // Shared by the S3 and DynamoDB clients; closed here because the SDK does not close a client it was handed
+    private final SdkHttpClient awsHttp;
+
+    private Clients(URI s3Endpoint, URI dynamoDbEndpoint) {
+        http = new OkHttpClient.Builder()
+                .addInterceptor(OkHttpTracing.create(GlobalOpenTelemetry.get()).newInterceptor())
+                .connectionPool(new ConnectionPool(MAX_CONNECTIONS, CONNECTION_MAX_IDLE.toMillis(), TimeUnit.MILLISECONDS))
+                .connectTimeout(Duration.ofSeconds(2))
+                .readTimeout(Duration.ofSeconds(5))
+                .build();
+        awsHttp = ApacheHttpClient.builder()
+                .maxConnections(MAX_CONNECTIONS)
+                .connectionMaxIdleTime(CONNECTION_MAX_IDLE)
+                .useIdleConnectionReaper(false)
+                .tcpKeepAlive(true)
+                .build();
+        S3ClientBuilder s3Builder = S3Client.builder().httpClient(awsHttp);
+        DynamoDbClientBuilder dynamoDbBuilder = DynamoDbClient.builder().httpClient(awsHttp);
+        if (s3Endpoint != null) {
+            s3Builder.endpointOverride(s3Endpoint);
+        }
+        if (dynamoDbEndpoint != null) {
+            dynamoDbBuilder.endpointOverride(dynamoDbEndpoint);
+        }
+        s3 = s3Builder.build();
+        dynamoDb = dynamoDbBuilder.build();
+    }
+
+    /** Returns the clients for this execution environment, creating them on first use. */
+    static Clients shared() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Creates a fresh set of clients whose SDK clients call the given endpoints, such as DynamoDB
+     * Local or a stub; null uses the regional AWS endpoint. {@link #shared()} takes the endpoints
+     * from S3_ENDPOINT and DYNAMODB_ENDPOINT.
+     */
+    static Clients create(URI s3Endpoint, URI dynamoDbEndpoint) {
+        return new Clients(s3Endpoint, dynamoDbEndpoint);
+    }
+
+    /** Creates a fresh set of clients with the endpoints from S3_ENDPOINT and DYNAMODB_ENDPOINT. */
+    static Clients fromEnv() {
+        return create(endpoint("S3_ENDPOINT"), endpoint("DYNAMODB_ENDPOINT"));
+    }
+
+    @Override
+    public void close() {
+        s3.close();
+        dynamoDb.close();
+        awsHttp.close();
+        http.connectionPool().evictAll();
+        http.dispatcher().executorService().shutdown();
+    }
+
+    private static URI endpoint(String envVar) {
+        String value = System.getenv(envVar);
+        return value == null || value.isEmpty() ? null : URI.create(value);
+    }
+
+    // Initialized by the JVM on first access to shared(), which is thread-safe without locking
+    private static final class Holder {
+        static final Clients INSTANCE = fromEnv();
+    }
+}
@@ -0,0 +1,137 @@
+package example;
+
+import io.opentelemetry.api.GlobalOpenTelemetry;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanContext;
+import io.opentelemetry.api.trace.SpanId;
+import io.opentelemetry.api.trace.TraceFlags;
+import io.opentelemetry.api.trace.TraceId;
+import io.opentelemetry.api.trace.TraceState;
+import io.opentelemetry.context.Scope;
+
+import okhttp3.Request;
+import okhttp3.Response;
+
+import org.crac.Context;
+import org.crac.Core;
+import org.crac.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+
+import java.util.Map;
+
+/**
+ * Moves cold-start work out of the first invocation. Priming loads and initializes the classes the
+ * handler needs by making one read-only pass over its downstream calls: the IP lookup, S3
+ * ListBuckets and a DynamoDB GetItem for a key that is never written. That covers the HTTP
+ * clients, request marshalling, signing and response parsing. It also starts and ends a span, so
+ * the OTel API and the tracer supplied by the layer are initialized. The shared {@link Clients}
+ * are built as well.
+ *
+ * The priming span, and the spans the instrumented clients start under it, are children of an
+ * unsampled parent, so none of them is recorded. A sampled span would sit in the exporter's queue,
+ * and with SnapStart be sent once from every environment restored from the snapshot. The function
+ * only sees the OTel API, so it cannot flush the layer's exporter instead; the exporter is warmed
+ * by the first invocation. The requests go through a separate, throwaway set of clients, which is closed
+ * afterwards, so no open connection ends up in a snapshot.
+ *
+ * The PRIMING environment variable selects when this happens:
+ *
+ * <ul>
+ *   <li>{@code none} (default): no priming; the first invocation pays for it;</li>
+ *   <li>{@code init}: during the init phase, while the handler class is loaded;</li>
+ *   <li>{@code checkpoint}: in a CRaC {@code beforeCheckpoint} callback, which Lambda SnapStart runs
+ *       once when a version is published, so that every restored environment starts primed. On a
+ *       JVM without CRaC support the callback never fires.</li>
+ * </ul>
+ *
+ * Priming never fails initialization: a failed call is logged and the rest still run.
+ */
+final class Priming implements Resource {
+
+    private static final Logger log = LoggerFactory.getLogger(Priming.class);
+
+    // CRaC only keeps weak references to registered resources
+    private static final Priming INSTANCE = new Priming();
+
+    private static final SpanContext UNSAMPLED = SpanContext.create(TraceId.fromLongs(0, 1), SpanId.fromLong(1),
+        TraceFlags.getDefault(), TraceState.getDefault());
+
+    private final String ipLookupUrl;
+    private final String tableName;
+
+    private Priming() {
+        ipLookupUrl = System.getenv().getOrDefault("IP_LOOKUP_URL", "https://icanhazip.com");
+        tableName = System.getenv("DYNAMODB_TABLE");
+    }
+
+    /** Applies the PRIMING mode; call once from the handler's static initializer. */
+    static void configure() {
+        String mode = System.getenv().getOrDefault("PRIMING", "none");
+        switch (mode) {
+            case "none":
+                break;
+            case "init":
+                INSTANCE.prime();
+                break;
+            case "checkpoint":
+                Core.getGlobalContext().register(INSTANCE);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown PRIMING mode: " + mode);
+        }
+    }
+
+    @Override
+    public void beforeCheckpoint(Context<? extends Resource> context) {
+        prime();
+    }
+
+    @Override
+    public void afterRestore(Context<? extends Resource> context) {
+        // Nothing to reopen: the shared clients were never connected before the snapshot
+    }
+
+    void prime() {
+        long start = System.nanoTime();
+        Span span;
+        try (Scope unsampled = Span.wrap(UNSAMPLED).makeCurrent()) {
+            span = GlobalOpenTelemetry.getTracer("priming").spanBuilder("prime").startSpan();
+        }
+        try (Scope scope = span.makeCurrent()) {
+            Clients.shared();
+            try (Clients clients = Clients.fromEnv()) {
+                run("IP lookup", () -> {
+                    try (Response response = clients.http.newCall(new Request.Builder().url(ipLookupUrl).build()).execute()) {
+                        response.body().string();
+                    }
+                });
+                run("S3 ListBuckets", () -> clients.s3.listBuckets());
+                if (tableName != null) {
+                    run("DynamoDB GetItem", () -> clients.dynamoDb.getItem(GetItemRequest.builder()
+                            .tableName(tableName)
+                            .key(Map.of("ip", AttributeValue.builder().s("priming").build()))
+                            .build()));
+                }
+            }
+        } finally {
+            span.end();
+        }
+        log.info("Primed in {} ms", (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private static void run(String name, Call call) {
+        try {
+            call.run();
+        } catch (Exception e) {
+            log.warn("Priming {} failed: {}", name, e.toString());
+        }
+    }
+
+    private interface Call {
+        void run() throws Exception;
+    }
+}
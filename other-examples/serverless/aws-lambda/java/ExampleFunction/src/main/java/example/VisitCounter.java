@@ -0,0 +1,115 @@
+package example;
+
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ReturnValue;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counts visits per IP in the DynamoDB table with a single atomic UpdateItem per write:
+ * {@code ADD #count :n} creates the item when it is missing and increments it otherwise, so there
+ * is no read before the write and concurrent invocations cannot overwrite each other's increments.
+ *
+ * With a coalescing window greater than zero, increments are instead accumulated in memory and
+ * written together, one UpdateItem per IP, by the first invocation after the window has elapsed
+ * (or once too many IPs are pending). This trades durability for fewer writes: pending increments
+ * live only in this warm container and are lost if it is reclaimed before the next flush and
+ * before the shutdown hook runs.
+ */
+final class VisitCounter {
+
+    /** Returned by {@link #record} when the increment was deferred to a later flush. */
+    static final long DEFERRED = -1;
+
+    private static final int MAX_PENDING_KEYS = 100;
+    private static final Map<String, String> COUNT_NAME = Map.of("#count", "count");
+
+    private final long coalesceNanos;
+    // Guarded by this
+    private final Map<String, Long> pending = new HashMap<>();
+    private long windowStartNanos;
+
+    VisitCounter(long coalesceMillis) {
+        this.coalesceNanos = TimeUnit.MILLISECONDS.toNanos(coalesceMillis);
+    }
+
+    boolean coalescing() {
+        return coalesceNanos > 0;
+    }
+
+    /** Counts one visit from {@code ip}; returns the new count, or {@link #DEFERRED}. */
+    long record(DynamoDbClient dynamoDb, String tableName, String ip) {
+        if (!coalescing()) {
+            return add(dynamoDb, tableName, ip, 1);
+        }
+        Map<String, Long> due = null;
+        synchronized (this) {
+            long now = System.nanoTime();
+            if (pending.isEmpty()) {
+                windowStartNanos = now;
+            }
+            pending.merge(ip, 1L, Long::sum);
+            if (now - windowStartNanos >= coalesceNanos || pending.size() >= MAX_PENDING_KEYS) {
+                due = drain();
+            }
+        }
+        if (due != null) {
+            write(dynamoDb, tableName, due);
+        }
+        return DEFERRED;
+    }
+
+    /** Writes every pending increment now; call before the container shuts down. */
+    void flush(DynamoDbClient dynamoDb, String tableName) {
+        Map<String, Long> due;
+        synchronized (this) {
+            due = drain();
+        }
+        write(dynamoDb, tableName, due);
+    }
+
+    synchronized boolean hasPending() {
+        return !pending.isEmpty();
+    }
+
+    private Map<String, Long> drain() {
+        Map<String, Long> due = new HashMap<>(pending);
+        pending.clear();
+        return due;
+    }
+
+    private void write(DynamoDbClient dynamoDb, String tableName, Map<String, Long> due) {
+        Iterator<Map.Entry<String, Long>> it = due.entrySet().iterator();
+        try {
+            while (it.hasNext()) {
+                Map.Entry<String, Long> entry = it.next();
+                add(dynamoDb, tableName, entry.getKey(), entry.getValue());
+                it.remove();
+            }
+        } catch (RuntimeException e) {
+            // Keep whatever was not written (including the failed entry) for the next flush
+            synchronized (this) {
+                due.forEach((ip, n) -> pending.merge(ip, n, Long::sum));
+            }
+            throw e;
+        }
+    }
+
+    private static long add(DynamoDbClient dynamoDb, String tableName, String ip, long increment) {
+        UpdateItemRequest request = UpdateItemRequest.builder()
+                .tableName(tableName)
+                .key(Map.of("ip", AttributeValue.builder().s(ip).build()))
+                // count is a DynamoDB reserved word, hence the placeholder
+                .updateExpression("ADD #count :n")
+                .expressionAttributeNames(COUNT_NAME)
+                .expressionAttributeValues(Map.of(":n", AttributeValue.builder().n(Long.toString(increment)).build()))
+                .returnValues(ReturnValue.UPDATED_NEW)
+                .build();
+        return Long.parseLong(dynamoDb.updateItem(request).attributes().get("count").n());
+    }
+}